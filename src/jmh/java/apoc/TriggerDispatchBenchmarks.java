@@ -0,0 +1,107 @@
+package apoc;
+
+import apoc.trigger.Trigger;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.api.procedure.GlobalProcedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static org.neo4j.configuration.GraphDatabaseSettings.DEFAULT_DATABASE_NAME;
+import static org.neo4j.internal.helpers.collection.MapUtil.map;
+
+/**
+ * Commit cost of 20 triggers on a transaction creating 1000 :Person nodes, when the triggers select other labels
+ * and are skipped, compared to triggers without a selector that aggregate the changes.
+ */
+public class TriggerDispatchBenchmarks {
+
+    private static final int TRIGGERS = 20;
+
+    @State(Scope.Benchmark)
+    public static abstract class TriggerState {
+        private DatabaseManagementService managementService;
+        private GraphDatabaseService db;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            managementService = new TestDatabaseManagementServiceBuilder().impermanent()
+                    .setConfig(ApocSettings.apoc_trigger_enabled, true)
+                    .build();
+            db = managementService.database(DEFAULT_DATABASE_NAME);
+            ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(GlobalProcedures.class).registerProcedure(Trigger.class);
+            for (int i = 0; i < TRIGGERS; i++) {
+                if (selector(i) == null) continue;
+                db.executeTransactionally("CALL apoc.trigger.add($name, $statement, $selector)",
+                        map("name", "trigger" + i, "statement", statement(), "selector", selector(i)));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            managementService.shutdown();
+        }
+
+        // null for no trigger
+        abstract Map<String, Object> selector(int i);
+
+        String statement() {
+            return "UNWIND keys($assignedNodeProperties) AS key RETURN count(*)";
+        }
+    }
+
+    public static class NoTriggers extends TriggerState {
+        @Override
+        Map<String, Object> selector(int i) {
+            return null;
+        }
+    }
+
+    public static class NonMatchingSelectors extends TriggerState {
+        @Override
+        Map<String, Object> selector(int i) {
+            return map("labels", singletonList("Other" + i));
+        }
+    }
+
+    public static class NoSelectors extends TriggerState {
+        @Override
+        Map<String, Object> selector(int i) {
+            return emptyMap();
+        }
+    }
+
+    @Benchmark
+    public void createNodesWithoutTriggers(NoTriggers state) {
+        createNodes(state.db, 1000);
+    }
+
+    @Benchmark
+    public void createNodesWithNonMatchingSelectors(NonMatchingSelectors state) {
+        createNodes(state.db, 1000);
+    }
+
+    @Benchmark
+    public void createNodesWithoutSelectors(NoSelectors state) {
+        createNodes(state.db, 1000);
+    }
+
+    private static void createNodes(GraphDatabaseService db, int numberOfNodes) {
+        final Label label = Label.label("Person");
+        try (Transaction tx = db.beginTx()) {
+            for (int i = 0; i < numberOfNodes; i++) {
+                Node n = tx.createNode(label);
+                n.setProperty("name", "myname_" + i);
+            }
+            tx.commit();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package apoc.algo;
+
+import apoc.generate.Generate;
+import apoc.path.RelationshipTypeAndDirections;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphalgo.BasicEvaluationContext;
+import org.neo4j.graphalgo.CommonEvaluators;
+import org.neo4j.graphalgo.GraphAlgoFactory;
+import org.neo4j.graphalgo.WeightedPath;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PathExpanders;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.api.procedure.GlobalProcedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import static java.util.Collections.singletonMap;
+import static org.neo4j.configuration.GraphDatabaseSettings.DEFAULT_DATABASE_NAME;
+
+/**
+ * Weighted shortest path between opposite nodes of a ring lattice generated with apoc.generate.ws without rewiring,
+ * with the primitive Dijkstra of apoc.algo.dijkstra compared to the one of the graph algorithms it replaced.
+ */
+@State(Scope.Benchmark)
+public class ShortestPathBenchmarks {
+
+    @Param({"10000", "100000"})
+    public int nodes;
+
+    private DatabaseManagementService managementService;
+    private GraphDatabaseService db;
+    private long start;
+    private long end;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        managementService = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        db = managementService.database(DEFAULT_DATABASE_NAME);
+        ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(GlobalProcedures.class).registerProcedure(Generate.class);
+        db.executeTransactionally("CALL apoc.generate.ws($nodes, 4, 0.0, 'Cell', 'NEXT')", singletonMap("nodes", nodes));
+        db.executeTransactionally("MATCH ()-[r:NEXT]->() SET r.d = id(r) % 17 + 1");
+        try (Transaction tx = db.beginTx()) {
+            start = tx.findNodes(Label.label("Cell")).next().getId();
+            end = start + nodes / 2;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        managementService.shutdown();
+    }
+
+    @Benchmark
+    public double primitiveDijkstra() {
+        try (Transaction tx = db.beginTx()) {
+            WeightedShortestPath algo = new WeightedShortestPath(tx, RelationshipTypeAndDirections.parse("NEXT"), "d", null, null, null);
+            return algo.find(start, end).weight();
+        }
+    }
+
+    @Benchmark
+    public double graphAlgoDijkstra() {
+        try (Transaction tx = db.beginTx()) {
+            Node from = tx.getNodeById(start);
+            Node to = tx.getNodeById(end);
+            WeightedPath path = GraphAlgoFactory.dijkstra(new BasicEvaluationContext(tx, db),
+                    PathExpanders.forTypeAndDirection(RelationshipType.withName("NEXT"), Direction.BOTH),
+                    CommonEvaluators.doubleCostEvaluator("d")).findSinglePath(from, to);
+            return path.weight();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package apoc.export.csv;
+
+import apoc.ApocSettings;
+import org.neo4j.configuration.GraphDatabaseSettings;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.kernel.api.procedure.GlobalProcedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static apoc.util.MapUtil.map;
+import static org.neo4j.configuration.GraphDatabaseSettings.DEFAULT_DATABASE_NAME;
+
+/**
+ * Imports a generated file of persons, each with two KNOWS relationships, into an empty database and reports
+ * the peak heap used during the import next to its time. With a small batchSize the peak should stay about the
+ * same when the number of rows grows, only the id mapping grows with the file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ImportCsvBenchmarks {
+
+    @Param({"100000", "1000000"})
+    public int nodes;
+
+    @Param({"1000", "100000"})
+    public int batchSize;
+
+    private Path directory;
+    private DatabaseManagementService managementService;
+    private GraphDatabaseService db;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Heap {
+        public long peakHeapMb;
+    }
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        directory = Files.createTempDirectory("apoc-import-csv");
+        try (PrintWriter persons = new PrintWriter(Files.newBufferedWriter(directory.resolve("persons.csv")));
+             PrintWriter knows = new PrintWriter(Files.newBufferedWriter(directory.resolve("knows.csv")))) {
+            persons.println(":ID|name:STRING|age:INT");
+            knows.println(":START_ID|:END_ID|since:INT");
+            for (int i = 0; i < nodes; i++) {
+                persons.println(i + "|name" + i + "|" + (i % 90));
+                knows.println(i + "|" + (i + 1) % nodes + "|" + (2000 + i % 20));
+                knows.println(i + "|" + (i * 7919L) % nodes + "|" + (2000 + i % 20));
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startDatabase() throws Exception {
+        managementService = new TestDatabaseManagementServiceBuilder().impermanent()
+                .setConfig(ApocSettings.apoc_import_file_enabled, true)
+                .setConfig(GraphDatabaseSettings.allow_file_urls, true)
+                .setConfig(GraphDatabaseSettings.load_csv_file_url_root, directory.toAbsolutePath())
+                .build();
+        db = managementService.database(DEFAULT_DATABASE_NAME);
+        ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(GlobalProcedures.class).registerProcedure(ImportCsv.class);
+        System.gc();
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopDatabase() {
+        managementService.shutdown();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void importCsv(Heap heap) {
+        db.executeTransactionally("CALL apoc.import.csv([{fileName: 'file:/persons.csv', labels: ['Person']}], " +
+                        "[{fileName: 'file:/knows.csv', type: 'KNOWS'}], $config)",
+                map("config", map("delimiter", '|', "stringIds", false, "batchSize", batchSize)));
+        // the sum of the peaks of the heap pools, an upper bound of the heap that was in use at the same time
+        heap.peakHeapMb = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum() >> 20;
+    }
+}
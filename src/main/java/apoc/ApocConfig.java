@@ -51,6 +51,9 @@ public class ApocConfig extends LifecycleAdapter {
     public static final String APOC_TTL_ENABLED = "apoc.ttl.enabled";
     public static final String APOC_TTL_LIMIT = "apoc.ttl.limit";
     public static final String APOC_TRIGGER_ENABLED = "apoc.trigger.enabled";
+    public static final String APOC_TRIGGER_ASYNC_BATCH_SIZE = "apoc.trigger.async.batch_size";
+    public static final String APOC_TRIGGER_ASYNC_FLUSH_INTERVAL = "apoc.trigger.async.flush_interval";
+    public static final String APOC_TRIGGER_ASYNC_QUEUE_SIZE = "apoc.trigger.async.queue_size";
     public static final String APOC_UUID_ENABLED = "apoc.uuid.enabled";
     public static final String APOC_JSON_ZIP_URL = "apoc.json.zip.url";  // TODO: check if really needed
     public static final String APOC_JSON_SIMPLE_JSON_URL = "apoc.json.simpleJson.url"; // TODO: check if really needed
@@ -59,6 +62,8 @@ public class ApocConfig extends LifecycleAdapter {
     public static final String APOC_CONFIG_JOBS_POOL_NUM_THREADS = "apoc.jobs.pool.num_threads";
     public static final String APOC_CONFIG_JOBS_QUEUE_SIZE = "apoc.jobs.queue.size";
     public static final String APOC_CONFIG_INITIALIZER_CYPHER = "apoc.initializer.cypher";
+    public static final String APOC_STATIC_CACHE_MAX_SIZE = "apoc.static_cache.max_size";
+    public static final String APOC_STATIC_CACHE_TTL = "apoc.static_cache.ttl";
 
     private static final List<Setting> NEO4J_DIRECTORY_CONFIGURATION_SETTING_NAMES = new ArrayList<>(Arrays.asList(
             data_directory,
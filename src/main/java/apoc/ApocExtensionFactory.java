@@ -3,6 +3,7 @@ package apoc;
 import apoc.custom.CypherProcedures;
 import apoc.custom.CypherProceduresHandler;
 import apoc.cypher.CypherInitializer;
+import apoc.meta.MetaSchemaCache;
 import apoc.trigger.Trigger;
 import apoc.trigger.TriggerHandler;
 import apoc.ttl.TTLLifeCycle;
@@ -56,6 +57,7 @@ public class ApocExtensionFactory extends ExtensionFactory<ApocExtensionFactory.
         AvailabilityGuard availabilityGuard();
         DatabaseManagementService databaseManagementService();
         ApocConfig apocConfig();
+        Pools pools();
         GlobalProceduresRegistry globalProceduresRegistry();
         RegisterComponentFactory.RegisterComponentLifecycle registerComponentLifecycle();
     }
@@ -105,8 +107,10 @@ public class ApocExtensionFactory extends ExtensionFactory<ApocExtensionFactory.
                         dependencies.databaseManagementService(),
                         dependencies.apocConfig(),
                         log.getUserLog(Trigger.class),
-                        dependencies.globalProceduresRegistry())
+                        dependencies.globalProceduresRegistry(),
+                        dependencies.pools())
                 );
+                services.put("metaSchemaCache", new MetaSchemaCache(db, dependencies.databaseManagementService()));
 
                 RegisterComponentFactory.RegisterComponentLifecycle registerComponentLifecycle = dependencies.registerComponentLifecycle();
                 String databaseNamme = db.databaseName();
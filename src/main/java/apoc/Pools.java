@@ -1,5 +1,6 @@
 package apoc;
 
+import apoc.load.util.JdbcPools;
 import apoc.periodic.Periodic;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Transaction;
@@ -12,6 +13,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
@@ -29,6 +31,8 @@ public class Pools extends LifecycleAdapter {
 
     private final Map<Periodic.JobInfo,Future> jobList = new ConcurrentHashMap<>();
 
+    private final Map<String, Periodic.IterateJob> iterateJobs = new ConcurrentHashMap<>();
+
     public Pools(LogService log, GlobalProceduresRegistry globalProceduresRegistry, ApocConfig apocConfig) {
 
         this.log = log.getInternalLog(Pools.class);
@@ -66,6 +70,7 @@ public class Pools extends LifecycleAdapter {
 
     @Override
     public void shutdown() throws Exception {
+        JdbcPools.closeAll();
         Stream.of(singleExecutorService, defaultExecutorService, scheduledExecutorService).forEach( service -> {
             try {
                 service.shutdown();
@@ -88,10 +93,31 @@ public class Pools extends LifecycleAdapter {
         return defaultExecutorService;
     }
 
+    /**
+     * A pool of up to the given number of threads for the tasks of a single call, which has to shut it down when done.
+     * Tasks that wait for other tasks, or that block until the caller consumes their results, must not run on the
+     * default pool: once it is full, {@link CallerBlocksPolicy} makes the submitting thread wait for the queued tasks.
+     * Idle threads time out, so a pool that isn't shut down doesn't keep its threads.
+     */
+    public ExecutorService newDedicatedExecutorService(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "apoc-" + name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     public Map<Periodic.JobInfo, Future> getJobList() {
         return jobList;
     }
 
+    public Map<String, Periodic.IterateJob> getIterateJobs() {
+        return iterateJobs;
+    }
+
     static class CallerBlocksPolicy implements RejectedExecutionHandler {
         @Override
         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
@@ -1,6 +1,7 @@
 package apoc;
 
 import apoc.custom.CypherProceduresHandler;
+import apoc.meta.MetaSchemaCache;
 import apoc.trigger.TriggerHandler;
 import apoc.uuid.UuidHandler;
 import org.neo4j.kernel.extension.ExtensionFactory;
@@ -55,6 +56,7 @@ public class RegisterComponentFactory extends ExtensionFactory<RegisterComponent
             resolvers.put(UuidHandler.class, new ConcurrentHashMap<>());
             resolvers.put(TriggerHandler.class, new ConcurrentHashMap<>());
             resolvers.put(CypherProceduresHandler.class, new ConcurrentHashMap<>());
+            resolvers.put(MetaSchemaCache.class, new ConcurrentHashMap<>());
             resolvers.forEach(
                     (clazz, dbFunctionMap) -> globalProceduresRegistry.registerComponent(clazz, context -> {
                         String databaseName = context.graphDatabaseAPI().databaseName();
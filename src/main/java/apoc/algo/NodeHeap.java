@@ -0,0 +1,98 @@
+package apoc.algo;
+
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of node ids by a double priority, with the position of each node indexed so its priority can be
+ * lowered in place instead of pushing the node again.
+ */
+class NodeHeap {
+
+    private long[] nodes = new long[64];
+    private double[] priorities = new double[64];
+    private final LongIntHashMap positions = new LongIntHashMap();
+    private int size;
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(long node) {
+        return positions.containsKey(node);
+    }
+
+    /**
+     * Adds the node, or lowers its priority if it is already in the heap with a higher one
+     */
+    void insertOrDecrease(long node, double priority) {
+        int position = positions.getIfAbsent(node, -1);
+        if (position == -1) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                priorities = Arrays.copyOf(priorities, size * 2);
+            }
+            position = size++;
+            nodes[position] = node;
+            priorities[position] = priority;
+            positions.put(node, position);
+            up(position);
+        } else if (priority < priorities[position]) {
+            priorities[position] = priority;
+            up(position);
+        }
+    }
+
+    long pop() {
+        long top = nodes[0];
+        positions.remove(top);
+        size--;
+        if (size > 0) {
+            move(size, 0);
+            down(0);
+        }
+        return top;
+    }
+
+    private void up(int position) {
+        long node = nodes[position];
+        double priority = priorities[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (priorities[parent] <= priority) break;
+            move(parent, position);
+            position = parent;
+        }
+        nodes[position] = node;
+        priorities[position] = priority;
+        positions.put(node, position);
+    }
+
+    private void down(int position) {
+        long node = nodes[position];
+        double priority = priorities[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && priorities[right] < priorities[child]) child = right;
+            if (priority <= priorities[child]) break;
+            move(child, position);
+            position = child;
+        }
+        nodes[position] = node;
+        priorities[position] = priority;
+        positions.put(node, position);
+    }
+
+    private void move(int from, int to) {
+        nodes[to] = nodes[from];
+        priorities[to] = priorities[from];
+        positions.put(nodes[to], to);
+    }
+}
@@ -1,30 +1,57 @@
 package apoc.algo;
 
+import apoc.Pools;
 import apoc.path.RelationshipTypeAndDirections;
 import apoc.result.PathResult;
 import apoc.result.WeightedPathResult;
+import apoc.util.QueueBasedSpliterator;
 import apoc.util.Util;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
 import org.neo4j.graphalgo.*;
 import org.neo4j.graphdb.*;
 import org.neo4j.internal.helpers.collection.Pair;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Description;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.Procedure;
+import org.neo4j.procedure.TerminationGuard;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 public class PathFinding {
 
+    private static final int QUEUE_SIZE = 1000;
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final WeightedShortestPath.Found TOMBSTONE = new WeightedShortestPath.Found(-1, 0, new long[0]);
+    private static final WeightedShortestPath.Found FAILED = new WeightedShortestPath.Found(-1, 0, new long[0]);
+
     @Context
     public GraphDatabaseService db;
 
     @Context
     public Transaction tx;
 
+    @Context
+    public Pools pools;
+
+    @Context
+    public TerminationGuard terminationGuard;
+
     @Procedure
     @Description("apoc.algo.aStar(startNode, endNode, 'KNOWS|<WORKS_WITH|IS_MANAGER_OF>', 'distance','lat','lon') " +
             "YIELD path, weight - run A* with relationship property name as cost function")
@@ -36,12 +63,9 @@ public class PathFinding {
             @Name("latPropertyName") String latPropertyName,
             @Name("lonPropertyName") String lonPropertyName) {
 
-        PathFinder<WeightedPath> algo = GraphAlgoFactory.aStar(
-                new BasicEvaluationContext(tx, db),
-                buildPathExpander(relTypesAndDirs),
-                CommonEvaluators.doubleCostEvaluator(weightPropertyName),
-                CommonEvaluators.geoEstimateEvaluator(latPropertyName, lonPropertyName));
-        return WeightedPathResult.streamWeightedPathResult(startNode, endNode, algo);
+        WeightedShortestPath algo = new WeightedShortestPath(tx, RelationshipTypeAndDirections.parse(relTypesAndDirs),
+                weightPropertyName, null, latPropertyName, lonPropertyName);
+        return streamWeightedPathResult(startNode, endNode, algo);
     }
 
     @Procedure
@@ -59,12 +83,9 @@ public class PathFinding {
         String latPropertyName = config.getOrDefault("y", "latitude").toString();
         String lonPropertyName = config.getOrDefault("x", "longitude").toString();
 
-        PathFinder<WeightedPath> algo = GraphAlgoFactory.aStar(
-                new BasicEvaluationContext(tx, db),
-                buildPathExpander(relTypesAndDirs),
-                CommonEvaluators.doubleCostEvaluator(relationshipCostPropertyKey, defaultCost),
-                CommonEvaluators.geoEstimateEvaluator(latPropertyName, lonPropertyName));
-        return WeightedPathResult.streamWeightedPathResult(startNode, endNode, algo);
+        WeightedShortestPath algo = new WeightedShortestPath(tx, RelationshipTypeAndDirections.parse(relTypesAndDirs),
+                relationshipCostPropertyKey, defaultCost, latPropertyName, lonPropertyName);
+        return streamWeightedPathResult(startNode, endNode, algo);
     }
 
     @Procedure
@@ -78,6 +99,11 @@ public class PathFinding {
             @Name(value = "defaultWeight", defaultValue = "NaN") double defaultWeight,
             @Name(value = "numberOfWantedPaths", defaultValue = "1") long numberOfWantedPaths) {
 
+        if (numberOfWantedPaths == 1) {
+            WeightedShortestPath algo = new WeightedShortestPath(tx, RelationshipTypeAndDirections.parse(relTypesAndDirs),
+                    weightPropertyName, defaultWeight, null, null);
+            return streamWeightedPathResult(startNode, endNode, algo);
+        }
         PathFinder<WeightedPath> algo = GraphAlgoFactory.dijkstra(
                 buildPathExpander(relTypesAndDirs),
                 (relationship, direction) -> Util.toDouble(relationship.getProperty(weightPropertyName, defaultWeight)),
@@ -86,6 +112,97 @@ public class PathFinding {
         return WeightedPathResult.streamWeightedPathResult(startNode, endNode, algo);
     }
 
+    @Procedure
+    @Description("apoc.algo.dijkstraMany([sources], [targets], 'KNOWS|<WORKS_WITH|IS_MANAGER_OF>', 'distance', {defaultWeight:NaN, maxVisits:-1, timeout:-1, concurrency:4}) " +
+            "YIELD path, weight - run dijkstra once per source for all the targets, the sources in parallel")
+    public Stream<WeightedPathResult> dijkstraMany(
+            @Name("sources") List<Node> sources,
+            @Name("targets") List<Node> targets,
+            @Name("relationshipTypesAndDirections") String relTypesAndDirs,
+            @Name("weightPropertyName") String weightPropertyName,
+            @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+
+        config = config == null ? Collections.emptyMap() : config;
+        double defaultWeight = Util.toDouble(config.getOrDefault("defaultWeight", Double.NaN));
+        long maxVisits = Util.toLong(config.getOrDefault("maxVisits", -1));
+        long timeout = Util.toLong(config.getOrDefault("timeout", -1));
+        int concurrency = Math.max(1, Util.toInteger(config.getOrDefault("concurrency", DEFAULT_CONCURRENCY)));
+
+        long[] sourceIds = sources.stream().mapToLong(Node::getId).distinct().toArray();
+        LongHashSet targetIds = new LongHashSet();
+        targets.forEach(node -> targetIds.add(node.getId()));
+        if (sourceIds.length == 0 || targetIds.isEmpty()) return Stream.empty();
+
+        if (hasChanges(tx)) {
+            // the workers' own transactions can't see the caller's uncommitted changes, so search serially in it
+            WeightedShortestPath algo = new WeightedShortestPath(tx, RelationshipTypeAndDirections.parse(relTypesAndDirs),
+                    weightPropertyName, defaultWeight, null, null);
+            return Arrays.stream(sourceIds).boxed()
+                    .flatMap(source -> {
+                        long deadline = timeout == -1 ? -1 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+                        return algo.findAll(source, targetIds, maxVisits, deadline).stream();
+                    })
+                    .map(found -> new WeightedPathResult(found.toPath(tx)));
+        }
+
+        BlockingQueue<WeightedShortestPath.Found> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        AtomicBoolean closed = new AtomicBoolean();
+        AtomicReference<RuntimeException> error = new AtomicReference<>();
+        AtomicInteger nextSource = new AtomicInteger();
+        int workers = Math.max(1, Math.min(concurrency, sourceIds.length));
+        AtomicInteger running = new AtomicInteger(workers);
+
+        Runnable worker = () -> {
+            try (Transaction workerTx = db.beginTx()) {
+                WeightedShortestPath algo = new WeightedShortestPath(workerTx, RelationshipTypeAndDirections.parse(relTypesAndDirs),
+                        weightPropertyName, defaultWeight, null, null);
+                for (int i = nextSource.getAndIncrement(); i < sourceIds.length && error.get() == null && !closed.get(); i = nextSource.getAndIncrement()) {
+                    long deadline = timeout == -1 ? -1 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+                    for (WeightedShortestPath.Found found : algo.findAll(sourceIds[i], targetIds, maxVisits, deadline)) {
+                        if (error.get() != null || !offer(queue, found, closed)) break;
+                    }
+                }
+                workerTx.commit();
+            } catch (RuntimeException e) {
+                if (error.compareAndSet(null, e)) offer(queue, FAILED, closed);
+            } finally {
+                if (running.decrementAndGet() == 0) offer(queue, TOMBSTONE, closed);
+            }
+        };
+        // the workers block until the caller reads the queue, which it only does after returning, so they can't
+        // run on the default pool where the caller might have to wait for them when it is full
+        ExecutorService executor = pools.newDedicatedExecutorService("dijkstra", workers);
+        for (int i = 0; i < workers; i++) {
+            executor.submit(worker);
+        }
+        executor.shutdown();
+
+        return StreamSupport.stream(new QueueBasedSpliterator<>(queue, TOMBSTONE, terminationGuard, Integer.MAX_VALUE), false)
+                .map(found -> {
+                    if (found == FAILED) throw error.get();
+                    return new WeightedPathResult(found.toPath(tx));
+                })
+                .onClose(() -> closed.set(true));
+    }
+
+    private static boolean hasChanges(Transaction tx) {
+        KernelTransaction ktx = ((InternalTransaction) tx).kernelTransaction();
+        return ktx instanceof TxStateHolder && ((TxStateHolder) ktx).hasTxStateWithChanges();
+    }
+
+    // waits for room in the queue until the caller closed the stream
+    private static boolean offer(BlockingQueue<WeightedShortestPath.Found> queue, WeightedShortestPath.Found found, AtomicBoolean closed) {
+        try {
+            while (!closed.get()) {
+                if (queue.offer(found, 100, TimeUnit.MILLISECONDS)) return true;
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     @Procedure
     @Description("apoc.algo.allSimplePaths(startNode, endNode, 'KNOWS|<WORKS_WITH|IS_MANAGER_OF>', 5) YIELD path, " +
             "weight - run allSimplePaths with relationships given and maxNodes")
@@ -117,12 +234,14 @@ public class PathFinding {
             @Name("weightPropertyName") String weightPropertyName,
             @Name("defaultWeight") double defaultWeight) {
 
-        PathFinder<WeightedPath> algo = GraphAlgoFactory.dijkstra(
-                new BasicEvaluationContext(tx, db),
-                buildPathExpander(relTypesAndDirs),
-                (relationship, direction) -> Util.toDouble(relationship.getProperty(weightPropertyName, defaultWeight))
-        );
-        return WeightedPathResult.streamWeightedPathResult(startNode, endNode, algo);
+        WeightedShortestPath algo = new WeightedShortestPath(tx, RelationshipTypeAndDirections.parse(relTypesAndDirs),
+                weightPropertyName, defaultWeight, null, null);
+        return streamWeightedPathResult(startNode, endNode, algo);
+    }
+
+    private static Stream<WeightedPathResult> streamWeightedPathResult(Node startNode, Node endNode, WeightedShortestPath algo) {
+        WeightedPath path = algo.find(startNode.getId(), endNode.getId());
+        return path == null ? Stream.empty() : Stream.of(new WeightedPathResult(path));
     }
 
     private PathExpander<Double> buildPathExpander(String relationshipsAndDirections) {
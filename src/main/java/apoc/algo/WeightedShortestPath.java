@@ -0,0 +1,276 @@
+package apoc.algo;
+
+import apoc.util.Util;
+import org.eclipse.collections.api.set.primitive.LongSet;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.LongDoubleHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongLongHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphalgo.WeightedPath;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphalgo.impl.util.WeightedPathImpl;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.helpers.collection.Pair;
+import org.neo4j.internal.kernel.api.CursorFactory;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.PropertyCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.RelationshipScanCursor;
+import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelectionCursor;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelections;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
+import org.neo4j.values.storable.NumberValue;
+import org.neo4j.values.storable.Value;
+import org.neo4j.values.storable.Values;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single source shortest paths by the weight property of the relationships (Dijkstra), optionally guided towards
+ * the target by the geographic distance of the nodes (A*). The graph is read through kernel cursors with the
+ * property key tokens resolved once, and the search state is kept in primitive maps and an indexed heap.
+ */
+class WeightedShortestPath {
+
+    // same radius as the estimate evaluator of the graph algorithms
+    private static final double EARTH_RADIUS = 6371 * 1000;
+
+    private final Transaction tx;
+    private final Read read;
+    private final CursorFactory cursors;
+    // the relationship type ids to expand per direction, null for all types
+    private final List<Pair<int[], Direction>> selections = new ArrayList<>();
+    private final String weightProperty;
+    private final int weightKey;
+    private final Double defaultWeight;
+    private final int latitudeKey;
+    private final int longitudeKey;
+    private final String latitudeProperty;
+    private final String longitudeProperty;
+
+    /**
+     * @param defaultWeight the weight of relationships without the property, if null they fail the search instead
+     * @param latitudeProperty together with longitudeProperty the node properties to estimate the remaining cost (A*), or null
+     */
+    WeightedShortestPath(Transaction tx, List<Pair<RelationshipType, Direction>> typesAndDirections,
+                         String weightProperty, Double defaultWeight, String latitudeProperty, String longitudeProperty) {
+        this.tx = tx;
+        KernelTransaction ktx = ((InternalTransaction) tx).kernelTransaction();
+        this.read = ktx.dataRead();
+        this.cursors = ktx.cursors();
+        TokenRead tokenRead = ktx.tokenRead();
+        for (Pair<RelationshipType, Direction> pair : typesAndDirections) {
+            Direction direction = pair.other() == null ? Direction.BOTH : pair.other();
+            if (pair.first() == null) {
+                selections.add(Pair.of(null, direction));
+            } else {
+                int type = tokenRead.relationshipType(pair.first().name());
+                if (type != TokenRead.NO_TOKEN) selections.add(Pair.of(new int[]{type}, direction));
+            }
+        }
+        this.weightProperty = weightProperty;
+        this.weightKey = tokenRead.propertyKey(weightProperty);
+        this.defaultWeight = defaultWeight;
+        this.latitudeProperty = latitudeProperty;
+        this.longitudeProperty = longitudeProperty;
+        this.latitudeKey = latitudeProperty == null ? TokenRead.NO_TOKEN : tokenRead.propertyKey(latitudeProperty);
+        this.longitudeKey = longitudeProperty == null ? TokenRead.NO_TOKEN : tokenRead.propertyKey(longitudeProperty);
+    }
+
+    /**
+     * A path found by a search, as the ids of its relationships so it can be rebuilt in another transaction
+     */
+    static class Found {
+        final long start;
+        final double weight;
+        final long[] relationships;
+
+        Found(long start, double weight, long[] relationships) {
+            this.start = start;
+            this.weight = weight;
+            this.relationships = relationships;
+        }
+
+        WeightedPath toPath(Transaction tx) {
+            PathImpl.Builder builder = new PathImpl.Builder(tx.getNodeById(start));
+            for (long rel : relationships) {
+                builder = builder.push(tx.getRelationshipById(rel));
+            }
+            return new WeightedPathImpl(weight, builder.build());
+        }
+    }
+
+    /**
+     * @return the cheapest path from start to end, or null if there is none
+     */
+    WeightedPath find(long start, long end) {
+        double[] target = latitudeProperty != null ? coordinates(end) : null;
+        List<Found> found = search(start, LongHashSet.newSetWith(end), target, -1, -1);
+        return found.isEmpty() ? null : found.get(0).toPath(tx);
+    }
+
+    /**
+     * Searches the cheapest paths from start to all the targets in a single pass, without estimates
+     * @param maxVisits the number of nodes to expand before giving up on the targets not reached yet, -1 for no limit
+     * @param deadline the {@link System#nanoTime()} to give up on the targets not reached yet, -1 for no limit
+     * @return the paths to the reached targets, cheapest first
+     */
+    List<Found> findAll(long start, LongSet targets, long maxVisits, long deadline) {
+        return search(start, new LongHashSet(targets), null, maxVisits, deadline);
+    }
+
+    private List<Found> search(long start, LongHashSet targets, double[] target, long maxVisits, long deadline) {
+        List<Found> found = new ArrayList<>();
+        LongDoubleHashMap costs = new LongDoubleHashMap();
+        LongLongHashMap parents = new LongLongHashMap();
+        LongHashSet settled = new LongHashSet();
+        NodeHeap heap = new NodeHeap();
+        LongDoubleHashMap estimates = target != null ? new LongDoubleHashMap() : null;
+        long visits = 0;
+
+        try (NodeCursor node = cursors.allocateNodeCursor();
+             NodeCursor geo = target != null ? cursors.allocateNodeCursor() : null;
+             PropertyCursor properties = cursors.allocatePropertyCursor()) {
+            costs.put(start, 0d);
+            heap.insertOrDecrease(start, 0d);
+            while (!heap.isEmpty()) {
+                long current = heap.pop();
+                if (targets.remove(current)) {
+                    found.add(found(start, current, parents, costs.get(current)));
+                    if (targets.isEmpty()) break;
+                }
+                settled.add(current);
+                if (++visits == maxVisits) break;
+                // checking the clock for every node would cost more than expanding it
+                if (deadline != -1 && (visits & 0x3FF) == 0 && System.nanoTime() - deadline > 0) break;
+                double cost = costs.get(current);
+
+                read.singleNode(current, node);
+                if (!node.next()) continue;
+                for (Pair<int[], Direction> selection : selections) {
+                    try (RelationshipSelectionCursor rels = relationships(node, selection)) {
+                        while (rels.next()) {
+                            long other = rels.otherNodeReference();
+                            if (settled.contains(other)) continue;
+                            double weight = weight(rels, properties);
+                            // like an unset default weight, NaN weights can't be compared so the relationship is skipped
+                            if (Double.isNaN(weight)) continue;
+                            double newCost = cost + weight;
+                            if (costs.containsKey(other) && costs.get(other) <= newCost) continue;
+                            costs.put(other, newCost);
+                            parents.put(other, rels.relationshipReference());
+                            double priority = newCost;
+                            if (target != null) {
+                                double remaining = estimates.getIfAbsent(other, Double.NaN);
+                                if (Double.isNaN(remaining)) {
+                                    remaining = distance(coordinates(other, geo, properties), target);
+                                    estimates.put(other, remaining);
+                                }
+                                priority += remaining;
+                            }
+                            heap.insertOrDecrease(other, priority);
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private RelationshipSelectionCursor relationships(NodeCursor node, Pair<int[], Direction> selection) {
+        switch (selection.other()) {
+            case OUTGOING: return RelationshipSelections.outgoingCursor(cursors, node, selection.first());
+            case INCOMING: return RelationshipSelections.incomingCursor(cursors, node, selection.first());
+            default: return RelationshipSelections.allCursor(cursors, node, selection.first());
+        }
+    }
+
+    private double weight(RelationshipSelectionCursor rel, PropertyCursor properties) {
+        Value value = Values.NO_VALUE;
+        if (weightKey != TokenRead.NO_TOKEN) {
+            read.relationshipProperties(rel.relationshipReference(), rel.propertiesReference(), properties);
+            value = property(properties, weightKey);
+        }
+        if (value == Values.NO_VALUE) {
+            if (defaultWeight == null) {
+                throw new NotFoundException(String.format("No such property, '%s'.", weightProperty));
+            }
+            return defaultWeight;
+        }
+        return toDouble(value, weightProperty);
+    }
+
+    private double[] coordinates(long nodeId) {
+        try (NodeCursor node = cursors.allocateNodeCursor();
+             PropertyCursor properties = cursors.allocatePropertyCursor()) {
+            return coordinates(nodeId, node, properties);
+        }
+    }
+
+    private double[] coordinates(long nodeId, NodeCursor node, PropertyCursor properties) {
+        read.singleNode(nodeId, node);
+        if (!node.next()) throw new NotFoundException("Node " + nodeId + " not found");
+        read.nodeProperties(node.nodeReference(), node.propertiesReference(), properties);
+        Value latitude = Values.NO_VALUE;
+        Value longitude = Values.NO_VALUE;
+        while (properties.next()) {
+            if (properties.propertyKey() == latitudeKey) latitude = properties.propertyValue();
+            else if (properties.propertyKey() == longitudeKey) longitude = properties.propertyValue();
+        }
+        if (latitude == Values.NO_VALUE) throw new NotFoundException(String.format("No such property, '%s'.", latitudeProperty));
+        if (longitude == Values.NO_VALUE) throw new NotFoundException(String.format("No such property, '%s'.", longitudeProperty));
+        return new double[]{toDouble(latitude, latitudeProperty), toDouble(longitude, longitudeProperty)};
+    }
+
+    private static Value property(PropertyCursor properties, int key) {
+        while (properties.next()) {
+            if (properties.propertyKey() == key) return properties.propertyValue();
+        }
+        return Values.NO_VALUE;
+    }
+
+    private static double toDouble(Value value, String property) {
+        if (value instanceof NumberValue) return ((NumberValue) value).doubleValue();
+        Double number = Util.toDouble(value.asObjectCopy());
+        if (number == null) throw new IllegalArgumentException(String.format("Property '%s' is not a number: %s", property, value));
+        return number;
+    }
+
+    // straight line distance through the earth, it never overestimates the distance along its surface
+    private static double distance(double[] from, double[] to) {
+        double latitude1 = Math.toRadians(from[0]);
+        double longitude1 = Math.toRadians(from[1]);
+        double latitude2 = Math.toRadians(to[0]);
+        double longitude2 = Math.toRadians(to[1]);
+        double cLa1 = Math.cos(latitude1);
+        double xA = EARTH_RADIUS * cLa1 * Math.cos(longitude1);
+        double yA = EARTH_RADIUS * cLa1 * Math.sin(longitude1);
+        double zA = EARTH_RADIUS * Math.sin(latitude1);
+        double cLa2 = Math.cos(latitude2);
+        double xB = EARTH_RADIUS * cLa2 * Math.cos(longitude2);
+        double yB = EARTH_RADIUS * cLa2 * Math.sin(longitude2);
+        double zB = EARTH_RADIUS * Math.sin(latitude2);
+        return Math.sqrt((xA - xB) * (xA - xB) + (yA - yB) * (yA - yB) + (zA - zB) * (zA - zB));
+    }
+
+    private Found found(long start, long end, LongLongHashMap parents, double weight) {
+        LongArrayList rels = new LongArrayList();
+        try (RelationshipScanCursor cursor = cursors.allocateRelationshipScanCursor()) {
+            long node = end;
+            while (node != start) {
+                long rel = parents.get(node);
+                rels.add(rel);
+                read.singleRelationship(rel, cursor);
+                cursor.next();
+                node = cursor.sourceNodeReference() == node ? cursor.targetNodeReference() : cursor.sourceNodeReference();
+            }
+        }
+        return new Found(start, weight, rels.reverseThis().toArray());
+    }
+}
@@ -0,0 +1,235 @@
+package apoc.cache;
+
+import apoc.util.Util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Concurrent key-value cache with an optional time to live per entry and a maximum number of entries.
+ * Expired entries are dropped when they are read or when the cache overflows, then the least recently
+ * used entries are evicted until the cache is 10% below its maximum size, so the cost of finding them
+ * is spread over many writes.
+ */
+class BoundedCache {
+
+    private static final double EVICT_TO = 0.9;
+    private static final long WAIT_MILLIS = 100;
+
+    private static final class Entry {
+        final Object value;
+        final long expiresAt;
+        volatile long lastAccess;
+
+        Entry(Object value, long ttlMillis) {
+            this.value = value;
+            this.lastAccess = System.nanoTime();
+            this.expiresAt = ttlMillis > 0 ? lastAccess + TimeUnit.MILLISECONDS.toNanos(ttlMillis) : Long.MAX_VALUE;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt != Long.MAX_VALUE && now - expiresAt >= 0;
+        }
+    }
+
+    // a value being computed, by the thread that computes it
+    private static final class Computation {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final Thread owner = Thread.currentThread();
+    }
+
+    // eviction candidate, with the access time at the start of the eviction as it may change while sorting
+    private static final class Victim {
+        final String key;
+        final Entry entry;
+        final long lastAccess;
+
+        Victim(String key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+            this.lastAccess = entry.lastAccess;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Computation> computing = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private volatile long maxSize;
+    private volatile long defaultTtl;
+
+    BoundedCache(long maxSize, long defaultTtl) {
+        configure(maxSize, defaultTtl);
+    }
+
+    /**
+     * @param maxSize maximum number of entries, not bounded if not positive
+     * @param defaultTtl time to live in ms of entries stored without one, entries don't expire if not positive
+     */
+    void configure(long maxSize, long defaultTtl) {
+        this.maxSize = maxSize > 0 ? maxSize : Long.MAX_VALUE;
+        this.defaultTtl = defaultTtl;
+        evictIfNeeded();
+    }
+
+    Object get(String key) {
+        Entry entry = entries.get(key);
+        long now = System.nanoTime();
+        if (entry == null || expire(key, entry, now)) {
+            misses.increment();
+            return null;
+        }
+        entry.lastAccess = now;
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * @param ttl time to live in ms, the default one if negative, none if 0
+     * @return the previous value, if it was not expired yet
+     */
+    Object put(String key, Object value, long ttl) {
+        Entry previous = entries.put(key, new Entry(value, ttl < 0 ? defaultTtl : ttl));
+        evictIfNeeded();
+        return live(previous);
+    }
+
+    Object remove(String key) {
+        return live(entries.remove(key));
+    }
+
+    /**
+     * Returns the cached value of the key, or computes and stores it. While the value is computed, other callers asking for
+     * the same key wait for it instead of computing it again, calling {@code checkTermination} every 100ms so they stop
+     * waiting when their transaction is terminated. Asking for the key from within its own computation fails.
+     */
+    Object getOrCompute(String key, Supplier<Object> compute, long ttl, Runnable checkTermination) {
+        Object value = get(key);
+        if (value != null) return value;
+
+        Computation computation = new Computation();
+        Computation running = computing.putIfAbsent(key, computation);
+        if (running != null) {
+            if (running.owner == computation.owner) {
+                throw new IllegalStateException("Recursive computation of the value of " + key);
+            }
+            return await(running.future, checkTermination);
+        }
+        CompletableFuture<Object> future = computation.future;
+        try {
+            // someone else might have finished computing it since we looked
+            Entry entry = entries.get(key);
+            value = entry == null || entry.isExpired(System.nanoTime()) ? compute.get() : entry.value;
+            if (value != null && (entry == null || entry.value != value)) {
+                put(key, value, ttl);
+            }
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // errors too, a future that is never completed would keep the waiters waiting
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            computing.remove(key, computation);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> future, Runnable checkTermination) {
+        while (true) {
+            checkTermination.run();
+            try {
+                return future.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // still computing
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for a value to be computed", e);
+            }
+        }
+    }
+
+    /**
+     * @return the entries whose key starts with the prefix, with the prefix removed like {@link Util#subMap(Map, String)}
+     */
+    Map<String, Object> subMap(String prefix) {
+        Map<String, Object> values = new HashMap<>();
+        long now = System.nanoTime();
+        entries.forEach((key, entry) -> {
+            if (key.startsWith(prefix) && !expire(key, entry, now)) {
+                values.put(key, entry.value);
+            }
+        });
+        return Util.subMap(values, prefix);
+    }
+
+    long size() {
+        return entries.size();
+    }
+
+    void clear() {
+        entries.clear();
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        expirations.reset();
+    }
+
+    Map<String, Object> stats() {
+        long hitCount = hits.sum(), missCount = misses.sum();
+        return Util.map("size", size(),
+                "maxSize", maxSize == Long.MAX_VALUE ? -1 : maxSize,
+                "defaultTtl", defaultTtl,
+                "hits", hitCount,
+                "misses", missCount,
+                "hitRatio", hitCount + missCount == 0 ? 0d : (double) hitCount / (hitCount + missCount),
+                "evictions", evictions.sum(),
+                "expirations", expirations.sum());
+    }
+
+    private boolean expire(String key, Entry entry, long now) {
+        if (!entry.isExpired(now)) return false;
+        if (entries.remove(key, entry)) expirations.increment();
+        return true;
+    }
+
+    private static Object live(Entry entry) {
+        return entry == null || entry.isExpired(System.nanoTime()) ? null : entry.value;
+    }
+
+    private void evictIfNeeded() {
+        if (entries.size() <= maxSize || !evictionLock.tryLock()) return;
+        try {
+            long now = System.nanoTime();
+            List<Victim> candidates = new ArrayList<>(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                if (!expire(e.getKey(), e.getValue(), now)) candidates.add(new Victim(e.getKey(), e.getValue()));
+            }
+            if (candidates.size() <= maxSize) return;
+            long target = (long) (maxSize * EVICT_TO);
+            candidates.sort(Comparator.comparingLong(v -> v.lastAccess));
+            for (int i = 0; i < candidates.size() && entries.size() > target; i++) {
+                Victim victim = candidates.get(i);
+                if (entries.remove(victim.key, victim.entry)) evictions.increment();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+}
@@ -2,41 +2,59 @@ package apoc.cache;
 
 import apoc.ApocConfig;
 import apoc.result.KeyValueResult;
+import apoc.result.MapResult;
 import apoc.result.ObjectResult;
-import apoc.util.Util;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.internal.helpers.collection.Iterators;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.procedure.*;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Stream;
 
+import static apoc.ApocConfig.APOC_STATIC_CACHE_MAX_SIZE;
+import static apoc.ApocConfig.APOC_STATIC_CACHE_TTL;
+
 /**
  * @author mh
  * @since 22.05.16
  */
 public class Static {
 
+    // not bounded unless apoc.static_cache.max_size is set
+    public static final int DEFAULT_MAX_SIZE = 0;
+
     @Context
     public GraphDatabaseAPI db;
 
     @Context
     public ApocConfig apocConfig;
 
-    private static Map<String,Object> storage = new HashMap<>();
+    @Context
+    public Transaction tx;
+
+    @Context
+    public TerminationGuard terminationGuard;
+
+    private static final BoundedCache storage = new BoundedCache(DEFAULT_MAX_SIZE, 0);
+    private static volatile boolean configured;
 
     @Procedure("apoc.static.get")
     @Deprecated
     @Description("apoc.static.get(name) - returns statically stored value from config (apoc.static.<key>) or server lifetime storage")
     public Stream<ObjectResult> getProcedure(@Name("key") String key) {
-        return Stream.of(new ObjectResult(storage.getOrDefault(key, fromConfig(key))));
+        return Stream.of(new ObjectResult(get(key)));
     }
 
     @UserFunction("apoc.static.get")
     @Description("apoc.static.get(name) - returns statically stored value from config (apoc.static.<key>) or server lifetime storage")
     public Object get(@Name("key") String key) {
-        return storage.getOrDefault(key, fromConfig(key));
+        Object value = storage().get(key);
+        return value == null ? fromConfig(key) : value;
     }
 
     @UserFunction("apoc.static.getAll")
@@ -45,12 +63,27 @@ public class Static {
         return getFromConfigAndStorage(prefix);
     }
 
+    @UserFunction("apoc.static.getOrCompute")
+    @Description("apoc.static.getOrCompute(name, statement, params, ttl) - returns the value stored under key in server lifetime storage, or stores and returns the first column of the first row of the statement, which runs only once for concurrent callers. ttl is in ms, the configured one if negative, no expiry if 0")
+    public Object getOrCompute(@Name("key") String key, @Name("statement") String statement,
+                               @Name(value = "params", defaultValue = "{}") Map<String, Object> params,
+                               @Name(value = "ttl", defaultValue = "-1") long ttl) {
+        return storage().getOrCompute(key, () -> firstValue(statement, params), ttl, terminationGuard::check);
+    }
+
+    private Object firstValue(String statement, Map<String, Object> params) {
+        try (Result result = tx.execute(statement, params == null ? Collections.emptyMap() : params);
+             ResourceIterator<Object> values = result.columnAs(result.columns().get(0))) {
+            return values.hasNext() ? values.next() : null;
+        }
+    }
+
     private HashMap<String, Object> getFromConfigAndStorage(@Name("prefix") String prefix) {
 
         HashMap<String, Object> result = new HashMap<>();
         String configPrefix = prefix.isEmpty() ? "apoc.static": "apoc.static." + prefix;
         Iterators.stream(apocConfig.getKeys(configPrefix)).forEach(s -> result.put(s.substring(configPrefix.length()+1), apocConfig.getString(s)));
-        result.putAll(Util.subMap(storage, prefix));
+        result.putAll(storage().subMap(prefix));
         return result;
     }
 
@@ -66,13 +99,32 @@ public class Static {
     }
 
     @Procedure("apoc.static.set")
-    @Description("apoc.static.set(name, value) - stores value under key for server lifetime storage, returns previously stored or configured value")
-    public Stream<ObjectResult> set(@Name("key") String key, @Name("value") Object value) {
-        Object previous = value == null ? storage.remove(key) : storage.put(key, value);
+    @Description("apoc.static.set(name, value, ttl) - stores value under key for server lifetime storage, returns previously stored or configured value. ttl is in ms, the configured one if negative, no expiry if 0")
+    public Stream<ObjectResult> set(@Name("key") String key, @Name("value") Object value, @Name(value = "ttl", defaultValue = "-1") long ttl) {
+        Object previous = value == null ? storage().remove(key) : storage().put(key, value, ttl);
         return Stream.of(new ObjectResult(previous==null ? fromConfig(key) : previous));
     }
 
+    @Procedure("apoc.static.stats")
+    @Description("apoc.static.stats() - returns size, hits, misses, evictions and expirations of the server lifetime storage")
+    public Stream<MapResult> stats() {
+        return Stream.of(new MapResult(storage().stats()));
+    }
+
+    private BoundedCache storage() {
+        if (!configured) {
+            synchronized (storage) {
+                if (!configured) {
+                    storage.configure(apocConfig.getInt(APOC_STATIC_CACHE_MAX_SIZE, DEFAULT_MAX_SIZE), apocConfig.getInt(APOC_STATIC_CACHE_TTL, 0));
+                    configured = true;
+                }
+            }
+        }
+        return storage;
+    }
+
     public static void clear() {
         storage.clear();
+        configured = false;
     }
 }
@@ -0,0 +1,167 @@
+package apoc.export.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory addressed by {@code long} offsets, allocated in fixed size pages. The first pages are direct buffers,
+ * once they would exceed {@link #DIRECT_LIMIT} the pages are memory-mapped regions of a temporary file, so large
+ * mappings are neither bound by {@code -XX:MaxDirectMemorySize} nor by the physical memory.
+ * Values never straddle a page as long as they are naturally aligned, callers are responsible for that.
+ */
+class ByteBufferPages implements AutoCloseable {
+
+    static final int MAX_PAGE_SHIFT = 27;
+
+    // the bytes of direct pages per instance, beyond that the pages are mapped from a file
+    static final long DIRECT_LIMIT = 1L << 26;
+
+    // Unsafe.invokeCleaner, to free the memory of the pages on close instead of at some later garbage collection
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+    private final int pageShift;
+    private final long pageMask;
+    private final long directLimit;
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    private File file;
+    private FileChannel channel;
+
+    /**
+     * @param pageShift log2 of the page size, at most {@link #MAX_PAGE_SHIFT}
+     * @param onDisk if true all pages are mapped from a temporary file, which is deleted on {@link #close()}
+     */
+    ByteBufferPages(int pageShift, boolean onDisk) {
+        this(pageShift, onDisk ? 0 : DIRECT_LIMIT);
+    }
+
+    ByteBufferPages(int pageShift, long directLimit) {
+        this.pageShift = Math.min(pageShift, MAX_PAGE_SHIFT);
+        this.pageMask = (1L << this.pageShift) - 1;
+        this.directLimit = directLimit;
+    }
+
+    long pageSize() {
+        return 1L << pageShift;
+    }
+
+    long allocated() {
+        return (long) pages.size() << pageShift;
+    }
+
+    boolean isMapped() {
+        return channel != null;
+    }
+
+    /**
+     * Makes sure that all addresses below {@code size} are backed by a page.
+     */
+    void ensure(long size) {
+        while (allocated() < size) {
+            pages.add(newPage());
+        }
+    }
+
+    private ByteBuffer newPage() {
+        final int pageSize = (int) pageSize();
+        if (allocated() + pageSize <= directLimit) {
+            return ByteBuffer.allocateDirect(pageSize).order(ByteOrder.nativeOrder());
+        }
+        try {
+            if (channel == null) {
+                file = File.createTempFile("apoc-import-ids", ".bin");
+                file.deleteOnExit();
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            return channel.map(FileChannel.MapMode.READ_WRITE, allocated(), pageSize).order(ByteOrder.nativeOrder());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map page of the id mapping file " + file, e);
+        }
+    }
+
+    private ByteBuffer page(long address) {
+        return pages.get((int) (address >>> pageShift));
+    }
+
+    private int offset(long address) {
+        return (int) (address & pageMask);
+    }
+
+    long getLong(long address) {
+        return page(address).getLong(offset(address));
+    }
+
+    void putLong(long address, long value) {
+        page(address).putLong(offset(address), value);
+    }
+
+    int getInt(long address) {
+        return page(address).getInt(offset(address));
+    }
+
+    void putInt(long address, int value) {
+        page(address).putInt(offset(address), value);
+    }
+
+    byte get(long address) {
+        return page(address).get(offset(address));
+    }
+
+    void put(long address, byte[] bytes) {
+        final ByteBuffer page = page(address);
+        final int offset = offset(address);
+        for (int i = 0; i < bytes.length; i++) {
+            page.put(offset + i, bytes[i]);
+        }
+    }
+
+    /**
+     * Frees the direct pages and unmaps the mapped ones right away, the pages must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        pages.forEach(ByteBufferPages::release);
+        pages.clear();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore, the file is removed anyway
+            }
+            file.delete();
+        }
+    }
+
+    private static void release(ByteBuffer page) {
+        if (INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invokeExact(page);
+        } catch (Throwable e) {
+            // left to the garbage collector
+        }
+    }
+
+    private static MethodHandle invokeCleaner() {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // before Java 9 the buffers are only freed by the garbage collector
+            return null;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package apoc.export.csv;
 
+import apoc.Pools;
 import apoc.export.util.BatchTransaction;
 import apoc.export.util.CountingReader;
 import apoc.export.util.ProgressReporter;
@@ -18,20 +19,31 @@ public class CsvEntityLoader {
 
     private final CsvLoaderConfig clc;
     private final ProgressReporter reporter;
+    private final Pools pools;
 
     /**
      * @param clc configuration object
      * @param reporter
      */
     public CsvEntityLoader(CsvLoaderConfig clc, ProgressReporter reporter) {
+        this(clc, reporter, null);
+    }
+
+    /**
+     * @param clc configuration object
+     * @param reporter
+     * @param pools used to create relationships concurrently if {@link CsvLoaderConfig#isParallel()} is set
+     */
+    public CsvEntityLoader(CsvLoaderConfig clc, ProgressReporter reporter, Pools pools) {
         this.clc = clc;
         this.reporter = reporter;
+        this.pools = pools;
     }
 
     /**
      * Loads nodes from a CSV file with given labels to an online database, and fills the {@code idMapping},
      * which will be used by the {@link #loadRelationships(String, String, GraphDatabaseService, Map)}
-     * method.
+     * method. The {@link IdMapper} of each id space is created from the {@link CsvLoaderConfig}.
      *
      * @param fileName URI of the CSV file representing the node
      * @param labels list of node labels to be applied to each node
@@ -40,7 +52,7 @@ public class CsvEntityLoader {
      * @throws IOException
      */
     public void loadNodes(final String fileName, final List<String> labels, final GraphDatabaseService db,
-                          final Map<String, Map<String, Long>> idMapping) throws IOException {
+                          final Map<String, IdMapper> idMapping) throws IOException {
         final CountingReader reader = FileUtils.readerFor(fileName);
         final String header = readFirstLine(reader);
         reader.skip(clc.getSkipLines() - 1);
@@ -53,8 +65,7 @@ public class CsvEntityLoader {
         final Optional<String> idAttribute = idField.isPresent() ? Optional.of(idField.get().getName()) : Optional.empty();
         final String idSpace = idField.isPresent() ? idField.get().getIdSpace() : CsvLoaderConstants.DEFAULT_IDSPACE;
 
-        idMapping.putIfAbsent(idSpace, new HashMap<>());
-        final Map<String, Long> idspaceIdMapping = idMapping.get(idSpace);
+        final IdMapper idspaceIdMapping = idMapping.computeIfAbsent(idSpace, k -> IdMapper.create(clc));
 
         final Map<String, LoadCsv.Mapping> mapping = fields.stream().collect(
                 Collectors.toMap(
@@ -74,8 +85,11 @@ public class CsvEntityLoader {
 
         final String[] loadCsvCompatibleHeader = fields.stream().map(f -> f.getName()).toArray(String[]::new);
         int lineNo = 0;
-        try (BatchTransaction btx = new BatchTransaction(db, clc.getBatchSize(), reporter)) {
-            for (String[] line : csv.readAll()) {
+        try (CSVReader csvReader = csv; BatchTransaction btx = new BatchTransaction(db, clc.getBatchSize(), reporter)) {
+            String[] line;
+            // rows are pulled one at a time through the reader's fixed-size buffer and committed every batchSize rows,
+            // so memory usage depends on the batch size rather than on the file size
+            while ((line = csvReader.readNext()) != null) {
                 lineNo++;
 
                 final EnumSet<LoadCsvConfig.Results> results = EnumSet.of(LoadCsvConfig.Results.map);
@@ -87,7 +101,7 @@ public class CsvEntityLoader {
 
                 // if 'ignore duplicate nodes' is false, there is an id field and the mapping already has the current id,
                 // we either fail the loading process or skip it depending on the 'ignore duplicate nodes' setting
-                if (idField.isPresent() && idspaceIdMapping.containsKey(nodeCsvId)) {
+                if (idField.isPresent() && idspaceIdMapping.get(nodeCsvId) != IdMapper.NOT_FOUND) {
                     if (clc.getIgnoreDuplicateNodes()) {
                         continue;
                     } else {
@@ -133,6 +147,7 @@ public class CsvEntityLoader {
                     }
                 }
                 reporter.update(1, 0, props++);
+                btx.increment();
             }
         }
     }
@@ -150,7 +165,7 @@ public class CsvEntityLoader {
      */
     public void loadRelationships(
             final String fileName, final String type, final GraphDatabaseService db,
-            final Map<String, Map<String, Long>> idMapping) throws IOException {
+            final Map<String, IdMapper> idMapping) throws IOException {
         final CountingReader reader = FileUtils.readerFor(fileName);
         final String header = readFirstLine(reader);
         final List<CsvHeaderField> fields = CsvHeaderFields.processHeader(header, clc.getDelimiter(), clc.getQuotationCharacter());
@@ -186,9 +201,15 @@ public class CsvEntityLoader {
         final CSVReader csv = new CSVReader(reader, clc.getDelimiter());
         final String[] loadCsvCompatibleHeader = fields.stream().map(f -> f.getName()).toArray(String[]::new);
 
+        // the import already runs on the default pool and waits for the batches, so they get threads of their own
+        final ParallelRelationshipLoader parallelLoader = clc.isParallel() && pools != null
+                ? new ParallelRelationshipLoader(db, pools.newDedicatedExecutorService("import-csv", clc.getConcurrency()), clc, reporter, edgePropertiesFields)
+                : null;
+
         int lineNo = 0;
-        try (BatchTransaction btx = new BatchTransaction(db, clc.getBatchSize(), reporter)) {
-            for (String[] line : csv.readAll()) {
+        try (CSVReader csvReader = csv; ParallelRelationshipLoader parallel = parallelLoader; BatchTransaction btx = parallelLoader == null ? new BatchTransaction(db, clc.getBatchSize(), reporter) : null) {
+            String[] line;
+            while ((line = csvReader.readNext()) != null) {
                 lineNo++;
 
                 final EnumSet<LoadCsvConfig.Results> results = EnumSet.of(LoadCsvConfig.Results.map);
@@ -197,18 +218,10 @@ public class CsvEntityLoader {
                 );
 
                 final Object startId = result.map.get(CsvLoaderConstants.START_ID_ATTR);
-                final Object startInternalId = idMapping.get(startIdField.getIdSpace()).get(startId);
-                if (startInternalId == null) {
-                    throw new IllegalStateException("Node for id space " + endIdField.getIdSpace() + " and id " + startId + " not found");
-                }
-                final Node source = btx.getTransaction().getNodeById((long) startInternalId);
+                final long startInternalId = lookupNodeId(idMapping, startIdField.getIdSpace(), startId);
 
                 final Object endId = result.map.get(CsvLoaderConstants.END_ID_ATTR);
-                final Object endInternalId = idMapping.get(endIdField.getIdSpace()).get(endId);
-                if (endInternalId == null) {
-                    throw new IllegalStateException("Node for id space " + endIdField.getIdSpace() + " and id " + endId + " not found");
-                }
-                final Node target = btx.getTransaction().getNodeById((long) endInternalId);
+                final long endInternalId = lookupNodeId(idMapping, endIdField.getIdSpace(), endId);
 
                 final String currentType;
                 final Object overridingType = result.map.get(CsvLoaderConstants.TYPE_ATTR);
@@ -217,19 +230,45 @@ public class CsvEntityLoader {
                 } else {
                     currentType = type;
                 }
-                final Relationship rel = source.createRelationshipTo(target, RelationshipType.withName(currentType));
 
-                // add properties
-                int props = 0;
-                for (CsvHeaderField field : edgePropertiesFields) {
-                    final String name = field.getName();
-                    Object value = result.map.get(name);
-                    boolean propertyAdded = CsvPropertyConverter.addPropertyToGraphEntity(rel, field, value);
-                    props += propertyAdded ? 1 : 0;
+                if (parallelLoader != null) {
+                    parallelLoader.add(new ParallelRelationshipLoader.Row(startInternalId, endInternalId, currentType, result.map));
+                } else {
+                    final int props = createRelationship(btx.getTransaction(), startInternalId, endInternalId, currentType, result.map, edgePropertiesFields);
+                    reporter.update(0, 1, props);
+                    btx.increment();
                 }
-                reporter.update(0, 1, props);
             }
+            if (parallelLoader != null) {
+                parallelLoader.flush();
+            }
+        }
+    }
+
+    static int createRelationship(Transaction tx, long startInternalId, long endInternalId, String type,
+                                  Map<String, Object> values, List<CsvHeaderField> edgePropertiesFields) {
+        final Node source = tx.getNodeById(startInternalId);
+        final Node target = tx.getNodeById(endInternalId);
+        final Relationship rel = source.createRelationshipTo(target, RelationshipType.withName(type));
+
+        // add properties
+        int props = 0;
+        for (CsvHeaderField field : edgePropertiesFields) {
+            final String name = field.getName();
+            Object value = values.get(name);
+            boolean propertyAdded = CsvPropertyConverter.addPropertyToGraphEntity(rel, field, value);
+            props += propertyAdded ? 1 : 0;
+        }
+        return props;
+    }
+
+    private static long lookupNodeId(Map<String, IdMapper> idMapping, String idSpace, Object csvId) {
+        final IdMapper idspaceIdMapping = idMapping.get(idSpace);
+        final long internalId = idspaceIdMapping == null || csvId == null ? IdMapper.NOT_FOUND : idspaceIdMapping.get(csvId.toString());
+        if (internalId == IdMapper.NOT_FOUND) {
+            throw new IllegalStateException("Node for id space " + idSpace + " and id " + csvId + " not found");
         }
+        return internalId;
     }
 
     private static String readFirstLine(CountingReader reader) throws IOException {
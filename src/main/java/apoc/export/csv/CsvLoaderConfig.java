@@ -1,5 +1,7 @@
 package apoc.export.csv;
 
+import apoc.util.Util;
+
 import java.util.Map;
 
 /**
@@ -15,6 +17,10 @@ public class CsvLoaderConfig {
     private static final String SKIP_LINES = "skipLines";
     private static final String BATCH_SIZE = "batchSize";
     private static final String IGNORE_DUPLICATE_NODES = "ignoreDuplicateNodes";
+    private static final String SPILL_ID_MAPPING = "spillIdMapping";
+    private static final String PARALLEL = "parallel";
+    private static final String CONCURRENCY = "concurrency";
+    private static final String RETRIES = "retries";
 
     private static char DELIMITER_DEFAULT = ',';
     private static char ARRAY_DELIMITER_DEFAULT = ';';
@@ -23,6 +29,10 @@ public class CsvLoaderConfig {
     private static int SKIP_LINES_DEFAULT = 1;
     private static int BATCH_SIZE_DEFAULT = 2000;
     private static boolean IGNORE_DUPLICATE_NODES_DEFAULT = false;
+    private static boolean SPILL_ID_MAPPING_DEFAULT = false;
+    private static boolean PARALLEL_DEFAULT = false;
+    private static int CONCURRENCY_DEFAULT = Runtime.getRuntime().availableProcessors();
+    private static int RETRIES_DEFAULT = 0;
 
     private final char delimiter;
     private final char arrayDelimiter;
@@ -31,6 +41,10 @@ public class CsvLoaderConfig {
     private final int skipLines;
     private final int batchSize;
     private final boolean ignoreDuplicateNodes;
+    private final boolean spillIdMapping;
+    private final boolean parallel;
+    private final int concurrency;
+    private final int retries;
 
     private CsvLoaderConfig(Builder builder) {
         this.delimiter = builder.delimiter;
@@ -40,6 +54,10 @@ public class CsvLoaderConfig {
         this.skipLines = builder.skipLines;
         this.batchSize = builder.batchSize;
         this.ignoreDuplicateNodes = builder.ignoreDuplicateNodes;
+        this.spillIdMapping = builder.spillIdMapping;
+        this.parallel = builder.parallel;
+        this.concurrency = builder.concurrency;
+        this.retries = builder.retries;
     }
 
     public char getDelimiter() {
@@ -68,6 +86,14 @@ public class CsvLoaderConfig {
 
     public boolean getIgnoreDuplicateNodes() { return ignoreDuplicateNodes; }
 
+    public boolean getSpillIdMapping() { return spillIdMapping; }
+
+    public boolean isParallel() { return parallel; }
+
+    public int getConcurrency() { return concurrency; }
+
+    public int getRetries() { return retries; }
+
     /**
      * Creates builder to build {@link CsvLoaderConfig}.
      *
@@ -102,6 +128,10 @@ public class CsvLoaderConfig {
         if (config.get(SKIP_LINES) != null) builder.skipLines((int) config.get(SKIP_LINES));
         if (config.get(BATCH_SIZE) != null) builder.batchSize((int) config.get(BATCH_SIZE));
         if (config.get(IGNORE_DUPLICATE_NODES) != null) builder.ignoreDuplicateNodes((boolean) config.get(IGNORE_DUPLICATE_NODES));
+        if (config.get(SPILL_ID_MAPPING) != null) builder.spillIdMapping((boolean) config.get(SPILL_ID_MAPPING));
+        if (config.get(PARALLEL) != null) builder.parallel((boolean) config.get(PARALLEL));
+        if (config.get(CONCURRENCY) != null) builder.concurrency(Util.toInteger(config.get(CONCURRENCY)));
+        if (config.get(RETRIES) != null) builder.retries(Util.toInteger(config.get(RETRIES)));
 
         return builder.build();
     }
@@ -117,6 +147,10 @@ public class CsvLoaderConfig {
         private int skipLines = SKIP_LINES_DEFAULT;
         private int batchSize = BATCH_SIZE_DEFAULT;
         private boolean ignoreDuplicateNodes = IGNORE_DUPLICATE_NODES_DEFAULT;
+        private boolean spillIdMapping = SPILL_ID_MAPPING_DEFAULT;
+        private boolean parallel = PARALLEL_DEFAULT;
+        private int concurrency = CONCURRENCY_DEFAULT;
+        private int retries = RETRIES_DEFAULT;
 
         private Builder() {
         }
@@ -156,6 +190,26 @@ public class CsvLoaderConfig {
             return this;
         }
 
+        public Builder spillIdMapping(boolean spillIdMapping) {
+            this.spillIdMapping = spillIdMapping;
+            return this;
+        }
+
+        public Builder parallel(boolean parallel) {
+            this.parallel = parallel;
+            return this;
+        }
+
+        public Builder concurrency(int concurrency) {
+            this.concurrency = Math.max(1, concurrency);
+            return this;
+        }
+
+        public Builder retries(int retries) {
+            this.retries = Math.max(0, retries);
+            return this;
+        }
+
         public CsvLoaderConfig build() {
             return new CsvLoaderConfig(this);
         }
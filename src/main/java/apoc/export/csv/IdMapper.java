@@ -0,0 +1,43 @@
+package apoc.export.csv;
+
+/**
+ * Maps the ids of one id space in the CSV files to the internal ids of the nodes created for them.
+ * Implementations are selected from the {@link CsvLoaderConfig}, see {@link #create(CsvLoaderConfig)}.
+ *
+ * Lookups may be issued concurrently once all nodes of an id space have been loaded, writes are single threaded.
+ */
+public interface IdMapper extends AutoCloseable {
+
+    long NOT_FOUND = -1L;
+
+    /**
+     * Adds a mapping, an id that is already mapped keeps its first node id.
+     *
+     * @param csvId id of the node as found in the CSV file
+     * @param nodeId internal id of the created node
+     */
+    void put(String csvId, long nodeId);
+
+    /**
+     * @param csvId id of the node as found in the CSV file
+     * @return the internal node id or {@link #NOT_FOUND}
+     */
+    long get(String csvId);
+
+    long size();
+
+    @Override
+    void close();
+
+    /**
+     * Numeric ids ({@code stringIds: false}) are kept in a primitive long to long map on the heap,
+     * string ids in a compact off-heap hash table, which moves to memory-mapped temporary files once it
+     * gets large. With {@code spillIdMapping: true} both are kept in memory-mapped temporary files from the start.
+     */
+    static IdMapper create(CsvLoaderConfig clc) {
+        if (clc.getStringIds()) {
+            return new OffHeapIdMapper.StringKeys(clc.getSpillIdMapping());
+        }
+        return clc.getSpillIdMapping() ? new OffHeapIdMapper.LongKeys(true) : new LongIdMapper();
+    }
+}
@@ -38,19 +38,23 @@ public class ImportCsv {
                     final ProgressReporter reporter = new ProgressReporter(null, null, new ProgressInfo("progress.csv", "file", "csv"));
 
                     final CsvLoaderConfig clc = CsvLoaderConfig.from(config);
-                    final CsvEntityLoader loader = new CsvEntityLoader(clc, reporter);
+                    final CsvEntityLoader loader = new CsvEntityLoader(clc, reporter, pools);
 
-                    final Map<String, Map<String, Long>> idMapping = new HashMap<>();
-                    for (Map<String, Object> node : nodes) {
-                        final String fileName = (String) node.get("fileName");
-                        final List<String> labels = (List<String>) node.get("labels");
-                        loader.loadNodes(fileName, labels, db, idMapping);
-                    }
+                    final Map<String, IdMapper> idMapping = new HashMap<>();
+                    try {
+                        for (Map<String, Object> node : nodes) {
+                            final String fileName = (String) node.get("fileName");
+                            final List<String> labels = (List<String>) node.get("labels");
+                            loader.loadNodes(fileName, labels, db, idMapping);
+                        }
 
-                    for (Map<String, String> relationship : relationships) {
-                        final String fileName = relationship.get("fileName");
-                        final String type = relationship.get("type");
-                        loader.loadRelationships(fileName, type, db, idMapping);
+                        for (Map<String, String> relationship : relationships) {
+                            final String fileName = relationship.get("fileName");
+                            final String type = relationship.get("type");
+                            loader.loadRelationships(fileName, type, db, idMapping);
+                        }
+                    } finally {
+                        idMapping.values().forEach(IdMapper::close);
                     }
 
                     return reporter.getTotal();
@@ -0,0 +1,31 @@
+package apoc.export.csv;
+
+import org.eclipse.collections.impl.map.mutable.primitive.LongLongHashMap;
+
+/**
+ * Heap based {@link IdMapper} for numeric ids, backed by a primitive map to avoid boxing every entry.
+ */
+public class LongIdMapper implements IdMapper {
+
+    private final LongLongHashMap ids = new LongLongHashMap();
+
+    @Override
+    public void put(String csvId, long nodeId) {
+        ids.getIfAbsentPut(Long.parseLong(csvId), nodeId);
+    }
+
+    @Override
+    public long get(String csvId) {
+        return ids.getIfAbsent(Long.parseLong(csvId), NOT_FOUND);
+    }
+
+    @Override
+    public long size() {
+        return ids.size();
+    }
+
+    @Override
+    public void close() {
+        ids.clear();
+    }
+}
@@ -0,0 +1,227 @@
+package apoc.export.csv;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Open addressing hash table living in {@link ByteBufferPages}, so that hundreds of millions of ids
+ * neither fill the heap nor have to be traced by the garbage collector.
+ *
+ * Every slot holds the key (or a reference to it) and the node id + 1, an empty slot is all zeros.
+ */
+abstract class OffHeapIdMapper implements IdMapper {
+
+    private static final int SLOT_SIZE = 16;
+    private static final int INITIAL_CAPACITY_SHIFT = 10;
+    private static final double LOAD_FACTOR = 0.6;
+
+    protected final boolean onDisk;
+    private ByteBufferPages table;
+    private long capacity;
+    private long size;
+
+    OffHeapIdMapper(boolean onDisk) {
+        this.onDisk = onDisk;
+        this.table = newTable(INITIAL_CAPACITY_SHIFT);
+    }
+
+    private ByteBufferPages newTable(int capacityShift) {
+        this.capacity = 1L << capacityShift;
+        final ByteBufferPages pages = new ByteBufferPages(capacityShift + 4, onDisk);
+        pages.ensure(capacity * SLOT_SIZE);
+        return pages;
+    }
+
+    /**
+     * @return hash of the key stored in a slot, used when the table grows
+     */
+    protected abstract long storedHash(long storedKey);
+
+    protected abstract boolean matches(long storedKey, long key, byte[] keyBytes);
+
+    protected long find(long hash, long key, byte[] keyBytes) {
+        final long slot = probe(hash, key, keyBytes);
+        return table.getLong(slot * SLOT_SIZE + 8) - 1;
+    }
+
+    /**
+     * @return false if the key was already present, in which case the mapping is left untouched
+     */
+    protected boolean insert(long hash, long key, byte[] keyBytes, long storedKey, long nodeId) {
+        if (size + 1 > capacity * LOAD_FACTOR) {
+            grow();
+        }
+        final long address = probe(hash, key, keyBytes) * SLOT_SIZE;
+        if (table.getLong(address + 8) != 0) {
+            return false;
+        }
+        table.putLong(address, storedKey);
+        table.putLong(address + 8, nodeId + 1);
+        size++;
+        return true;
+    }
+
+    /**
+     * @return the slot holding the key or the empty slot it would be inserted into
+     */
+    private long probe(long hash, long key, byte[] keyBytes) {
+        final long mask = capacity - 1;
+        long slot = hash & mask;
+        while (true) {
+            final long address = slot * SLOT_SIZE;
+            if (table.getLong(address + 8) == 0 || matches(table.getLong(address), key, keyBytes)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private long freeSlot(long hash) {
+        final long mask = capacity - 1;
+        long slot = hash & mask;
+        while (table.getLong(slot * SLOT_SIZE + 8) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        final ByteBufferPages old = this.table;
+        final long oldCapacity = this.capacity;
+        this.table = newTable(Long.numberOfTrailingZeros(oldCapacity) + 1);
+        for (long slot = 0; slot < oldCapacity; slot++) {
+            final long address = slot * SLOT_SIZE;
+            final long value = old.getLong(address + 8);
+            if (value == 0) continue;
+            final long storedKey = old.getLong(address);
+            // keys are unique, so a free slot is all we need
+            final long target = freeSlot(storedHash(storedKey)) * SLOT_SIZE;
+            table.putLong(target, storedKey);
+            table.putLong(target + 8, value);
+        }
+        old.close();
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        table.close();
+    }
+
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Numeric ids stored inline in the slots.
+     */
+    static class LongKeys extends OffHeapIdMapper {
+
+        LongKeys(boolean onDisk) {
+            super(onDisk);
+        }
+
+        @Override
+        protected long storedHash(long storedKey) {
+            return mix(storedKey);
+        }
+
+        @Override
+        protected boolean matches(long storedKey, long key, byte[] keyBytes) {
+            return storedKey == key;
+        }
+
+        @Override
+        public void put(String csvId, long nodeId) {
+            final long key = Long.parseLong(csvId);
+            insert(mix(key), key, null, key, nodeId);
+        }
+
+        @Override
+        public long get(String csvId) {
+            final long key = Long.parseLong(csvId);
+            return find(mix(key), key, null);
+        }
+    }
+
+    /**
+     * String ids stored as UTF-8 in an append-only key area, records are {@code [hash:int][length:int][bytes]},
+     * 4-byte aligned and never crossing a page; the slots reference the record address.
+     */
+    static class StringKeys extends OffHeapIdMapper {
+
+        private static final int KEY_PAGE_SHIFT = 22;
+        private static final int HEADER_SIZE = 8;
+
+        private final ByteBufferPages keys;
+        private long keysEnd;
+
+        StringKeys(boolean onDisk) {
+            super(onDisk);
+            this.keys = new ByteBufferPages(KEY_PAGE_SHIFT, onDisk);
+        }
+
+        @Override
+        protected long storedHash(long storedKey) {
+            return mix(keys.getInt(storedKey));
+        }
+
+        @Override
+        protected boolean matches(long storedKey, long key, byte[] keyBytes) {
+            if (keys.getInt(storedKey) != (int) key || keys.getInt(storedKey + 4) != keyBytes.length) {
+                return false;
+            }
+            final long start = storedKey + HEADER_SIZE;
+            for (int i = 0; i < keyBytes.length; i++) {
+                if (keys.get(start + i) != keyBytes[i]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void put(String csvId, long nodeId) {
+            final byte[] bytes = csvId.getBytes(StandardCharsets.UTF_8);
+            final int hash = csvId.hashCode();
+            final long recordSize = HEADER_SIZE + bytes.length;
+            if (recordSize > keys.pageSize()) {
+                throw new IllegalArgumentException("Id too long for the id mapping: " + csvId.substring(0, 100) + "...");
+            }
+            // records must not cross page boundaries
+            final long pageRemaining = keys.pageSize() - (keysEnd & (keys.pageSize() - 1));
+            final long address = recordSize > pageRemaining ? keysEnd + pageRemaining : keysEnd;
+            keys.ensure(address + recordSize);
+            keys.putInt(address, hash);
+            keys.putInt(address + 4, bytes.length);
+            keys.put(address + HEADER_SIZE, bytes);
+            // a duplicate leaves keysEnd untouched, so its record is overwritten by the next one
+            if (insert(mix(hash), hash, bytes, address, nodeId)) {
+                keysEnd = align(address + recordSize);
+            }
+        }
+
+        @Override
+        public long get(String csvId) {
+            final byte[] bytes = csvId.getBytes(StandardCharsets.UTF_8);
+            final int hash = csvId.hashCode();
+            return find(mix(hash), hash, bytes);
+        }
+
+        private static long align(long address) {
+            return (address + 3) & ~3L;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            keys.close();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package apoc.export.csv;
+
+import apoc.export.util.ProgressReporter;
+import apoc.util.Util;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Creates relationships concurrently without concurrent transactions competing for the same node locks.
+ *
+ * Rows are buffered in chunks of {@link #BATCHES_PER_WORKER} batches per worker. The node ids of a chunk are split into {@code 2 * concurrency}
+ * ranges and every row is assigned to the cell of the (unordered) pair of ranges its start and end node fall into.
+ * The cells are then executed in rounds following a round-robin schedule, where each range appears in at most
+ * one cell per round, so the batches running at the same time lock disjoint sets of nodes.
+ * The loader owns its executor and shuts it down when closed.
+ */
+class ParallelRelationshipLoader implements AutoCloseable {
+
+    // the batches of rows per worker buffered in a chunk
+    static final int BATCHES_PER_WORKER = 4;
+
+    static class Row {
+        final long start;
+        final long end;
+        final String type;
+        final Map<String, Object> values;
+
+        Row(long start, long end, String type, Map<String, Object> values) {
+            this.start = start;
+            this.end = end;
+            this.type = type;
+            this.values = values;
+        }
+    }
+
+    private final GraphDatabaseService db;
+    private final ExecutorService executor;
+    private final ProgressReporter reporter;
+    private final List<CsvHeaderField> propertyFields;
+    private final int batchSize;
+    private final int retries;
+    private final int partitions;
+    private final int chunkSize;
+    private final List<List<int[]>> rounds;
+    private final List<Row> chunk;
+
+    ParallelRelationshipLoader(GraphDatabaseService db, ExecutorService executor, CsvLoaderConfig clc,
+                               ProgressReporter reporter, List<CsvHeaderField> propertyFields) {
+        this.db = db;
+        this.executor = executor;
+        this.reporter = reporter;
+        this.propertyFields = propertyFields;
+        this.batchSize = clc.getBatchSize();
+        this.retries = clc.getRetries();
+        this.partitions = 2 * clc.getConcurrency();
+        this.rounds = rounds(partitions, clc.getConcurrency());
+        // a few batches per worker, so the rows held on the heap grow with the concurrency but not with its square
+        this.chunkSize = (int) Math.min(Integer.MAX_VALUE / 2, (long) batchSize * clc.getConcurrency() * BATCHES_PER_WORKER);
+        this.chunk = new ArrayList<>(Math.min(chunkSize, 1 << 16));
+    }
+
+    void add(Row row) {
+        chunk.add(row);
+        if (chunk.size() >= chunkSize) {
+            flush();
+        }
+    }
+
+    void flush() {
+        if (chunk.isEmpty()) return;
+
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (Row row : chunk) {
+            min = Math.min(min, Math.min(row.start, row.end));
+            max = Math.max(max, Math.max(row.start, row.end));
+        }
+        final long rangeSize = (max - min) / partitions + 1;
+
+        final List<List<Row>> cells = new ArrayList<>(partitions * partitions);
+        for (int i = 0; i < partitions * partitions; i++) {
+            cells.add(null);
+        }
+        for (Row row : chunk) {
+            final int a = (int) ((row.start - min) / rangeSize);
+            final int b = (int) ((row.end - min) / rangeSize);
+            final int cell = Math.min(a, b) * partitions + Math.max(a, b);
+            if (cells.get(cell) == null) {
+                cells.set(cell, new ArrayList<>());
+            }
+            cells.get(cell).add(row);
+        }
+        chunk.clear();
+
+        for (List<int[]> round : rounds) {
+            final List<Future<long[]>> futures = new ArrayList<>(round.size());
+            for (int[] pair : round) {
+                final List<Row> rows = cells.get(pair[0] * partitions + pair[1]);
+                if (rows != null) {
+                    futures.add(executor.submit(() -> createRelationships(rows)));
+                }
+            }
+            awaitRound(futures);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private long[] createRelationships(List<Row> rows) {
+        long relationships = 0, properties = 0;
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            final List<Row> batch = rows.subList(from, Math.min(from + batchSize, rows.size()));
+            properties += Util.retryInTx(db, tx -> {
+                long props = 0;
+                for (Row row : batch) {
+                    props += CsvEntityLoader.createRelationship(tx, row.start, row.end, row.type, row.values, propertyFields);
+                }
+                return props;
+            }, retries);
+            relationships += batch.size();
+        }
+        return new long[]{relationships, properties};
+    }
+
+    private void awaitRound(List<Future<long[]>> futures) {
+        RuntimeException error = null;
+        for (Future<long[]> future : futures) {
+            try {
+                final long[] counts = future.get();
+                reporter.update(0, counts[0], counts[1]);
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while creating relationships", e);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        reporter.progress("relationship batches committed");
+    }
+
+    /**
+     * Round-robin (circle method) schedule over the pairs of {@code partitions} ranges, every pair of distinct ranges
+     * appears in exactly one round, followed by the pairs of a range with itself split into rounds of at most
+     * {@code concurrency} cells.
+     */
+    static List<List<int[]>> rounds(int partitions, int concurrency) {
+        final List<List<int[]>> rounds = new ArrayList<>();
+        final int last = partitions - 1;
+        for (int r = 0; r < last; r++) {
+            final List<int[]> round = new ArrayList<>(partitions / 2);
+            round.add(pair(r, last));
+            for (int i = 1; i < partitions / 2; i++) {
+                round.add(pair((r + i) % last, (r - i + last) % last));
+            }
+            rounds.add(round);
+        }
+        for (int from = 0; from < partitions; from += concurrency) {
+            final List<int[]> round = new ArrayList<>(concurrency);
+            for (int i = from; i < Math.min(from + concurrency, partitions); i++) {
+                round.add(pair(i, i));
+            }
+            rounds.add(round);
+        }
+        return rounds;
+    }
+
+    private static int[] pair(int a, int b) {
+        return new int[]{Math.min(a, b), Math.max(a, b)};
+    }
+}
@@ -1,25 +1,41 @@
 package apoc.hashing;
 
-import org.neo4j.graphdb.Direction;
+import apoc.Pools;
+import apoc.util.kernel.MultiThreadedGlobalGraphOperations;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.PropertyCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.RelationshipScanCursor;
+import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.internal.kernel.api.TokenSet;
+import org.neo4j.internal.kernel.api.exceptions.LabelNotFoundKernelException;
+import org.neo4j.internal.kernel.api.exceptions.PropertyKeyIdNotFoundKernelException;
+import org.neo4j.internal.kernel.api.exceptions.RelationshipTypeIdNotFoundKernelException;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Description;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.UserFunction;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Formatter;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -28,9 +44,17 @@ public class Fingerprinting {
 
     public static final String DIGEST_ALGORITHM = "MD5";
 
+    private static final int BATCHSIZE = 10_000;
+
     @Context
     public Transaction tx;
 
+    @Context
+    public GraphDatabaseAPI db;
+
+    @Context
+    public Pools pools;
+
     @Context
     public Log log;
 
@@ -86,95 +110,148 @@ public class Fingerprinting {
     }
 
     @UserFunction
-    @Description("calculate a checksum (md5) over a the full graph. Be aware that this function does use in-memomry datastructures depending on the size of your graph.")
+    @Description("calculate a checksum (md5) over a the full graph. The nodes and relationships are hashed in parallel and their hashes combined independent of their order, so the checksum is the same for the same graph regardless of its internal ids.")
     public String fingerprintGraph(@Name(value = "propertyExcludes", defaultValue = "[]") List<String> excludedPropertyKeys) {
         FingerprintingConfig config = new FingerprintingConfig(Collections.singletonMap("propertyExcludes", excludedPropertyKeys));
-        return withMessageDigest(config, messageDigest -> {
-            // step 1: load all nodes, calc their hash and map them to id
-            Map<Long, String> idToNodeHash = tx.getAllNodes().stream().collect(Collectors.toMap(
-                    Node::getId,
-                    node -> fingerprint(node, config),
-                    (aLong, aLong2) -> {
-                        throw new RuntimeException();
-                    },
-                    () -> new TreeMap<>()
-            ));
-
-            // step 2: build inverse map
-            Map<String, Long> nodeHashToId = idToNodeHash.entrySet().stream().collect(Collectors.toMap(
-                    Map.Entry::getValue,
-                    Map.Entry::getKey,
-                    (o, o2) -> {
-                        throw new RuntimeException();
-                    },
-                    () -> new TreeMap<>()
-            ));
-
-            // step 3: iterate nodes in order of their hash (we cannot rely on internal ids)
-            nodeHashToId.entrySet().stream().forEach(entry -> {
-                messageDigest.update(entry.getKey().getBytes());
-
-                Node node = tx.getNodeById(entry.getValue());
-                List<EndNodeRelationshipHashTuple> endNodeRelationshipHashTuples = StreamSupport.stream(node.getRelationships(Direction.OUTGOING).spliterator(), false)
-                        .map(relationship -> {
-                            String endNodeHash = idToNodeHash.get(relationship.getEndNodeId());
-                            String relationshipHash = fingerprint(relationship, excludedPropertyKeys);
-                            return new EndNodeRelationshipHashTuple(endNodeHash, relationshipHash);
-                        }).collect(Collectors.toList());
-
-                endNodeRelationshipHashTuples.stream().sorted().forEach(endNodeRelationshipHashTuple -> {
-                    messageDigest.update(endNodeRelationshipHashTuple.getEndNodeHash().getBytes());
-                    messageDigest.update(endNodeRelationshipHashTuple.getRelationshipHash().getBytes());
-                });
-
-            });
+        ExecutorService pool = pools.getDefaultExecutorService();
+
+        // the relationships are hashed with the hashes of their start and end node, so the sums cover the structure too
+        // an entity that fails to hash fails the whole fingerprint, a sum without it would be a different graph's
+        GraphHash nodes, rels;
+        try {
+            nodes = MultiThreadedGlobalGraphOperations.reduceNodes(db, pool, BATCHSIZE, () -> new GraphHash(config),
+                    (hash, ktx, node) -> hash.add(hash.nodeDigest(ktx, node)), GraphHash::merge);
+            rels = MultiThreadedGlobalGraphOperations.reduceRelationships(db, pool, BATCHSIZE, () -> new GraphHash(config),
+                    (hash, ktx, rel) -> hash.add(hash.relationshipDigest(ktx, rel)), GraphHash::merge);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Failed to fingerprint the graph: " + e.getMessage(), e);
+        }
 
+        return withMessageDigest(config, messageDigest -> {
+            messageDigest.update(nodes.sum());
+            messageDigest.update(rels.sum());
         });
     }
 
-    private static class EndNodeRelationshipHashTuple implements Comparable {
-        private final String endNodeHash;
-        private final String relationshipHash;
+    /**
+     * The sum of the digests of the entities a worker hashed, as a 128 bit number. Sums don't depend on the order of
+     * the entities, so no sorting by hash is needed and only the sum is kept, not the hashes.
+     */
+    private class GraphHash {
+        private final FingerprintingConfig config;
+        private final MessageDigest md;
+        private final DiagnosingMessageDigestDecorator dmd;
+        private final IntObjectHashMap<String> labelNames = new IntObjectHashMap<>();
+        private final IntObjectHashMap<String> typeNames = new IntObjectHashMap<>();
+        private final IntObjectHashMap<String> propertyKeyNames = new IntObjectHashMap<>();
+        private long high, low, count;
+
+        GraphHash(FingerprintingConfig config) {
+            this.config = config;
+            try {
+                this.md = MessageDigest.getInstance(config.getDigestAlgorithm());
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+            this.dmd = new DiagnosingMessageDigestDecorator(md);
+        }
 
-        public EndNodeRelationshipHashTuple(String endNodeHash, String relationshipHash) {
-            this.endNodeHash = endNodeHash;
-            this.relationshipHash = relationshipHash;
+        void add(byte[] digest) {
+            ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOf(digest, 16));
+            add(buffer.getLong(), buffer.getLong(), 1);
         }
 
-        @Override
-        public int compareTo(Object o) {
-            EndNodeRelationshipHashTuple other = (EndNodeRelationshipHashTuple) o;
-            int res = endNodeHash.compareTo(other.endNodeHash);
-            if (res == 0) {
-                res = relationshipHash.compareTo(other.relationshipHash);
-            }
-            return res;
+        private void add(long high, long low, long count) {
+            long sum = this.low + low;
+            long carry = Long.compareUnsigned(sum, this.low) < 0 ? 1 : 0;
+            this.low = sum;
+            this.high += high + carry;
+            this.count += count;
         }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
+        GraphHash merge(GraphHash other) {
+            add(other.high, other.low, other.count);
+            return this;
+        }
 
-            EndNodeRelationshipHashTuple that = (EndNodeRelationshipHashTuple) o;
+        byte[] sum() {
+            return ByteBuffer.allocate(24).putLong(high).putLong(low).putLong(count).array();
+        }
 
-            if (endNodeHash != null ? !endNodeHash.equals(that.endNodeHash) : that.endNodeHash != null) return false;
-            return relationshipHash != null ? relationshipHash.equals(that.relationshipHash) : that.relationshipHash == null;
+        // the same as the hash of the node by apoc.hashing.fingerprint, read through the kernel cursors
+        byte[] nodeDigest(KernelTransaction ktx, NodeCursor node) {
+            TokenRead tokenRead = ktx.tokenRead();
+            TokenSet labels = node.labels();
+            String[] names = new String[labels.numberOfTokens()];
+            for (int i = 0; i < names.length; i++) {
+                int label = labels.token(i);
+                names[i] = labelNames.getIfAbsentPut(label, () -> labelName(tokenRead, label));
+            }
+            Arrays.sort(names);
+            for (String name : names) {
+                dmd.update(name.getBytes());
+            }
+            try (PropertyCursor properties = ktx.cursors().allocatePropertyCursor()) {
+                ktx.dataRead().nodeProperties(node.nodeReference(), node.propertiesReference(), properties);
+                fingerprint(dmd, properties(tokenRead, properties), config);
+            }
+            return md.digest();
+        }
+
+        byte[] relationshipDigest(KernelTransaction ktx, RelationshipScanCursor rel) {
+            TokenRead tokenRead = ktx.tokenRead();
+            Read read = ktx.dataRead();
+            String start, end;
+            try (NodeCursor node = ktx.cursors().allocateNodeCursor()) {
+                read.singleNode(rel.sourceNodeReference(), node);
+                node.next();
+                start = renderAsHex(nodeDigest(ktx, node));
+                read.singleNode(rel.targetNodeReference(), node);
+                node.next();
+                end = renderAsHex(nodeDigest(ktx, node));
+            }
+            int type = rel.type();
+            dmd.update(typeNames.getIfAbsentPut(type, () -> relationshipTypeName(tokenRead, type)).getBytes());
+            dmd.update(start.getBytes());
+            dmd.update(end.getBytes());
+            try (PropertyCursor properties = ktx.cursors().allocatePropertyCursor()) {
+                read.relationshipProperties(rel.relationshipReference(), rel.propertiesReference(), properties);
+                fingerprint(dmd, properties(tokenRead, properties), config);
+            }
+            return md.digest();
+        }
+
+        private Map<String, Object> properties(TokenRead tokenRead, PropertyCursor properties) {
+            Map<String, Object> values = new HashMap<>();
+            while (properties.next()) {
+                int key = properties.propertyKey();
+                values.put(propertyKeyNames.getIfAbsentPut(key, () -> propertyKeyName(tokenRead, key)), properties.propertyValue().asObjectCopy());
+            }
+            return values;
         }
+    }
 
-        @Override
-        public int hashCode() {
-            int result = endNodeHash != null ? endNodeHash.hashCode() : 0;
-            result = 31 * result + (relationshipHash != null ? relationshipHash.hashCode() : 0);
-            return result;
+    private static String labelName(TokenRead tokenRead, int label) {
+        try {
+            return tokenRead.nodeLabelName(label);
+        } catch (LabelNotFoundKernelException e) {
+            throw new IllegalStateException("Label with id " + label + " not found", e);
         }
+    }
 
-        public String getEndNodeHash() {
-            return endNodeHash;
+    private static String relationshipTypeName(TokenRead tokenRead, int type) {
+        try {
+            return tokenRead.relationshipTypeName(type);
+        } catch (RelationshipTypeIdNotFoundKernelException e) {
+            throw new IllegalStateException("Relationship type with id " + type + " not found", e);
         }
+    }
 
-        public String getRelationshipHash() {
-            return relationshipHash;
+    private static String propertyKeyName(TokenRead tokenRead, int key) {
+        try {
+            return tokenRead.propertyKeyName(key);
+        } catch (PropertyKeyIdNotFoundKernelException e) {
+            throw new IllegalStateException("Property key with id " + key + " not found", e);
         }
     }
 
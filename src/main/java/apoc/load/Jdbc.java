@@ -1,8 +1,10 @@
 package apoc.load;
 
+import apoc.Pools;
 import apoc.load.util.LoadJdbcConfig;
 import apoc.result.RowResult;
 import apoc.util.MapUtil;
+import apoc.util.QueueBasedSpliterator;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.Context;
@@ -10,6 +12,7 @@ import org.neo4j.procedure.Description;
 import org.neo4j.procedure.Mode;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.Procedure;
+import org.neo4j.procedure.TerminationGuard;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -17,6 +20,13 @@ import java.sql.*;
 import java.time.OffsetDateTime;
 import java.time.OffsetTime;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -42,6 +52,17 @@ public class Jdbc {
     @Context
     public GraphDatabaseService db;
 
+    @Context
+    public Pools pools;
+
+    @Context
+    public TerminationGuard terminationGuard;
+
+    private static final int QUEUE_SIZE = 1000;
+    // identity markers for the end of the rows and a failed partition
+    private static final RowResult TOMBSTONE = new RowResult(Collections.emptyMap());
+    private static final RowResult FAILED = new RowResult(Collections.emptyMap());
+
     @Procedure
     @Description("apoc.load.driver('org.apache.derby.jdbc.EmbeddedDriver') register JDBC driver of source database")
     public void driver(@Name("driverClass") String driverClass) {
@@ -57,7 +78,7 @@ public class Jdbc {
     }
 
     @Procedure(mode = Mode.READ)
-    @Description("apoc.load.jdbc('key or url','table or statement', params, config) YIELD row - load from relational database, from a full table or a sql statement")
+    @Description("apoc.load.jdbc('key or url','table or statement', params, config) YIELD row - load from relational database, from a full table or a sql statement, in parallel range partitions with {partitionColumn, lowerBound, upperBound, partitions}")
     public Stream<RowResult> jdbc(@Name("jdbc") String urlOrKey, @Name("tableOrSql") String tableOrSelect, @Name
             (value = "params", defaultValue = "[]") List<Object> params, @Name(value = "config",defaultValue = "{}") Map<String, Object> config) {
         params = params != null ? params : Collections.emptyList();
@@ -76,8 +97,9 @@ public class Jdbc {
         LoadJdbcConfig loadJdbcConfig = new LoadJdbcConfig(config);
         String url = getUrlOrKey(urlOrKey);
         String query = getSqlOrKey(tableOrSelect);
+        if (loadJdbcConfig.isPartitioned()) return executePartitioned(urlOrKey, url, query, loadJdbcConfig, params);
         try {
-            Connection connection = getConnection(url,loadJdbcConfig);
+            Connection connection = getConnection(urlOrKey, url, loadJdbcConfig);
             // see https://jdbc.postgresql.org/documentation/91/query.html#query-with-cursors
             connection.setAutoCommit(loadJdbcConfig.isAutoCommit());
             try {
@@ -86,7 +108,7 @@ public class Jdbc {
                 try {
                     for (int i = 0; i < params.length; i++) stmt.setObject(i + 1, params[i]);
                     ResultSet rs = stmt.executeQuery();
-                    Iterator<Map<String, Object>> supplier = new ResultSetIterator(log, rs, true, loadJdbcConfig);
+                    Iterator<Map<String, Object>> supplier = new ResultSetIterator(log, rs, loadJdbcConfig, stmt, connection);
                     Spliterator<Map<String, Object>> spliterator = Spliterators.spliteratorUnknownSize(supplier, Spliterator.ORDERED);
                     return StreamSupport.stream(spliterator, false)
                             .map(RowResult::new)
@@ -100,15 +122,104 @@ public class Jdbc {
                 throw sqle;
             }
         } catch (Exception e) {
-            log.error(String.format("Cannot execute SQL statement `%s`.%nError:%n%s", query, e.getMessage()),e);
-            String errorMessage = "Cannot execute SQL statement `%s`.%nError:%n%s";
-            if(e.getMessage().contains("No suitable driver")) errorMessage="Cannot execute SQL statement `%s`.%nError:%n%s%n%s";
-            throw new RuntimeException(String.format(errorMessage, query, e.getMessage(), "Please download and copy the JDBC driver into $NEO4J_HOME/plugins,more details at https://neo4j-contrib.github.io/neo4j-apoc-procedures/#_load_jdbc_resources"), e);
+            throw sqlError(query, e);
+        }
+    }
+
+    /**
+     * Splits the query into range partitions of the partition column, read in parallel on their own connections into
+     * a bounded queue. Like the range partitions of other JDBC sources, the bounds only decide the stride of the
+     * partitions, the first and last partition also contain the rows below and above them, and the first the nulls.
+     */
+    private Stream<RowResult> executePartitioned(String urlOrKey, String url, String query, LoadJdbcConfig config, Object... params) {
+        List<String> partitions = partitionQueries(query, config);
+        BlockingQueue<RowResult> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        AtomicBoolean closed = new AtomicBoolean();
+        AtomicReference<Exception> error = new AtomicReference<>();
+        AtomicInteger nextPartition = new AtomicInteger();
+        int workers = (int) Math.max(1, Math.min(getConcurrency(urlOrKey, config), partitions.size()));
+        AtomicInteger running = new AtomicInteger(workers);
+
+        Runnable worker = () -> {
+            try {
+                for (int i = nextPartition.getAndIncrement(); i < partitions.size() && error.get() == null && !closed.get(); i = nextPartition.getAndIncrement()) {
+                    readPartition(urlOrKey, url, partitions.get(i), config, params, queue, closed);
+                }
+            } catch (Exception e) {
+                if (error.compareAndSet(null, e)) offer(queue, FAILED, closed);
+            } finally {
+                if (running.decrementAndGet() == 0) offer(queue, TOMBSTONE, closed);
+            }
+        };
+        // the workers wait for the caller to read the queue, which it only does once the procedure returned, so they
+        // can't run on the default pool, whose callers wait for their tasks when its queue is full
+        ExecutorService executor = pools.newDedicatedExecutorService("jdbc", workers);
+        for (int i = 0; i < workers; i++) {
+            executor.submit(worker);
+        }
+        executor.shutdown();
+
+        return StreamSupport.stream(new QueueBasedSpliterator<>(queue, TOMBSTONE, terminationGuard, Integer.MAX_VALUE), false)
+                .map(row -> {
+                    if (row == FAILED) throw sqlError(query, error.get());
+                    return row;
+                })
+                .onClose(() -> closed.set(true));
+    }
+
+    private void readPartition(String urlOrKey, String url, String query, LoadJdbcConfig config, Object[] params,
+                               BlockingQueue<RowResult> queue, AtomicBoolean closed) throws Exception {
+        Connection connection = getConnection(urlOrKey, url, config);
+        PreparedStatement stmt = null;
+        try {
+            connection.setAutoCommit(config.isAutoCommit());
+            stmt = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(config.getFetchSize().intValue());
+            for (int i = 0; i < params.length; i++) stmt.setObject(i + 1, params[i]);
+            Iterator<Map<String, Object>> rows = new ResultSetIterator(log, stmt.executeQuery(), config, stmt, connection);
+            while (rows.hasNext() && !closed.get()) {
+                if (!offer(queue, new RowResult(rows.next()), closed)) break;
+            }
+        } finally {
+            closeIt(log, stmt, connection);
+        }
+    }
+
+    static List<String> partitionQueries(String query, LoadJdbcConfig config) {
+        String column = config.getPartitionColumn();
+        long lower = config.getLowerBound();
+        long upper = config.getUpperBound();
+        long partitions = Math.max(1, Math.min(config.getPartitions(), upper - lower));
+        String select = "SELECT * FROM (" + query + ") apoc_partition";
+        if (partitions == 1) return Collections.singletonList(select);
+
+        long stride = (upper - lower) / partitions;
+        List<String> queries = new ArrayList<>((int) partitions);
+        long bound = lower + stride;
+        queries.add(String.format("%s WHERE %s < %d OR %s IS NULL", select, column, bound, column));
+        for (int i = 1; i < partitions - 1; i++) {
+            queries.add(String.format("%s WHERE %s >= %d AND %s < %d", select, column, bound, column, bound + stride));
+            bound += stride;
+        }
+        queries.add(String.format("%s WHERE %s >= %d", select, column, bound));
+        return queries;
+    }
+
+    // waits for room in the queue until the caller closed the stream
+    private static boolean offer(BlockingQueue<RowResult> queue, RowResult row, AtomicBoolean closed) {
+        try {
+            while (!closed.get()) {
+                if (queue.offer(row, 100, TimeUnit.MILLISECONDS)) return true;
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
 
     @Procedure(mode = Mode.DBMS)
-    @Description("apoc.load.jdbcUpdate('key or url','statement',[params],config) YIELD row - update relational database, from a SQL statement with optional parameters")
+    @Description("apoc.load.jdbcUpdate('key or url','statement',[params],config) YIELD row - update relational database, from a SQL statement with optional parameters, with {batch:true} the params are a list of parameter rows to run as a JDBC batch")
     public Stream<RowResult> jdbcUpdate(@Name("jdbc") String urlOrKey, @Name("query") String query, @Name(value = "params", defaultValue = "[]") List<Object> params,  @Name(value = "config",defaultValue = "{}") Map<String, Object> config) {
         log.info( String.format( "Executing SQL update: %s", query ) );
         return executeUpdate(urlOrKey, query, config, params.toArray(new Object[params.size()]));
@@ -118,15 +229,15 @@ public class Jdbc {
         String url = getUrlOrKey(urlOrKey);
         LoadJdbcConfig jdbcConfig = new LoadJdbcConfig(config);
         try {
-            Connection connection = getConnection(url,jdbcConfig);
+            Connection connection = getConnection(urlOrKey, url, jdbcConfig);
             try {
                 PreparedStatement stmt = connection.prepareStatement(query,ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
                 stmt.setFetchSize(5000);
                 try {
-                    for (int i = 0; i < params.length; i++) stmt.setObject(i + 1, params[i]);
-                    int updateCount = stmt.executeUpdate();
+                    Map<String, Object> result = jdbcConfig.isBatch()
+                            ? executeBatch(stmt, params, jdbcConfig.getBatchSize().intValue())
+                            : MapUtil.map("count", executeUpdate(stmt, params));
                     closeIt(log, stmt, connection);
-                    Map<String, Object> result = MapUtil.map("count", updateCount);
                     return Stream.of(result)
                             .map(RowResult::new);
                 } catch(Exception sqle) {
@@ -138,11 +249,54 @@ public class Jdbc {
                 throw sqle;
             }
         } catch (Exception e) {
-            log.error(String.format("Cannot execute SQL statement `%s`.%nError:%n%s", query, e.getMessage()),e);
-            String errorMessage = "Cannot execute SQL statement `%s`.%nError:%n%s";
-            if(e.getMessage().contains("No suitable driver")) errorMessage="Cannot execute SQL statement `%s`.%nError:%n%s%n%s";
-            throw new RuntimeException(String.format(errorMessage, query, e.getMessage(), "Please download and copy the JDBC driver into $NEO4J_HOME/plugins,more details at https://neo4j-contrib.github.io/neo4j-apoc-procedures/#_load_jdbc_resources"), e);
+            throw sqlError(query, e);
+        }
+    }
+
+    private static int executeUpdate(PreparedStatement stmt, Object[] params) throws SQLException {
+        for (int i = 0; i < params.length; i++) stmt.setObject(i + 1, params[i]);
+        return stmt.executeUpdate();
+    }
+
+    // each param is a list of the params of a row, the rows are sent in batches of batchSize statements
+    private static Map<String, Object> executeBatch(PreparedStatement stmt, Object[] rows, int batchSize) throws SQLException {
+        long count = 0;
+        int batches = 0;
+        int batched = 0;
+        for (Object row : rows) {
+            if (!(row instanceof List)) {
+                throw new IllegalArgumentException("In batch mode each param has to be a list of the params of a row, but was: " + row);
+            }
+            List<Object> values = (List<Object>) row;
+            for (int i = 0; i < values.size(); i++) stmt.setObject(i + 1, values.get(i));
+            stmt.addBatch();
+            if (++batched == batchSize) {
+                count += updateCount(stmt.executeBatch());
+                batches++;
+                batched = 0;
+            }
+        }
+        if (batched > 0) {
+            count += updateCount(stmt.executeBatch());
+            batches++;
         }
+        return MapUtil.map("count", count, "batches", batches);
+    }
+
+    // drivers may not know the number of rows a statement of the batch updated
+    private static long updateCount(int[] counts) {
+        long count = 0;
+        for (int c : counts) {
+            if (c > 0) count += c;
+        }
+        return count;
+    }
+
+    private RuntimeException sqlError(String query, Exception e) {
+        log.error(String.format("Cannot execute SQL statement `%s`.%nError:%n%s", query, e.getMessage()),e);
+        String errorMessage = "Cannot execute SQL statement `%s`.%nError:%n%s";
+        if(e.getMessage() != null && e.getMessage().contains("No suitable driver")) errorMessage="Cannot execute SQL statement `%s`.%nError:%n%s%n%s";
+        return new RuntimeException(String.format(errorMessage, query, e.getMessage(), "Please download and copy the JDBC driver into $NEO4J_HOME/plugins,more details at https://neo4j-contrib.github.io/neo4j-apoc-procedures/#_load_jdbc_resources"), e);
     }
 
     static void closeIt(Log log, AutoCloseable...closeables) {
@@ -162,17 +316,18 @@ public class Jdbc {
         private final Log log;
         private final ResultSet rs;
         private final String[] columns;
-        private final boolean closeConnection;
+        // the statement and connection of the result set, closed with it
+        private final AutoCloseable[] closeables;
         private Map<String, Object> map;
         private LoadJdbcConfig config;
 
 
-        public ResultSetIterator(Log log, ResultSet rs, boolean closeConnection, LoadJdbcConfig config) throws SQLException {
+        public ResultSetIterator(Log log, ResultSet rs, LoadJdbcConfig config, AutoCloseable... closeables) throws SQLException {
             this.config = config;
             this.log = log;
             this.rs = rs;
             this.columns = getMetaData(rs);
-            this.closeConnection = closeConnection;
+            this.closeables = closeables;
             this.map = get();
         }
 
@@ -263,7 +418,8 @@ public class Jdbc {
         private void closeRs() {
             Boolean closed = isRsClosed();
             if (closed==null || !closed) {
-                closeIt(log, ignore(rs::getStatement), closeConnection ? ignore(()->rs.getStatement().getConnection()) : null);
+                closeIt(log, rs);
+                closeIt(log, closeables);
             }
         }
 
@@ -0,0 +1,373 @@
+package apoc.load.util;
+
+import apoc.util.Util;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection pools for the databases configured as apoc.jdbc.&lt;key&gt;.url, one per key and credentials.
+ * The pools are bounded by apoc.jdbc.&lt;key&gt;.pool.size, connections that have been idle for
+ * apoc.jdbc.&lt;key&gt;.pool.idle_timeout milliseconds are closed, and idle connections are checked with
+ * {@link Connection#isValid(int)} before they are handed out again, unless they were returned less than
+ * apoc.jdbc.&lt;key&gt;.pool.validation_interval milliseconds ago.
+ * Each pooled connection caches up to apoc.jdbc.&lt;key&gt;.pool.statement_cache of its prepared statements.
+ * When apoc.jdbc.&lt;key&gt;.pool.leak_timeout is set, connections that are not returned within that many milliseconds
+ * are closed, so a leaked connection doesn't keep its place in the pool forever. It is off by default, as a connection
+ * stays lent while its results are streamed, however long the read takes.
+ * A pool size of 0 disables pooling for the key.
+ */
+public class JdbcPools {
+
+    private static final long DEFAULT_POOL_SIZE = 10;
+    private static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+    private static final long DEFAULT_STATEMENT_CACHE = 32;
+    private static final long DEFAULT_BORROW_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    private static final long DEFAULT_VALIDATION_INTERVAL = 0;
+    private static final long DEFAULT_LEAK_TIMEOUT = 0;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private static final Map<String, Pool> POOLS = new ConcurrentHashMap<>();
+
+    // started with the first pool and stopped by closeAll
+    private static ScheduledExecutorService eviction;
+
+    interface ConnectionFactory {
+        Connection create() throws Exception;
+    }
+
+    private JdbcPools() {}
+
+    /**
+     * @return a connection of the pool of the key and credentials, which is returned to the pool when it is closed
+     */
+    static Connection getConnection(String key, String user, String password, ConnectionFactory factory) throws Exception {
+        if (config(key, "size", DEFAULT_POOL_SIZE) <= 0) return factory.create();
+        Pool pool = POOLS.computeIfAbsent(poolKey(key, user, password), k -> new Pool(key, factory));
+        startEviction();
+        return pool.borrow();
+    }
+
+    private static synchronized void startEviction() {
+        if (eviction != null) return;
+        eviction = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "apoc-jdbc-pool-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        eviction.scheduleWithFixedDelay(() -> POOLS.values().forEach(pool -> {
+            pool.evictIdle();
+            pool.reclaimLeaked();
+        }), 30, 30, TimeUnit.SECONDS);
+    }
+
+    // the connections of a pool are created with the credentials of its first caller, so the password is part of the
+    // key as a hash, a caller with the wrong password must not get the connections of the right one
+    private static String poolKey(String key, String user, String password) {
+        if (user == null) return key;
+        return key + "\u0000" + user + "\u0000" + DigestUtils.sha256Hex(password == null ? "" : password);
+    }
+
+    // the number of connections the pools of the key hand out at the same time
+    static long maxConnections(String key) {
+        long size = config(key, "size", DEFAULT_POOL_SIZE);
+        return size <= 0 ? Long.MAX_VALUE : size;
+    }
+
+    /**
+     * Closes the idle connections of all pools and stops their eviction, the ones in use are closed when they are
+     * returned. Called when APOC shuts down.
+     */
+    public static void closeAll() {
+        synchronized (JdbcPools.class) {
+            if (eviction != null) {
+                eviction.shutdownNow();
+                eviction = null;
+            }
+        }
+        for (Iterator<Pool> it = POOLS.values().iterator(); it.hasNext(); ) {
+            Pool pool = it.next();
+            it.remove();
+            pool.close();
+        }
+    }
+
+    /**
+     * @return the number of connections the pools of the key have opened, for tests and monitoring
+     */
+    public static long connectionsCreated(String key) {
+        return POOLS.values().stream().filter(pool -> pool.key.equals(key)).mapToLong(pool -> pool.created.get()).sum();
+    }
+
+    private static long config(String key, String name, long defaultValue) {
+        return Util.getLoadUrlByConfigFile("jdbc", key, "pool." + name).map(Long::parseLong).orElse(defaultValue);
+    }
+
+    private static class Pool {
+        private final String key;
+        private final ConnectionFactory factory;
+        private final Semaphore permits;
+        private final long idleTimeout;
+        private final int statementCacheSize;
+        private final long borrowTimeout;
+        // connections idle for less than this are handed out without a health check
+        private final long validationInterval;
+        private final long leakTimeout;
+        private final AtomicLong created = new AtomicLong();
+        private final Set<PooledConnection> lent = ConcurrentHashMap.newKeySet();
+        // the most recently returned connection first, so the rarely used ones get idle and evicted
+        private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+        private volatile boolean closed;
+
+        Pool(String key, ConnectionFactory factory) {
+            this.key = key;
+            this.factory = factory;
+            this.permits = new Semaphore((int) Math.max(1, config(key, "size", DEFAULT_POOL_SIZE)), true);
+            this.idleTimeout = config(key, "idle_timeout", DEFAULT_IDLE_TIMEOUT);
+            this.statementCacheSize = (int) config(key, "statement_cache", DEFAULT_STATEMENT_CACHE);
+            this.borrowTimeout = config(key, "timeout", DEFAULT_BORROW_TIMEOUT);
+            this.validationInterval = config(key, "validation_interval", DEFAULT_VALIDATION_INTERVAL);
+            this.leakTimeout = config(key, "leak_timeout", DEFAULT_LEAK_TIMEOUT);
+        }
+
+        Connection borrow() throws Exception {
+            if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                throw new SQLException(String.format("No connection of the pool of apoc.jdbc.%s.url available within %d ms", key, borrowTimeout));
+            }
+            try {
+                PooledConnection connection;
+                while ((connection = idle.pollFirst()) != null) {
+                    if (System.currentTimeMillis() - connection.returned < validationInterval || isValid(connection.delegate)) {
+                        return connection.lend();
+                    }
+                    connection.closeDelegate();
+                }
+                connection = new PooledConnection(this, factory.create());
+                created.incrementAndGet();
+                return connection.lend();
+            } catch (Exception e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        void release(PooledConnection connection, boolean reusable) {
+            lent.remove(connection);
+            try {
+                if (reusable && !closed) {
+                    connection.returned = System.currentTimeMillis();
+                    idle.offerFirst(connection);
+                } else {
+                    connection.closeDelegate();
+                }
+            } finally {
+                permits.release();
+            }
+        }
+
+        void evictIdle() {
+            long now = System.currentTimeMillis();
+            List<PooledConnection> evicted = new ArrayList<>();
+            for (Iterator<PooledConnection> it = idle.descendingIterator(); it.hasNext(); ) {
+                PooledConnection connection = it.next();
+                if (now - connection.returned < idleTimeout) break;
+                if (idle.removeLastOccurrence(connection)) evicted.add(connection);
+            }
+            evicted.forEach(PooledConnection::closeDelegate);
+        }
+
+        void discard(PooledConnection connection) {
+            lent.remove(connection);
+            permits.release();
+        }
+
+        // closes the connections that have been lent for longer than the leak timeout, which frees their permits
+        void reclaimLeaked() {
+            if (leakTimeout <= 0) return;
+            long now = System.currentTimeMillis();
+            for (PooledConnection connection : lent) {
+                if (now - connection.borrowed >= leakTimeout) connection.reclaim();
+            }
+        }
+
+        void close() {
+            closed = true;
+            PooledConnection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                connection.closeDelegate();
+            }
+        }
+
+        private static boolean isValid(Connection connection) {
+            try {
+                return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException | AbstractMethodError e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A connection of a pool with its cache of prepared statements. It is lent as a proxy, that returns it to the
+     * pool when closed and hands out the cached statements as proxies that are kept open when closed.
+     */
+    private static class PooledConnection {
+        private final Pool pool;
+        private final Connection delegate;
+        private final boolean autoCommit;
+        private final Map<List<Object>, PreparedStatement> statements;
+        private volatile long returned;
+        private volatile long borrowed;
+        private volatile Lent current;
+
+        PooledConnection(Pool pool, Connection delegate) throws SQLException {
+            this.pool = pool;
+            this.delegate = delegate;
+            this.autoCommit = delegate.getAutoCommit();
+            this.statements = new LinkedHashMap<List<Object>, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, PreparedStatement> eldest) {
+                    if (size() <= pool.statementCacheSize) return false;
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+
+        Connection lend() {
+            borrowed = System.currentTimeMillis();
+            current = new Lent();
+            pool.lent.add(this);
+            return (Connection) Proxy.newProxyInstance(JdbcPools.class.getClassLoader(), new Class[]{Connection.class}, current);
+        }
+
+        // the borrower loses the connection, it is closed and not reused as it may be in the middle of something.
+        // Closing the connection closes its statements, the cache is left alone as the borrower may still use it.
+        void reclaim() {
+            Lent lent = current;
+            if (lent != null && lent.closed.compareAndSet(false, true)) {
+                closeQuietly(delegate);
+                pool.discard(this);
+            }
+        }
+
+        void closeDelegate() {
+            statements.values().forEach(PooledConnection::closeQuietly);
+            statements.clear();
+            closeQuietly(delegate);
+        }
+
+        private static void closeQuietly(AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception ignore) {
+                // the connection is discarded anyway
+            }
+        }
+
+        // resets what the borrower may have changed, a connection that fails to reset is discarded
+        private boolean reset() {
+            try {
+                if (delegate.isClosed()) return false;
+                if (!delegate.getAutoCommit()) delegate.rollback();
+                if (delegate.getAutoCommit() != autoCommit) delegate.setAutoCommit(autoCommit);
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private class Lent implements InvocationHandler {
+            private final AtomicBoolean closed = new AtomicBoolean();
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (closed.compareAndSet(false, true)) {
+                            pool.release(PooledConnection.this, reset());
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed.get() || delegate.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Pooled " + delegate;
+                }
+                if (closed.get()) throw new SQLException("Connection is closed");
+                if (method.getName().equals("prepareStatement") && pool.statementCacheSize > 0) {
+                    List<Object> cacheKey = args == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(args));
+                    PreparedStatement statement = statements.get(cacheKey);
+                    if (statement == null || statement.isClosed()) {
+                        statement = (PreparedStatement) call(method, args);
+                        statements.put(cacheKey, statement);
+                    } else {
+                        statement.clearParameters();
+                    }
+                    return cached(statement, (Connection) proxy);
+                }
+                return call(method, args);
+            }
+
+            private Object call(Method method, Object[] args) throws Throwable {
+                try {
+                    return method.invoke(delegate, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+
+        // closing the statement only closes its current result set and clears its batch, so it can be prepared again
+        private static PreparedStatement cached(PreparedStatement statement, Connection connection) {
+            return (PreparedStatement) Proxy.newProxyInstance(JdbcPools.class.getClassLoader(), new Class[]{PreparedStatement.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close":
+                        try {
+                            if (statement.getResultSet() != null) statement.getResultSet().close();
+                            statement.clearBatch();
+                        } catch (SQLException e) {
+                            statement.close();
+                        }
+                        return null;
+                    case "getConnection":
+                        return connection;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                }
+                try {
+                    return method.invoke(statement, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+    }
+}
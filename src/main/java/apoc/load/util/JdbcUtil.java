@@ -20,6 +20,17 @@ public class JdbcUtil {
 
     private JdbcUtil() {}
 
+    /**
+     * @return a connection of the pool of the key if urlOrKey is the key of a configured apoc.jdbc.&lt;key&gt;.url,
+     * otherwise a new connection to the url
+     */
+    public static Connection getConnection(String urlOrKey, String jdbcUrl, LoadJdbcConfig config) throws Exception {
+        if (isUrl(urlOrKey)) return getConnection(jdbcUrl, config);
+        LoadJdbcConfig.Credentials credentials = config.hasCredentials() ? config.getCredentials() : null;
+        return JdbcPools.getConnection(urlOrKey, credentials == null ? null : credentials.getUser(),
+                credentials == null ? null : credentials.getPassword(), () -> getConnection(jdbcUrl, config));
+    }
+
     public static Connection getConnection(String jdbcUrl, LoadJdbcConfig config) throws Exception {
         if(config.hasCredentials()) {
             return createConnection(jdbcUrl, config.getCredentials().getUser(), config.getCredentials().getPassword());
@@ -56,8 +67,22 @@ public class JdbcUtil {
         }
     }
 
+    /**
+     * @return the given concurrency, or the number of processors, but no more than the pool of an alias has
+     * connections, so the partitions don't wait for each other's connections
+     */
+    public static long getConcurrency(String urlOrKey, LoadJdbcConfig config) {
+        if (config.getConcurrency() != null) return config.getConcurrency();
+        long processors = Runtime.getRuntime().availableProcessors();
+        return isUrl(urlOrKey) ? processors : Math.min(processors, JdbcPools.maxConnections(urlOrKey));
+    }
+
     public static String getUrlOrKey(String urlOrKey) {
-        return urlOrKey.contains(":") ? urlOrKey : Util.getLoadUrlByConfigFile(LOAD_TYPE, urlOrKey, "url").orElseThrow(() -> new RuntimeException(String.format(KEY_NOT_FOUND_MESSAGE, urlOrKey)));
+        return isUrl(urlOrKey) ? urlOrKey : Util.getLoadUrlByConfigFile(LOAD_TYPE, urlOrKey, "url").orElseThrow(() -> new RuntimeException(String.format(KEY_NOT_FOUND_MESSAGE, urlOrKey)));
+    }
+
+    private static boolean isUrl(String urlOrKey) {
+        return urlOrKey.contains(":");
     }
 
     public static String getSqlOrKey(String sqlOrKey) {
@@ -22,6 +22,20 @@ public class LoadJdbcConfig {
 
     private final boolean autoCommit;
 
+    private final boolean batch;
+
+    private final Long batchSize;
+
+    private final String partitionColumn;
+
+    private final Long lowerBound;
+
+    private final Long upperBound;
+
+    private final Long partitions;
+
+    private final Long concurrency;
+
     public LoadJdbcConfig(Map<String,Object> config) {
         config = config != null ? config : Collections.emptyMap();
         try {
@@ -33,6 +47,24 @@ public class LoadJdbcConfig {
         this.credentials = config.containsKey("credentials") ? createCredentials((Map<String, String>) config.get("credentials")) : null;
         this.fetchSize = Util.toLong(config.getOrDefault("fetchSize", 5000L));
         this.autoCommit = Util.toBoolean(config.getOrDefault("autoCommit", false));
+        this.batch = Util.toBoolean(config.getOrDefault("batch", false));
+        this.batchSize = Util.toLong(config.getOrDefault("batchSize", 10000L));
+        this.partitionColumn = (String) config.get("partitionColumn");
+        this.lowerBound = Util.toLong(config.get("lowerBound"));
+        this.upperBound = Util.toLong(config.get("upperBound"));
+        this.partitions = Util.toLong(config.getOrDefault("partitions", 1L));
+        this.concurrency = Util.toLong(config.get("concurrency"));
+        if (partitionColumn != null) {
+            if (lowerBound == null || upperBound == null) {
+                throw new IllegalArgumentException("In config param partitionColumn must be passed with both lowerBound and upperBound.");
+            }
+            if (lowerBound > upperBound) {
+                throw new IllegalArgumentException("In config param lowerBound must not be greater than upperBound.");
+            }
+            if (partitions < 1) {
+                throw new IllegalArgumentException("In config param partitions must be at least 1.");
+            }
+        }
     }
 
     public ZoneId getZoneId(){
@@ -82,4 +114,36 @@ public class LoadJdbcConfig {
     public boolean isAutoCommit() {
         return autoCommit;
     }
-}
\ No newline at end of file
+
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public Long getBatchSize() {
+        return batchSize;
+    }
+
+    public boolean isPartitioned() {
+        return partitionColumn != null;
+    }
+
+    public String getPartitionColumn() {
+        return partitionColumn;
+    }
+
+    public Long getLowerBound() {
+        return lowerBound;
+    }
+
+    public Long getUpperBound() {
+        return upperBound;
+    }
+
+    public Long getPartitions() {
+        return partitions;
+    }
+
+    public Long getConcurrency() {
+        return concurrency;
+    }
+}
@@ -1,11 +1,13 @@
 package apoc.meta;
 
+import apoc.Pools;
 import org.neo4j.logging.Log;
 import apoc.result.GraphResult;
 import apoc.result.MapResult;
 import apoc.result.VirtualNode;
 import apoc.result.VirtualRelationship;
 import apoc.util.MapUtil;
+import apoc.util.Util;
 import org.neo4j.graphdb.*;
 import org.neo4j.graphdb.schema.ConstraintType;
 import org.neo4j.graphdb.schema.ConstraintDefinition;
@@ -14,16 +16,28 @@ import org.neo4j.graphdb.schema.Schema;
 import org.neo4j.graphdb.spatial.Point;
 import org.neo4j.internal.helpers.collection.Iterables;
 import org.neo4j.internal.helpers.collection.Pair;
+import org.neo4j.internal.kernel.api.CursorFactory;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.NodeLabelIndexCursor;
 import org.neo4j.internal.kernel.api.Read;
 import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelectionCursor;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelections;
 import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.procedure.*;
 import org.neo4j.values.storable.DurationValue;
 
 import java.time.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.LongBinaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -50,6 +64,12 @@ public class    Meta {
 
     @Context public Log log;
 
+    @Context
+    public Pools pools;
+
+    @Context
+    public MetaSchemaCache metaSchemaCache;
+
     public static class ConstraintTracker {
         // The following maps are (label|rel-type)/constraintdefinition entries
 
@@ -433,13 +453,35 @@ public class    Meta {
     public Stream<MapResult> schema(@Name(value = "config",defaultValue = "{}") Map<String,Object> config) {
         MetaStats metaStats = collectStats();
         MetaConfig metaConfig = new MetaConfig(config);
+        if (!metaConfig.isCached()) {
+            return Stream.of(new MapResult(collectSchema(metaStats, metaConfig)));
+        }
+
+        // the snapshots are kept by the config that computes them
+        Map<String, Object> snapshotConfig = config == null ? new HashMap<>() : new HashMap<>(config);
+        snapshotConfig.keySet().removeAll(asList("cached", "maxAge"));
+        Map<String, Object> cached = metaSchemaCache.get(snapshotConfig, metaConfig.getMaxAge());
+        if (cached != null) {
+            return Stream.of(new MapResult(MetaSchemaCache.withCounts(cached, metaStats)));
+        }
+        long generation = metaSchemaCache.startComputing();
+        Map<String, Object> schema = null;
+        try {
+            schema = collectSchema(metaStats, metaConfig);
+        } finally {
+            metaSchemaCache.finishComputing(snapshotConfig, schema, generation);
+        }
+        return Stream.of(new MapResult(schema));
+    }
+
+    private Map<String, Object> collectSchema(MetaStats metaStats, MetaConfig metaConfig) {
         Map<String, Map<String, MetaResult>> metaData = collectMetaData(metaConfig);
 
         Map<String, Object> relationships = collectRelationshipsMetaData(metaStats, metaData);
         Map<String, Object> nodes = collectNodesMetaData(metaStats, metaData, relationships);
 
         nodes.putAll(relationships);
-        return Stream.of(new MapResult(nodes));
+        return nodes;
     }
 
 
@@ -522,9 +564,7 @@ public class    Meta {
                 for (IndexDefinition index : schema.getIndexes(label)) { profile.noteIndex(label, index); }
 
                 long labelCount = countStore.get(labelName);
-                long sample = getSampleForLabelCount(labelCount, config.getSample());
-
-                //System.out.println("Sampling " + sample + " for " + labelName);
+                long sample = getSampleForLabelCount(labelCount, config, labelName);
 
                 try (ResourceIterator<Node> nodes = tx.findNodes(label)) {
                     int count = 1;
@@ -558,41 +598,90 @@ public class    Meta {
 
     private Map<String, Map<String, MetaResult>> collectMetaData (MetaConfig config) {
         Map<String,Map<String,MetaResult>> metaData = new LinkedHashMap<>(100);
-        Schema schema = transaction.schema();
-
-        Map<String, Iterable<ConstraintDefinition>> relConstraints = new HashMap<>(20);
         for (RelationshipType type : tx.getAllRelationshipTypesInUse()) {
             metaData.put(type.name(), new LinkedHashMap<>(10));
-            relConstraints.put(type.name(),schema.getConstraints(type));
         }
+        // each label is sampled in its own transaction on the pool, or in the caller's one when it has changes
+        // the others can't see, the partial results are merged in label order
         Map<String, Long> countStore = getLabelCountStore();
+        Map<String, Future<Map<String, Map<String, MetaResult>>>> partials = new LinkedHashMap<>();
         for (Label label : tx.getAllLabelsInUse()) {
-            Map<String,MetaResult> nodeMeta = new LinkedHashMap<>(50);
             String labelName = label.name();
-            metaData.put(labelName, nodeMeta);
-            Iterable<ConstraintDefinition> constraints = schema.getConstraints(label);
-            Set<String> indexed = new LinkedHashSet<>();
-            for (IndexDefinition index : schema.getIndexes(label)) {
-                for (String prop : index.getPropertyKeys()) {
-                    indexed.add(prop);
-                }
+            long sample = getSampleForLabelCount(countStore.get(labelName), config, labelName);
+            partials.put(labelName, inSampleTx(labelTx -> collectMetaData(labelTx, labelName, sample)));
+        }
+        try {
+            for (Map.Entry<String, Future<Map<String, Map<String, MetaResult>>>> partial : partials.entrySet()) {
+                mergeMetaData(metaData, partial.getKey(), partial.getValue().get());
             }
-            long labelCount = countStore.get(labelName);
-            long sample = getSampleForLabelCount(labelCount, config.getSample());
-            try (ResourceIterator<Node> nodes = tx.findNodes(label)) {
-                int count = 1;
-                while (nodes.hasNext()) {
-                    Node node = nodes.next();
-                    if(count++ % sample == 0) {
-                        addRelationships(metaData, nodeMeta, labelName, node, relConstraints);
-                        addProperties(nodeMeta, labelName, constraints, indexed, node, node);
-                    }
+        } catch (InterruptedException e) {
+            partials.values().forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while sampling the labels", e);
+        } catch (ExecutionException e) {
+            partials.values().forEach(f -> f.cancel(true));
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        }
+        return metaData;
+    }
+
+    private <T> Future<T> inSampleTx(Function<Transaction, T> sampler) {
+        KernelTransaction ktx = ((InternalTransaction) tx).kernelTransaction();
+        if (ktx instanceof TxStateHolder && ((TxStateHolder) ktx).hasTxStateWithChanges()) {
+            return CompletableFuture.completedFuture(sampler.apply(tx));
+        }
+        return Util.inTxFuture(pools.getDefaultExecutorService(), db, sampler);
+    }
+
+    // the metadata of the label and of the relationship types of its sampled nodes, the nodes are found by a label scan
+    private Map<String, Map<String, MetaResult>> collectMetaData(Transaction labelTx, String labelName, long sample) {
+        Map<String,Map<String,MetaResult>> metaData = new LinkedHashMap<>(100);
+        Schema schema = labelTx.schema();
+
+        Map<String, Iterable<ConstraintDefinition>> relConstraints = new HashMap<>(20);
+        for (RelationshipType type : labelTx.getAllRelationshipTypesInUse()) {
+            metaData.put(type.name(), new LinkedHashMap<>(10));
+            relConstraints.put(type.name(),schema.getConstraints(type));
+        }
+        Label label = Label.label(labelName);
+        Map<String,MetaResult> nodeMeta = new LinkedHashMap<>(50);
+        metaData.put(labelName, nodeMeta);
+        Iterable<ConstraintDefinition> constraints = schema.getConstraints(label);
+        Set<String> indexed = new LinkedHashSet<>();
+        for (IndexDefinition index : schema.getIndexes(label)) {
+            for (String prop : index.getPropertyKeys()) {
+                indexed.add(prop);
+            }
+        }
+        KernelTransaction ktx = ((InternalTransaction) labelTx).kernelTransaction();
+        int labelId = ktx.tokenRead().nodeLabel(labelName);
+        if (labelId == TokenRead.NO_TOKEN) return metaData;
+        try (NodeLabelIndexCursor nodes = ktx.cursors().allocateNodeLabelIndexCursor()) {
+            ktx.dataRead().nodeLabelScan(labelId, nodes);
+            long count = 1;
+            while (nodes.next()) {
+                // only the sampled nodes are loaded
+                if(count++ % sample == 0) {
+                    Node node = labelTx.getNodeById(nodes.nodeReference());
+                    addRelationships(metaData, nodeMeta, labelName, node, relConstraints);
+                    addProperties(nodeMeta, labelName, constraints, indexed, node, node);
                 }
             }
         }
         return metaData;
     }
 
+    // like sampling the labels one after another, the first label to find a relationship property describes it
+    private static void mergeMetaData(Map<String, Map<String, MetaResult>> metaData, String labelName, Map<String, Map<String, MetaResult>> partial) {
+        for (Map.Entry<String, Map<String, MetaResult>> entry : partial.entrySet()) {
+            if (entry.getKey().equals(labelName)) continue;
+            Map<String, MetaResult> typeMeta = metaData.get(entry.getKey());
+            if (typeMeta == null) continue;
+            entry.getValue().forEach(typeMeta::putIfAbsent);
+        }
+        metaData.put(labelName, partial.get(labelName));
+    }
+
     private Map<String, Long> getLabelCountStore() {
         List<String> labels = Iterables.stream(tx.getAllLabelsInUse()).map(label -> label.name()).collect(Collectors.toList());
         TokenRead tokenRead = kernelTx.tokenRead();
@@ -602,6 +691,19 @@ public class    Meta {
     }
 
     public long getSampleForLabelCount(long labelCount, long sample) {
+        return getSampleForLabelCount(labelCount, sample, ThreadLocalRandom.current()::nextLong);
+    }
+
+    /**
+     * The stride of the label is drawn from a generator seeded by the configured seed and the label name,
+     * so the same nodes are sampled again as long as the label doesn't change.
+     */
+    private long getSampleForLabelCount(long labelCount, MetaConfig config, String labelName) {
+        SplittableRandom random = new SplittableRandom(config.getSeed() ^ labelName.hashCode());
+        return getSampleForLabelCount(labelCount, config.getSample(), random::nextLong);
+    }
+
+    private static long getSampleForLabelCount(long labelCount, long sample, LongBinaryOperator nextLong) {
         if(sample != -1L) {
             long skipCount = labelCount / sample;
             long min = (long) Math.floor(skipCount - (skipCount * 0.1D));
@@ -609,7 +711,7 @@ public class    Meta {
             if (min >= max) {
                 return -1L;
             }
-            long randomValue = ThreadLocalRandom.current().nextLong(min, max);
+            long randomValue = nextLong.applyAsLong(min, max);
             return randomValue == 0L ? -1L : randomValue; // it can't return zero as it's used in % ops
         } else {
             return sample;
@@ -925,6 +1027,13 @@ public class    Meta {
         return Stream.of(graphResult);
     }
 
+    /**
+     * Removes the relationships between labels that are only suggested by the counts of each label, as the counts store
+     * doesn't know the counts between two labels. If the relationships of the type starting at one label and ending at
+     * the other are more than all of them, some have to do both. Otherwise the nodes of one label are sampled in
+     * parallel, each pattern in its own transaction. The virtual relationships that were checked tell by
+     * their existenceCheck property whether the counts or the sample decided.
+     */
     private void filterNonExistingRelationships(Map<Pattern, Relationship> vRels, MetaConfig metaConfig) {
         Set<Pattern> rels = vRels.keySet();
         Map<Pair<String,String>,Set<Pattern>> aggregated = new HashMap<>();
@@ -932,42 +1041,75 @@ public class    Meta {
             combine(aggregated, Pair.of(rel.from, rel.type), rel);
             combine(aggregated, Pair.of(rel.type, rel.to), rel);
         }
-        aggregated.values().stream()
+        Set<Pattern> ambiguous = aggregated.values().stream()
                 .filter( c -> c.size() > 1)
                 .flatMap(Collection::stream)
-                .filter( p -> !relationshipExists(p, vRels.get(p), metaConfig))
-                .forEach(vRels::remove);
-    }
-
-    private boolean relationshipExists(Pattern p, Relationship relationship, MetaConfig metaConfig) {
-        if (relationship==null) return false;
-        double degreeFrom = (double)(long)relationship.getProperty("out")  / (long)relationship.getStartNode().getProperty("count");
-        double degreeTo = (double)(long)relationship.getProperty("in")  / (long)relationship.getEndNode().getProperty("count");
+                .collect(Collectors.toCollection(LinkedHashSet::new));
 
-        if (degreeFrom < degreeTo) {
-            if (relationshipExists(p.labelFrom(), p.labelTo(), p.relationshipType(), Direction.OUTGOING, metaConfig)) return true;
-        } else {
-            if (relationshipExists(p.labelTo(), p.labelFrom(), p.relationshipType(), Direction.INCOMING, metaConfig)) return true;
+        Map<String, Long> countStore = getLabelCountStore();
+        Map<Pattern, Future<Boolean>> sampled = new LinkedHashMap<>();
+        for (Pattern p : ambiguous) {
+            Relationship relationship = vRels.get(p);
+            if ((long) relationship.getProperty("out") + (long) relationship.getProperty("in") > (long) relationship.getProperty("count")) {
+                relationship.setProperty("existenceCheck", "counts");
+                continue;
+            }
+            // the sample starts from the label with the fewer relationships of the type per node
+            double degreeFrom = (double)(long)relationship.getProperty("out")  / (long)relationship.getStartNode().getProperty("count");
+            double degreeTo = (double)(long)relationship.getProperty("in")  / (long)relationship.getEndNode().getProperty("count");
+            boolean outgoing = degreeFrom < degreeTo;
+            String labelName = outgoing ? p.from : p.to;
+            long sample = getSampleForLabelCount(countStore.get(labelName), metaConfig, labelName);
+            sampled.put(p, inSampleTx(sampleTx -> outgoing
+                    ? relationshipExists(sampleTx, p.from, p.to, p.type, Direction.OUTGOING, sample, metaConfig.getMaxRels())
+                    : relationshipExists(sampleTx, p.to, p.from, p.type, Direction.INCOMING, sample, metaConfig.getMaxRels())));
+        }
+        try {
+            for (Map.Entry<Pattern, Future<Boolean>> entry : sampled.entrySet()) {
+                if (entry.getValue().get()) {
+                    vRels.get(entry.getKey()).setProperty("existenceCheck", "sample");
+                } else {
+                    vRels.remove(entry.getKey());
+                }
+            }
+        } catch (InterruptedException e) {
+            sampled.values().forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while sampling the relationships", e);
+        } catch (ExecutionException e) {
+            sampled.values().forEach(f -> f.cancel(true));
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
         }
-        return false;
     }
 
-    private boolean relationshipExists(Label labelFromLabel, Label labelToLabel, RelationshipType relationshipType, Direction direction, MetaConfig metaConfig) {
-        Map<String, Long> countStore = getLabelCountStore();
-        try (ResourceIterator<Node> nodes = tx.findNodes(labelFromLabel)) {
-            long count = 1L;
-            String labelName = labelFromLabel.name();
-            long labelCount = countStore.get(labelName);
-            long sample = getSampleForLabelCount(labelCount, metaConfig.getSample());
-            while (nodes.hasNext()) {
-                count++;
-                if(count % sample == 0) {
-                    Node node = nodes.next();
-                    long maxRels = metaConfig.getMaxRels();
-                    for (Relationship rel : node.getRelationships(direction, relationshipType)) {
-                        Node otherNode = direction == Direction.OUTGOING ? rel.getEndNode() : rel.getStartNode();
-                        if (otherNode.hasLabel(labelToLabel)) return true;
-                        if (maxRels != -1 && maxRels-- == 0) break;
+    // looks for a relationship of the type from the sampled nodes of a label to a node of the other label
+    private static boolean relationshipExists(Transaction sampleTx, String labelFrom, String labelTo, String type, Direction direction, long sample, long maxRels) {
+        KernelTransaction ktx = ((InternalTransaction) sampleTx).kernelTransaction();
+        Read read = ktx.dataRead();
+        CursorFactory cursors = ktx.cursors();
+        TokenRead tokenRead = ktx.tokenRead();
+        int labelFromId = tokenRead.nodeLabel(labelFrom);
+        int labelToId = tokenRead.nodeLabel(labelTo);
+        int typeId = tokenRead.relationshipType(type);
+        if (labelFromId == TokenRead.NO_TOKEN || labelToId == TokenRead.NO_TOKEN || typeId == TokenRead.NO_TOKEN) return false;
+
+        try (NodeLabelIndexCursor nodes = cursors.allocateNodeLabelIndexCursor();
+             NodeCursor node = cursors.allocateNodeCursor();
+             NodeCursor otherNode = cursors.allocateNodeCursor()) {
+            read.nodeLabelScan(labelFromId, nodes);
+            long count = 1;
+            while (nodes.next()) {
+                if (count++ % sample != 0) continue;
+                read.singleNode(nodes.nodeReference(), node);
+                if (!node.next()) continue;
+                long rels = maxRels;
+                try (RelationshipSelectionCursor cursor = direction == Direction.OUTGOING
+                        ? RelationshipSelections.outgoingCursor(cursors, node, new int[]{typeId})
+                        : RelationshipSelections.incomingCursor(cursors, node, new int[]{typeId})) {
+                    while (cursor.next()) {
+                        read.singleNode(cursor.otherNodeReference(), otherNode);
+                        if (otherNode.next() && otherNode.labels().contains(labelToId)) return true;
+                        if (maxRels != -1 && rels-- == 0) break;
                     }
                 }
             }
@@ -14,6 +14,9 @@ public class MetaConfig {
     private Set<String> excludeRels;
     private long maxRels;
     private long sample;
+    private long seed;
+    private boolean cached;
+    private long maxAge;
 
     /**
      * A map of values, with the following keys and meanings.
@@ -28,6 +31,11 @@ public class MetaConfig {
      * every 1000th node will be examined.  It does **not** mean that a total of 1000 nodes
      * will be sampled.
      * - maxRels: the maximum number of relationships of a given type to look at.
+     * - seed: a long number used to pick the sampling stride of each label, the same seed
+     * samples the same nodes of an unchanged graph.
+     * - cached: a boolean, if true apoc.meta.schema answers from a snapshot of a previous call with the same config
+     * while no shape it doesn't know was committed.
+     * - maxAge: the age in milliseconds a cached snapshot may have, -1 for no limit.
      * @param config
      */
 
@@ -57,6 +65,9 @@ public class MetaConfig {
         this.excludeRels = new HashSet<>((Collection<String>)config.getOrDefault("excludeRels",Collections.EMPTY_SET));
         this.sample = (long) config.getOrDefault("sample", 1000L);
         this.maxRels = (long) config.getOrDefault("maxRels", 100L);
+        this.seed = ((Number) config.getOrDefault("seed", 42L)).longValue();
+        this.cached = Boolean.TRUE.equals(config.get("cached"));
+        this.maxAge = ((Number) config.getOrDefault("maxAge", -1L)).longValue();
     }
 
 
@@ -88,6 +99,18 @@ public class MetaConfig {
         return maxRels;
     }
 
+    public long getSeed() {
+        return seed;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
     /**
      * @param l
      * @return true if the label matches the mask expressed by this object, false otherwise.
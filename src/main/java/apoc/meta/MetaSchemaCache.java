@@ -0,0 +1,188 @@
+package apoc.meta;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListener;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the results of apoc.meta.schema({cached:true}) of a database, by their config.
+ * Each snapshot knows the shapes it describes: its labels and relationship types, their properties with their types
+ * and the relationship types going out of and into each label. Committed transactions that add a shape missing from
+ * a snapshot drop it, the ones only adding entities of known shapes keep it, as its counts are refreshed from the
+ * counts store on every call. The shapes of a transaction are taken from its changes without reading whole entities,
+ * so the properties a node already had when it gets a known label aren't matched with that label. Removals don't drop
+ * snapshots either, the labels and relationship types no longer in use are left out of the result, the rest is only
+ * seen once the snapshot is older than the maxAge of the call.
+ */
+public class MetaSchemaCache extends LifecycleAdapter implements TransactionEventListener<Set<String>> {
+
+    // the number of different configs to keep snapshots for
+    private static final int MAX_SNAPSHOTS = 16;
+
+    private static class Snapshot {
+        final Map<String, Object> schema;
+        final Set<String> shapes;
+        final long created = System.currentTimeMillis();
+
+        Snapshot(Map<String, Object> schema) {
+            this.schema = schema;
+            this.shapes = shapes(schema);
+        }
+    }
+
+    private final GraphDatabaseAPI db;
+    private final DatabaseManagementService databaseManagementService;
+    private final Map<Map<String, Object>, Snapshot> snapshots = new ConcurrentHashMap<>();
+    // incremented by commits adding shapes, so the schemas computed while they commit aren't stored
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicInteger computing = new AtomicInteger();
+
+    public MetaSchemaCache(GraphDatabaseAPI db, DatabaseManagementService databaseManagementService) {
+        this.db = db;
+        this.databaseManagementService = databaseManagementService;
+    }
+
+    @Override
+    public void start() {
+        databaseManagementService.registerTransactionEventListener(db.databaseName(), this);
+    }
+
+    @Override
+    public void stop() {
+        databaseManagementService.unregisterTransactionEventListener(db.databaseName(), this);
+        snapshots.clear();
+    }
+
+    /**
+     * @param maxAge the age in milliseconds a snapshot may have, -1 for any
+     * @return the schema cached for the config, or null
+     */
+    Map<String, Object> get(Map<String, Object> config, long maxAge) {
+        Snapshot snapshot = snapshots.get(config);
+        if (snapshot == null) return null;
+        if (maxAge != -1 && System.currentTimeMillis() - snapshot.created > maxAge) return null;
+        return snapshot.schema;
+    }
+
+    /**
+     * Has to be followed by {@link #finishComputing}, the commits in between are tracked even without snapshots
+     * @return the generation to finish computing with
+     */
+    long startComputing() {
+        computing.incrementAndGet();
+        return generation.get();
+    }
+
+    /**
+     * Stores the schema, if any, unless a commit added shapes since its computation started
+     */
+    void finishComputing(Map<String, Object> config, Map<String, Object> schema, long startedIn) {
+        try {
+            if (schema == null) return;
+            if (snapshots.size() >= MAX_SNAPSHOTS && !snapshots.containsKey(config)) {
+                snapshots.clear();
+            }
+            snapshots.put(config, new Snapshot(schema));
+            if (generation.get() != startedIn) snapshots.remove(config);
+        } finally {
+            computing.decrementAndGet();
+        }
+    }
+
+    // the shapes added by the transaction, taken from its changes only: the properties it assigns with the labels of
+    // their nodes, and the types and endpoint labels of the relationships it creates
+    @Override
+    public Set<String> beforeCommit(TransactionData data, Transaction transaction, GraphDatabaseService databaseService) {
+        if (snapshots.isEmpty() && computing.get() == 0) return null;
+        Set<String> shapes = new HashSet<>();
+        for (LabelEntry entry : data.assignedLabels()) {
+            shapes.add(entry.label().name());
+        }
+        for (PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+            if (data.isDeleted(entry.entity())) continue;
+            for (Label label : entry.entity().getLabels()) {
+                shapes.add(property(label.name(), entry.key(), entry.value()));
+            }
+        }
+        for (Relationship rel : data.createdRelationships()) {
+            String type = rel.getType().name();
+            shapes.add(type);
+            for (Label label : rel.getStartNode().getLabels()) shapes.add(relationship(label.name(), type, "out"));
+            for (Label label : rel.getEndNode().getLabels()) shapes.add(relationship(label.name(), type, "in"));
+        }
+        for (PropertyEntry<Relationship> entry : data.assignedRelationshipProperties()) {
+            if (data.isDeleted(entry.entity())) continue;
+            shapes.add(property(entry.entity().getType().name(), entry.key(), entry.value()));
+        }
+        return shapes;
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, Set<String> shapes, GraphDatabaseService databaseService) {
+        if (shapes == null || shapes.isEmpty()) return;
+        generation.incrementAndGet();
+        snapshots.values().removeIf(snapshot -> !snapshot.shapes.containsAll(shapes));
+    }
+
+    @Override
+    public void afterRollback(TransactionData data, Set<String> shapes, GraphDatabaseService databaseService) {
+    }
+
+    private static String property(String owner, String key, Object value) {
+        return owner + "." + key + ":" + Meta.Types.of(value).name();
+    }
+
+    private static String relationship(String label, String type, String direction) {
+        return label + "-" + type + "-" + direction;
+    }
+
+    // the shapes in the map returned by apoc.meta.schema
+    private static Set<String> shapes(Map<String, Object> schema) {
+        Set<String> shapes = new HashSet<>();
+        schema.forEach((name, value) -> {
+            Map<String, Object> entity = (Map<String, Object>) value;
+            shapes.add(name);
+            ((Map<String, Map<String, Object>>) entity.get("properties"))
+                    .forEach((key, property) -> shapes.add(name + "." + key + ":" + property.get("type")));
+            if ("node".equals(entity.get("type"))) {
+                ((Map<String, Map<String, Object>>) entity.get("relationships"))
+                        .forEach((type, rel) -> shapes.add(relationship(name, type, rel.get("direction").toString())));
+            }
+        });
+        return shapes;
+    }
+
+    /**
+     * @return a copy of the cached schema with the counts of its labels and relationship types taken from the statistics,
+     * without the ones no longer in use
+     */
+    static Map<String, Object> withCounts(Map<String, Object> schema, Meta.MetaStats stats) {
+        Map<String, Object> result = new LinkedHashMap<>(schema.size());
+        schema.forEach((name, value) -> {
+            Map<String, Object> entity = new LinkedHashMap<>((Map<String, Object>) value);
+            Map<String, Long> counts = "node".equals(entity.get("type")) ? stats.labels : stats.relTypesCount;
+            Long count = counts.get(name);
+            if (count == null || count == 0) return;
+            entity.put("count", count);
+            result.put(name, entity);
+        });
+        return result;
+    }
+}
@@ -0,0 +1,197 @@
+package apoc.neighbors;
+
+import apoc.Pools;
+import apoc.util.Util;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.helpers.collection.Pair;
+import org.neo4j.internal.kernel.api.CursorFactory;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelectionCursor;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelections;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static apoc.path.RelationshipTypeAndDirections.parse;
+
+/**
+ * Expands the neighbors of a node hop by hop with kernel cursors, which read the relationship groups of dense nodes
+ * instead of all their relationships. Frontiers of at least {@link #PARALLEL_THRESHOLD} nodes are split into batches
+ * expanded concurrently on threads of the expansion, each batch in its own transaction and into its own bitmap, and
+ * the bitmaps are merged before the next hop. The batches can't see the changes of the calling transaction, so if
+ * it has any, all hops are expanded in it.
+ */
+class HopExpander {
+
+    static final int PARALLEL_THRESHOLD = 10_000;
+    private static final int MIN_BATCH_SIZE = 1_000;
+
+    private final GraphDatabaseService db;
+    private final Transaction tx;
+    private final Pools pools;
+    private final boolean parallel;
+    // created for the first hop expanded in parallel and shut down once all hops are done
+    private ExecutorService executor;
+    // the relationship type ids to expand per direction, null for all types
+    private final List<Pair<int[], Direction>> selections = new ArrayList<>();
+
+    HopExpander(GraphDatabaseService db, Transaction tx, Pools pools, String types) {
+        this.db = db;
+        this.tx = tx;
+        this.pools = pools;
+        this.parallel = pools != null && !hasChanges(kernelTransaction(tx));
+        TokenRead tokenRead = kernelTransaction(tx).tokenRead();
+        for (Pair<RelationshipType, Direction> pair : parse(types)) {
+            // as policy if both elements in the pair are null we return an empty result
+            if (pair.first() == null && pair.other() == null) continue;
+            Direction direction = pair.other() == null ? Direction.BOTH : pair.other();
+            if (pair.first() == null) {
+                selections.add(Pair.of(null, direction));
+            } else {
+                int type = tokenRead.relationshipType(pair.first().name());
+                if (type != TokenRead.NO_TOKEN) selections.add(Pair.of(new int[]{type}, direction));
+            }
+        }
+    }
+
+    /**
+     * @return the nodes first reached at each hop, the start node is only part of the first hop if it is its own neighbor
+     */
+    Roaring64NavigableMap[] byHop(long start, int distance) {
+        Roaring64NavigableMap[] hops = new Roaring64NavigableMap[distance];
+        Roaring64NavigableMap seen = new Roaring64NavigableMap();
+        Roaring64NavigableMap frontier = Roaring64NavigableMap.bitmapOf(start);
+        try {
+            for (int i = 0; i < distance; i++) {
+                Roaring64NavigableMap next = expand(frontier);
+                next.andNot(seen);
+                if (i > 0) next.removeLong(start);
+                hops[i] = next;
+                seen.or(next);
+                frontier = next;
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+        return hops;
+    }
+
+    /**
+     * @return the nodes up to the distance, without the start node
+     */
+    Roaring64NavigableMap toHop(long start, int distance) {
+        Roaring64NavigableMap all = new Roaring64NavigableMap();
+        for (Roaring64NavigableMap hop : byHop(start, distance)) {
+            all.or(hop);
+        }
+        all.removeLong(start);
+        return all;
+    }
+
+    private Roaring64NavigableMap expand(Roaring64NavigableMap frontier) {
+        long size = frontier.getLongCardinality();
+        Roaring64NavigableMap next = new Roaring64NavigableMap();
+        if (size < PARALLEL_THRESHOLD || !parallel) {
+            expand(kernelTransaction(tx), frontier.getLongIterator(), next);
+            return next;
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        // the caller may itself run on the default pool, waiting there for batches queued behind it could starve it
+        if (executor == null) executor = pools.newDedicatedExecutorService("neighbors", threads);
+        long batchSize = Math.max(MIN_BATCH_SIZE, size / (threads * 4L) + 1);
+        List<Future<Roaring64NavigableMap>> futures = new ArrayList<>();
+        LongIterator ids = frontier.getLongIterator();
+        while (ids.hasNext()) {
+            long[] batch = nextBatch(ids, batchSize);
+            futures.add(Util.inTxFuture(executor, db, threadTx -> {
+                Roaring64NavigableMap partial = new Roaring64NavigableMap();
+                expand(kernelTransaction(threadTx), batch, partial);
+                return partial;
+            }));
+        }
+        try {
+            for (Future<Roaring64NavigableMap> future : futures) {
+                next.or(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while expanding neighbors", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        }
+        return next;
+    }
+
+    private static long[] nextBatch(LongIterator ids, long batchSize) {
+        long[] batch = new long[(int) batchSize];
+        int size = 0;
+        while (size < batchSize && ids.hasNext()) {
+            batch[size++] = ids.next();
+        }
+        return size == batch.length ? batch : Arrays.copyOf(batch, size);
+    }
+
+    private void expand(KernelTransaction ktx, LongIterator ids, Roaring64NavigableMap into) {
+        try (NodeCursor node = ktx.cursors().allocateNodeCursor()) {
+            while (ids.hasNext()) {
+                expand(ktx.dataRead(), ktx.cursors(), node, ids.next(), into);
+            }
+        }
+    }
+
+    private void expand(KernelTransaction ktx, long[] ids, Roaring64NavigableMap into) {
+        try (NodeCursor node = ktx.cursors().allocateNodeCursor()) {
+            for (long id : ids) {
+                expand(ktx.dataRead(), ktx.cursors(), node, id, into);
+            }
+        }
+    }
+
+    private void expand(Read read, CursorFactory cursors, NodeCursor node, long id, Roaring64NavigableMap into) {
+        read.singleNode(id, node);
+        if (!node.next()) return;
+        for (Pair<int[], Direction> selection : selections) {
+            try (RelationshipSelectionCursor rels = relationships(cursors, node, selection)) {
+                while (rels.next()) {
+                    into.addLong(rels.otherNodeReference());
+                }
+            }
+        }
+    }
+
+    private static RelationshipSelectionCursor relationships(CursorFactory cursors, NodeCursor node, Pair<int[], Direction> selection) {
+        switch (selection.other()) {
+            case OUTGOING: return RelationshipSelections.outgoingCursor(cursors, node, selection.first());
+            case INCOMING: return RelationshipSelections.incomingCursor(cursors, node, selection.first());
+            default: return RelationshipSelections.allCursor(cursors, node, selection.first());
+        }
+    }
+
+    private static boolean hasChanges(KernelTransaction ktx) {
+        return ktx instanceof TxStateHolder && ((TxStateHolder) ktx).hasTxStateWithChanges();
+    }
+
+    private static KernelTransaction kernelTransaction(Transaction tx) {
+        return ((InternalTransaction) tx).kernelTransaction();
+    }
+}
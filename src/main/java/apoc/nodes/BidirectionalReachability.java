@@ -0,0 +1,149 @@
+package apoc.nodes;
+
+import apoc.stats.DegreeUtil;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.internal.helpers.collection.Pair;
+import org.neo4j.internal.kernel.api.CursorFactory;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelectionCursor;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelections;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.neo4j.internal.kernel.api.TokenRead.ANY_RELATIONSHIP_TYPE;
+
+/**
+ * Checks if a node can be reached from another one within a number of hops, expanding from both of them until the
+ * frontiers meet. Each step expands the side whose frontier has fewer relationships to follow, so the expansion
+ * grows from the sparse end; the degrees of dense nodes are read from their relationship group counts instead of
+ * their relationships. Nodes without any relationship to follow are not kept in the frontiers.
+ */
+class BidirectionalReachability {
+
+    // a relationship type id, or ANY_RELATIONSHIP_TYPE, and the direction to follow it in from the start node
+    private static class Selection {
+        final int type;
+        final Direction direction;
+
+        Selection(int type, Direction direction) {
+            this.type = type;
+            this.direction = direction;
+        }
+    }
+
+    private class Side {
+        final boolean forward;
+        final Roaring64NavigableMap visited = new Roaring64NavigableMap();
+        LongArrayList frontier = new LongArrayList();
+        long cost;
+
+        Side(long node, boolean forward) {
+            this.forward = forward;
+            visited.addLong(node);
+            add(node);
+        }
+
+        void add(long node) {
+            read.singleNode(node, nodeCursor);
+            if (!nodeCursor.next()) return;
+            long degree = degree(nodeCursor, forward);
+            if (degree == 0) return;
+            frontier.add(node);
+            cost += degree;
+        }
+
+        /**
+         * @return true if a node visited by the other side was reached
+         */
+        boolean expand(Side other) {
+            LongArrayList expanding = frontier;
+            frontier = new LongArrayList();
+            cost = 0;
+            LongArrayList reached = new LongArrayList();
+            for (int i = 0; i < expanding.size(); i++) {
+                read.singleNode(expanding.get(i), nodeCursor);
+                if (!nodeCursor.next()) continue;
+                for (Selection selection : selections) {
+                    try (RelationshipSelectionCursor rels = relationships(nodeCursor, selection, forward)) {
+                        while (rels.next()) {
+                            long neighbour = rels.otherNodeReference();
+                            if (other.visited.contains(neighbour)) return true;
+                            if (visited.contains(neighbour)) continue;
+                            visited.addLong(neighbour);
+                            reached.add(neighbour);
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < reached.size(); i++) {
+                add(reached.get(i));
+            }
+            return false;
+        }
+    }
+
+    private final Read read;
+    private final CursorFactory cursors;
+    private final List<Selection> selections = new ArrayList<>();
+    private NodeCursor nodeCursor;
+
+    /**
+     * @param typesAndDirections the relationships to follow from the start node towards the end node, all if null
+     */
+    BidirectionalReachability(KernelTransaction ktx, List<Pair<RelationshipType, Direction>> typesAndDirections) {
+        this.read = ktx.dataRead();
+        this.cursors = ktx.cursors();
+        TokenRead tokenRead = ktx.tokenRead();
+        if (typesAndDirections == null) {
+            selections.add(new Selection(ANY_RELATIONSHIP_TYPE, Direction.BOTH));
+        } else {
+            for (Pair<RelationshipType, Direction> pair : typesAndDirections) {
+                int type = pair.first() == null ? ANY_RELATIONSHIP_TYPE : tokenRead.relationshipType(pair.first().name());
+                if (type == TokenRead.NO_TOKEN) continue;
+                selections.add(new Selection(type, pair.other()));
+            }
+        }
+    }
+
+    boolean connected(long start, long end, long maxHops) {
+        if (start == end) return true;
+        if (maxHops < 1 || selections.isEmpty()) return false;
+        try (NodeCursor cursor = cursors.allocateNodeCursor()) {
+            nodeCursor = cursor;
+            Side forward = new Side(start, true);
+            Side backward = new Side(end, false);
+            for (long hops = 0; hops < maxHops; hops++) {
+                if (forward.frontier.isEmpty() || backward.frontier.isEmpty()) return false;
+                Side smaller = forward.cost <= backward.cost ? forward : backward;
+                if (smaller.expand(smaller == forward ? backward : forward)) return true;
+            }
+            return false;
+        } finally {
+            nodeCursor = null;
+        }
+    }
+
+    private long degree(NodeCursor node, boolean forward) {
+        long degree = 0;
+        for (Selection selection : selections) {
+            degree += DegreeUtil.degree(node, cursors, selection.type, forward ? selection.direction : selection.direction.reverse());
+        }
+        return degree;
+    }
+
+    private RelationshipSelectionCursor relationships(NodeCursor node, Selection selection, boolean forward) {
+        int[] types = selection.type == ANY_RELATIONSHIP_TYPE ? null : new int[]{selection.type};
+        switch (forward ? selection.direction : selection.direction.reverse()) {
+            case OUTGOING: return RelationshipSelections.outgoingCursor(cursors, node, types);
+            case INCOMING: return RelationshipSelections.incomingCursor(cursors, node, types);
+            default: return RelationshipSelections.allCursor(cursors, node, types);
+        }
+    }
+}
@@ -5,17 +5,36 @@ import apoc.Pools;
 import apoc.result.VirtualNode;
 import apoc.result.VirtualRelationship;
 import apoc.util.Util;
+import org.eclipse.collections.api.tuple.primitive.IntObjectPair;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
 import org.neo4j.graphdb.*;
 import org.neo4j.internal.helpers.collection.Iterables;
+import org.neo4j.internal.kernel.api.CursorFactory;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.NodeLabelIndexCursor;
+import org.neo4j.internal.kernel.api.PropertyCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.internal.kernel.api.TokenSet;
+import org.neo4j.internal.kernel.api.exceptions.RelationshipTypeIdNotFoundKernelException;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelectionCursor;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelections;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.Procedure;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.function.BinaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -86,7 +105,6 @@ public class Grouping {
         Map<String, List<String>> relAggNames = (aggregations.size() > 1) ? toStringListMap(aggregations.get(1)) : emptyMap();
         String[] relAggKeys = keyArray(relAggNames, "*");
 
-        // todo bitset
         Set<String> includeRels = computeIncludedRels(config);
 
         /*
@@ -103,98 +121,72 @@ public class Grouping {
         // also filter (esp. max) during aggregation?
         Map<String,Number> filter = configuredFilter(config);
 
-        Map<NodeKey, Set<Node>> grouped = new ConcurrentHashMap<>();
-        Map<NodeKey, VirtualNode> virtualNodes = new ConcurrentHashMap<>();
-        Map<RelKey, VirtualRelationship> virtualRels = new ConcurrentHashMap<>();
-
-        List<Future> futures = new ArrayList<>(1000);
+        KernelTransaction ktx = ((InternalTransaction) tx).kernelTransaction();
+        TokenRead tokenRead = ktx.tokenRead();
+        IntObjectHashMap<String> labelIds = new IntObjectHashMap<>();
+        for (String labelName : labels) {
+            int label = tokenRead.nodeLabel(labelName);
+            if (label != TokenRead.NO_TOKEN) labelIds.put(label, labelName);
+        }
+        IntHashSet includeTypes = null;
+        if (includeRels != null) {
+            includeTypes = new IntHashSet();
+            for (String type : includeRels) {
+                int id = tokenRead.relationshipType(type);
+                if (id != TokenRead.NO_TOKEN) includeTypes.add(id);
+            }
+        }
+        int[] keyTokens = propertyKeys(tokenRead, keys);
+        int[] nodeAggTokens = propertyKeys(tokenRead, nodeAggKeys);
+        int[] relAggTokens = propertyKeys(tokenRead, relAggKeys);
 
+        // the nodes of each group as an id bitmap, each batch is grouped into its own partial result that is merged in
+        Map<NodeKey, Group> grouped = new HashMap<>();
+        List<Future<Map<NodeKey, Group>>> nodeFutures = new ArrayList<>();
         ExecutorService pool = pools.getDefaultExecutorService();
-        for (String labelName : labels) {
-            Label label = Label.label(labelName);
-            Label[] singleLabel = {label};
-
-            try (ResourceIterator<Node> nodes = (labelName.equals("*")) ? tx.getAllNodes().iterator() : tx.findNodes(label)) {
-                while (nodes.hasNext()) {
-                    List<Node> batch = Util.take(nodes, BATCHSIZE);
-                    futures.add(Util.inTxFuture(pool, db, txInThread -> {
-                        try {
-                            for (Node node : batch) {
-                                final Node boundNode = Util.rebind(txInThread, node);
-                                NodeKey key = keyFor(boundNode, labelName, keys);
-                                grouped.compute(key, (k, v) -> {
-                                    if (v == null) v = new HashSet<>();
-                                    v.add(boundNode);
-                                    return v;
-                                });
-                                virtualNodes.compute(key, (k, v) -> {
-                                            if (v == null) {
-                                                v = new VirtualNode(singleLabel, propertiesFor(boundNode, keys));
-                                            }
-                                            VirtualNode vn = v;
-                                            if (!nodeAggNames.isEmpty()) {
-                                                aggregate(vn, nodeAggNames, nodeAggKeys.length > 0 ? boundNode.getProperties(nodeAggKeys) : Collections.emptyMap());
-                                            }
-                                            return vn;
-                                        }
-                                );
-                            }
-                        } catch (Exception e) {
-                            log.error("Error grouping nodes", e);
-                        }
-                        return null;
-                    }));
-                    Util.removeFinished(futures);
+        try (NodeLabelIndexCursor nodes = ktx.cursors().allocateNodeLabelIndexCursor()) {
+            for (IntObjectPair<String> label : labelIds.keyValuesView()) {
+                String labelName = label.getTwo();
+                ktx.dataRead().nodeLabelScan(label.getOne(), nodes);
+                long[] batch;
+                while ((batch = nextBatch(nodes)).length > 0) {
+                    long[] ids = batch;
+                    nodeFutures.add(Util.inTxFuture(pool, db, txInThread ->
+                            groupNodes(txInThread, ids, labelName, keys, keyTokens, nodeAggNames, nodeAggKeys, nodeAggTokens)));
+                    mergeFinished(nodeFutures, grouped, Group::merge, false);
                 }
             }
         }
-        Util.waitForFutures(futures);
-        futures.clear();
-        Iterator<Map.Entry<NodeKey, Set<Node>>> entries = grouped.entrySet().iterator();
-        int size = 0;
-        List<Map.Entry<NodeKey, Set<Node>>> batch = new ArrayList<>();
-        while (entries.hasNext()) {
-            Map.Entry<NodeKey, Set<Node>> outerEntry = entries.next();
-            batch.add(outerEntry);
-            size += outerEntry.getValue().size();
-            if (size > BATCHSIZE || !entries.hasNext()) {
-                ArrayList<Map.Entry<NodeKey, Set<Node>>> submitted = new ArrayList<>(batch);
-                batch.clear();
-                size = 0;
-                futures.add(Util.inTxFuture(pool, db, txInThread -> {
-                    try {
-                        for (Map.Entry<NodeKey, Set<Node>> entry : submitted) {
-                            for (Node node : entry.getValue()) {
-                                node = Util.rebind(txInThread, node);
-                                NodeKey startKey = entry.getKey();
-                                VirtualNode v1 = virtualNodes.get(startKey);
-                                for (Relationship rel : node.getRelationships(Direction.OUTGOING)) {
-                                    if (includeRels != null && !includeRels.contains(rel.getType().name())) continue;
-                                    Node endNode = rel.getEndNode();
-                                    for (NodeKey endKey : keysFor(endNode, labels, keys)) {
-                                        VirtualNode v2 = virtualNodes.get(endKey);
-                                        if (v2 == null) continue;
-                                        if (!selfRels && startKey.equals(endKey)) continue;
-                                        virtualRels.compute(new RelKey(startKey, endKey, rel), (rk, vRel) -> {
-                                            if (vRel == null) vRel = v1.createRelationshipTo(v2, rel.getType());
-                                            if (!relAggNames.isEmpty()) {
-                                                aggregate(vRel, relAggNames, relAggKeys.length > 0 ? rel.getProperties(relAggKeys) : Collections.emptyMap());
-                                            }
-                                            return vRel;
-                                        });
-                                    }
-                                }
-                            }
-                        }
-                    } catch (Exception e) {
-                        log.error("Error grouping relationships", e);
-                    }
-                    return null;
-                }));
-                Util.removeFinished(futures);
+        mergeFinished(nodeFutures, grouped, Group::merge, true);
+
+        Map<NodeKey, VirtualNode> virtualNodes = new HashMap<>(grouped.size());
+        grouped.forEach((key, group) -> {
+            VirtualNode node = new VirtualNode(new Label[]{Label.label(key.label)}, new HashMap<>(key.values));
+            group.aggregates.forEach(node::setProperty);
+            virtualNodes.put(key, node);
+        });
+
+        // the relationships going out of the nodes of each group, aggregated like the nodes
+        Map<RelKey, Map<String, Object>> groupedRels = new HashMap<>();
+        List<Future<Map<RelKey, Map<String, Object>>>> relFutures = new ArrayList<>();
+        IntHashSet types = includeTypes;
+        for (Map.Entry<NodeKey, Group> entry : grouped.entrySet()) {
+            NodeKey startKey = entry.getKey();
+            LongIterator ids = entry.getValue().nodes.getLongIterator();
+            while (ids.hasNext()) {
+                long[] batch = nextBatch(ids);
+                relFutures.add(Util.inTxFuture(pool, db, txInThread ->
+                        groupRelationships(txInThread, batch, startKey, grouped.keySet(), selfRels, types, labelIds, keys, keyTokens, relAggNames, relAggKeys, relAggTokens)));
+                mergeFinished(relFutures, groupedRels, Grouping::mergeAggregates, false);
             }
         }
-        Util.waitForFutures(futures);
+        mergeFinished(relFutures, groupedRels, Grouping::mergeAggregates, true);
+
+        groupedRels.forEach((key, aggregates) -> {
+            VirtualRelationship rel = virtualNodes.get(key.startKey).createRelationshipTo(virtualNodes.get(key.endKey), RelationshipType.withName(key.type));
+            aggregates.forEach(rel::setProperty);
+        });
+
         Stream<VirtualNode> stream = fixAggregates(virtualNodes.values()).stream();
         // apply filter
         if (filter != null) stream = stream.filter(n -> filter(n.getLabels(), n.getAllProperties(), filter));
@@ -208,6 +200,162 @@ public class Grouping {
         return groupResultStream;
     }
 
+    /**
+     * The nodes of a group and the aggregates of their properties
+     */
+    private static class Group {
+        final Roaring64NavigableMap nodes = new Roaring64NavigableMap();
+        final Map<String, Object> aggregates = new HashMap<>();
+
+        static Group merge(Group group, Group other) {
+            group.nodes.or(other.nodes);
+            mergeAggregates(group.aggregates, other.aggregates);
+            return group;
+        }
+    }
+
+    private Map<NodeKey, Group> groupNodes(Transaction txInThread, long[] ids, String labelName, String[] keys, int[] keyTokens,
+                                           Map<String, List<String>> aggNames, String[] aggKeys, int[] aggTokens) {
+        Map<NodeKey, Group> groups = new HashMap<>();
+        KernelTransaction ktx = ((InternalTransaction) txInThread).kernelTransaction();
+        Read read = ktx.dataRead();
+        try (NodeCursor node = ktx.cursors().allocateNodeCursor();
+             PropertyCursor properties = ktx.cursors().allocatePropertyCursor()) {
+            for (long id : ids) {
+                read.singleNode(id, node);
+                if (!node.next()) continue;
+                read.nodeProperties(id, node.propertiesReference(), properties);
+                NodeKey key = new NodeKey(labelName, properties(properties, keys, keyTokens));
+                Group group = groups.computeIfAbsent(key, k -> new Group());
+                group.nodes.addLong(id);
+                if (!aggNames.isEmpty()) {
+                    Map<String, Object> values = emptyMap();
+                    if (aggKeys.length > 0) {
+                        read.nodeProperties(id, node.propertiesReference(), properties);
+                        values = properties(properties, aggKeys, aggTokens);
+                    }
+                    aggregate(group.aggregates, aggNames, values);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error grouping nodes", e);
+        }
+        return groups;
+    }
+
+    private Map<RelKey, Map<String, Object>> groupRelationships(Transaction txInThread, long[] ids, NodeKey startKey, Set<NodeKey> groups,
+                                                               boolean selfRels, IntHashSet types, IntObjectHashMap<String> labelIds,
+                                                               String[] keys, int[] keyTokens,
+                                                               Map<String, List<String>> aggNames, String[] aggKeys, int[] aggTokens) {
+        Map<RelKey, Map<String, Object>> rels = new HashMap<>();
+        KernelTransaction ktx = ((InternalTransaction) txInThread).kernelTransaction();
+        Read read = ktx.dataRead();
+        CursorFactory cursors = ktx.cursors();
+        IntObjectHashMap<String> typeNames = new IntObjectHashMap<>();
+        try (NodeCursor node = cursors.allocateNodeCursor();
+             NodeCursor endNode = cursors.allocateNodeCursor();
+             PropertyCursor properties = cursors.allocatePropertyCursor()) {
+            for (long id : ids) {
+                read.singleNode(id, node);
+                if (!node.next()) continue;
+                try (RelationshipSelectionCursor rel = RelationshipSelections.outgoingCursor(cursors, node, null)) {
+                    while (rel.next()) {
+                        if (types != null && !types.contains(rel.type())) continue;
+                        read.singleNode(rel.otherNodeReference(), endNode);
+                        if (!endNode.next()) continue;
+                        read.nodeProperties(endNode.nodeReference(), endNode.propertiesReference(), properties);
+                        Map<String, Object> endValues = properties(properties, keys, keyTokens);
+                        String type = typeNames.getIfAbsentPut(rel.type(), () -> relationshipTypeName(ktx.tokenRead(), rel.type()));
+                        TokenSet endLabels = endNode.labels();
+                        for (int i = 0; i < endLabels.numberOfTokens(); i++) {
+                            String endLabel = labelIds.get(endLabels.token(i));
+                            if (endLabel == null) continue;
+                            NodeKey endKey = new NodeKey(endLabel, endValues);
+                            if (!groups.contains(endKey)) continue;
+                            if (!selfRels && startKey.equals(endKey)) continue;
+                            Map<String, Object> aggregates = rels.computeIfAbsent(new RelKey(startKey, endKey, type), k -> new HashMap<>());
+                            if (!aggNames.isEmpty()) {
+                                Map<String, Object> values = emptyMap();
+                                if (aggKeys.length > 0) {
+                                    read.relationshipProperties(rel.relationshipReference(), rel.propertiesReference(), properties);
+                                    values = properties(properties, aggKeys, aggTokens);
+                                }
+                                aggregate(aggregates, aggNames, values);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error grouping relationships", e);
+        }
+        return rels;
+    }
+
+    private static String relationshipTypeName(TokenRead tokenRead, int type) {
+        try {
+            return tokenRead.relationshipTypeName(type);
+        } catch (RelationshipTypeIdNotFoundKernelException e) {
+            throw new IllegalStateException("Relationship type with id " + type + " not found", e);
+        }
+    }
+
+    private static int[] propertyKeys(TokenRead tokenRead, String[] keys) {
+        int[] tokens = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            tokens[i] = tokenRead.propertyKey(keys[i]);
+        }
+        return tokens;
+    }
+
+    // the values of the keys, null for the ones the entity doesn't have
+    private static Map<String, Object> properties(PropertyCursor properties, String[] keys, int[] tokens) {
+        Map<String, Object> values = new HashMap<>(keys.length);
+        for (String key : keys) values.put(key, null);
+        while (properties.next()) {
+            int token = properties.propertyKey();
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i] == token) values.put(keys[i], properties.propertyValue().asObjectCopy());
+            }
+        }
+        return values;
+    }
+
+    private static long[] nextBatch(NodeLabelIndexCursor nodes) {
+        LongArrayList batch = new LongArrayList(BATCHSIZE);
+        while (batch.size() < BATCHSIZE && nodes.next()) {
+            batch.add(nodes.nodeReference());
+        }
+        return batch.toArray();
+    }
+
+    private static long[] nextBatch(LongIterator ids) {
+        LongArrayList batch = new LongArrayList(BATCHSIZE);
+        while (batch.size() < BATCHSIZE && ids.hasNext()) {
+            batch.add(ids.next());
+        }
+        return batch.toArray();
+    }
+
+    // merges the partial results of the finished futures, or of all of them if wait is true
+    private static <K, V> void mergeFinished(List<Future<Map<K, V>>> futures, Map<K, V> into, BinaryOperator<V> merge, boolean wait) {
+        if (!wait && futures.size() <= 25) return;
+        Iterator<Future<Map<K, V>>> it = futures.iterator();
+        while (it.hasNext()) {
+            Future<Map<K, V>> future = it.next();
+            if (!wait && !future.isDone()) continue;
+            try {
+                future.get().forEach((key, value) -> into.merge(key, value, merge));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while grouping", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error grouping", e.getCause());
+            }
+            it.remove();
+        }
+    }
+
     private Map<String, Number> configuredFilter(Map<String, Object> config) {
         Map<String, Number> filter = (Map<String, Number>) config.get("filter");
         if (filter == null || filter.isEmpty()) return null;
@@ -297,38 +445,36 @@ public class Grouping {
         return pcs;
     }
 
-    private void aggregate(Entity pc, Map<String, List<String>> aggregations, Map<String, Object> properties) {
+    private static void aggregate(Map<String, Object> pc, Map<String, List<String>> aggregations, Map<String, Object> properties) {
         aggregations.forEach((k2, aggNames) -> {
             for (String aggName : aggNames) {
                 String key = aggName + "_" + k2;
                 if ("count_*".equals(key)) {
-                    pc.setProperty(key, ((Number) pc.getProperty(key, 0)).longValue() + 1);
+                    pc.put(key, ((Number) pc.getOrDefault(key, 0)).longValue() + 1);
                 } else {
                     Object value = properties.get(k2);
                     if (value != null) {
                         switch (aggName) {
                             case "collect":
-                                List<Object> existing = (List<Object>) pc.getProperty(key, new ArrayList<>());
+                                List<Object> existing = (List<Object>) pc.computeIfAbsent(key, k -> new ArrayList<>());
                                 existing.add(value);
-                                pc.setProperty(key, existing);
                                 break;
                             case "count":
-                                pc.setProperty(key, ((Number) pc.getProperty(key, 0)).longValue() + 1);
+                                pc.put(key, ((Number) pc.getOrDefault(key, 0)).longValue() + 1);
                                 break;
                             case "sum":
-                                pc.setProperty(key, ((Number) pc.getProperty(key, 0)).doubleValue() + Util.toDouble(value));
+                                pc.put(key, ((Number) pc.getOrDefault(key, 0)).doubleValue() + Util.toDouble(value));
                                 break;
                             case "min":
-                                pc.setProperty(key, Math.min(((Number) pc.getProperty(key, Double.MAX_VALUE)).doubleValue(), Util.toDouble(value)));
+                                pc.put(key, Math.min(((Number) pc.getOrDefault(key, Double.MAX_VALUE)).doubleValue(), Util.toDouble(value)));
                                 break;
                             case "max":
-                                pc.setProperty(key, Math.max(((Number) pc.getProperty(key, Double.MIN_VALUE)).doubleValue(), Util.toDouble(value)));
+                                pc.put(key, Math.max(((Number) pc.getOrDefault(key, Double.MIN_VALUE)).doubleValue(), Util.toDouble(value)));
                                 break;
                             case "avg": {
-                                double[] avg = (double[]) pc.getProperty(key, new double[2]);
+                                double[] avg = (double[]) pc.computeIfAbsent(key, k -> new double[2]);
                                 avg[0] += Util.toDouble(value);
                                 avg[1] += 1;
-                                pc.setProperty(key, avg);
                                 break;
                             }
                         }
@@ -338,57 +484,32 @@ public class Grouping {
         });
     }
 
-    /**
-     * Returns the properties for the given node according to the specified keys. If a node does not have a property
-     * assigned to given key, the value is set to {@code null}.
-     *
-     * @param node node
-     * @param keys property keys
-     * @return node properties for keys
-     */
-    private Map<String, Object> propertiesFor(Node node, String[] keys) {
-        Map<String, Object> props = new HashMap<>(keys.length);
-
-        for (String key : keys) {
-            props.put(key, node.getProperty(key, null));
-        }
-
-        return props;
-    }
-
-    /**
-     * Creates a grouping key for the given node using its label and grouping properties.
-     *
-     * @param node  node
-     * @param label node label
-     * @param keys  property keys
-     * @return grouping key
-     */
-    private NodeKey keyFor(Node node, String label, String[] keys) {
-        return new NodeKey(label, propertiesFor(node, keys));
-    }
-
-    /**
-     * Creates a grouping key for each specified label.
-     *
-     * @param node   node
-     * @param labels node labels
-     * @param keys   property keys
-     * @return grouping keys
-     */
-    private Collection<NodeKey> keysFor(Node node, Collection<String> labels, String[] keys) {
-        Map<String, Object> props = propertiesFor(node, keys);
-        List<NodeKey> result = new ArrayList<>(labels.size());
-        if (labels.contains("*")) {
-            result.add(new NodeKey("*", props));
-        } else {
-            for (Label label : node.getLabels()) {
-                if (labels.contains(label.name())) {
-                    result.add(new NodeKey(label.name(), props));
+    // combines the aggregates of two partial results, by the aggregation that prefixes each key
+    private static Map<String, Object> mergeAggregates(Map<String, Object> aggregates, Map<String, Object> other) {
+        other.forEach((key, value) -> aggregates.merge(key, value, (a, b) -> {
+            switch (key.substring(0, key.indexOf('_'))) {
+                case "collect":
+                    ((List<Object>) a).addAll((List<Object>) b);
+                    return a;
+                case "count":
+                    return ((Number) a).longValue() + ((Number) b).longValue();
+                case "sum":
+                    return ((Number) a).doubleValue() + ((Number) b).doubleValue();
+                case "min":
+                    return Math.min(((Number) a).doubleValue(), ((Number) b).doubleValue());
+                case "max":
+                    return Math.max(((Number) a).doubleValue(), ((Number) b).doubleValue());
+                case "avg": {
+                    double[] avg = (double[]) a;
+                    avg[0] += ((double[]) b)[0];
+                    avg[1] += ((double[]) b)[1];
+                    return avg;
                 }
+                default:
+                    return a;
             }
-        }
-        return result;
+        }));
+        return aggregates;
     }
 
     /**
@@ -429,10 +550,10 @@ public class Grouping {
         private final NodeKey endKey;
         private final String type;
 
-        RelKey(NodeKey startKey, NodeKey endKey, Relationship rel) {
+        RelKey(NodeKey startKey, NodeKey endKey, String type) {
             this.startKey = startKey;
             this.endKey = endKey;
-            this.type = rel.getType().name();
+            this.type = type;
             hash = 31 * (31 * startKey.hashCode() + endKey.hashCode()) + type.hashCode();
         }
 
@@ -180,6 +180,14 @@ public class Nodes {
         }
     }
 
+    @UserFunction("apoc.nodes.connectedWithin")
+    @Description("apoc.nodes.connectedWithin(start, end, rel-direction-pattern, maxHops) - returns true when the end node can be reached from the start node within maxHops relationships of the pattern")
+    public boolean connectedWithin(@Name("start") Node start, @Name("end") Node end, @Name("types") String types, @Name("maxHops") long maxHops) {
+        if (start == null || end == null) return false;
+        List<Pair<RelationshipType, Direction>> pairs = (types == null || types.isEmpty()) ? null : parse(types);
+        return new BidirectionalReachability(ktx, pairs).connected(start.getId(), end.getId(), maxHops);
+    }
+
     @Procedure
     @Description("apoc.nodes.collapse([nodes...],[{properties:'overwrite' or 'discard' or 'combine'}]) yield from, rel, to merge nodes onto first in list")
     public Stream<VirtualPathResult> collapse(@Name("nodes") List<Node> nodes, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
@@ -28,6 +28,11 @@ public class LabelMatcher {
             return true;
         }
 
+        @Override
+        public boolean matchesLabels(Set<String> nodeLabels) {
+            return true;
+        }
+
         @Override
         public LabelMatcher addLabel(String label) {
             return this; // no-op
@@ -67,9 +72,10 @@ public class LabelMatcher {
     }
 
     public boolean matchesLabels(Node node) {
-        Set<String> nodeLabels = new HashSet<>();
-        node.getLabels().forEach(label -> nodeLabels.add(label.name()));
+        return matchesLabels(labelNames(node));
+    }
 
+    public boolean matchesLabels(Set<String> nodeLabels) {
         for ( String label : labels ) {
             if (nodeLabels.contains(label)) {
                 return true;
@@ -87,6 +93,12 @@ public class LabelMatcher {
         return false;
     }
 
+    public static Set<String> labelNames(Node node) {
+        Set<String> nodeLabels = new HashSet<>();
+        node.getLabels().forEach(label -> nodeLabels.add(label.name()));
+        return nodeLabels;
+    }
+
     public boolean isEmpty() {
         return labels.isEmpty() && (compoundLabels == null || compoundLabels.isEmpty());
     }
@@ -3,6 +3,8 @@ package apoc.path;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.traversal.Evaluation;
 
+import java.util.Set;
+
 import static org.neo4j.graphdb.traversal.Evaluation.*;
 
 /**
@@ -68,6 +70,10 @@ public class LabelMatcherGroup {
     }
 
     public Evaluation evaluate(Node node, boolean belowMinLevel) {
+        return evaluate(LabelMatcher.labelNames(node), belowMinLevel);
+    }
+
+    public Evaluation evaluate(Set<String> node, boolean belowMinLevel) {
         if (blacklistMatcher.matchesLabels(node)) {
             return EXCLUDE_AND_PRUNE;
         }
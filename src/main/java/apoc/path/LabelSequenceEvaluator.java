@@ -1,6 +1,5 @@
 package apoc.path;
 
-import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.traversal.Evaluation;
 import org.neo4j.graphdb.traversal.Evaluator;
@@ -9,6 +8,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import static org.neo4j.graphdb.traversal.Evaluation.EXCLUDE_AND_CONTINUE;
 import static org.neo4j.graphdb.traversal.Evaluation.INCLUDE_AND_CONTINUE;
@@ -65,8 +65,6 @@ public class LabelSequenceEvaluator implements Evaluator {
     @Override
     public Evaluation evaluate(Path path) {
         int depth = path.length();
-        Node node = path.endNode();
-        boolean belowMinLevel = depth < minLevel;
 
         // if start node shouldn't be filtered, exclude/include based on if using termination/endnode filter or not
         // minLevel evaluator will separately enforce exclusion if we're below minLevel
@@ -74,9 +72,22 @@ public class LabelSequenceEvaluator implements Evaluator {
             return whitelistAllowedEvaluation;
         }
 
-        // the user may want the sequence to begin at the start node (default), or the sequence may only apply from the next node on
-        LabelMatcherGroup matcherGroup = sequenceMatchers.get((beginSequenceAtStart ? depth : depth - 1) % sequenceMatchers.size());
+        return matcherGroup(depth).evaluate(path.endNode(), depth < minLevel);
+    }
+
+    /**
+     * Evaluates the labels of the node reached at the given depth, for expansions that don't build paths
+     */
+    public Evaluation evaluate(int depth, Set<String> labels) {
+        if (depth == 0 && (!filterStartNode || !beginSequenceAtStart)) {
+            return whitelistAllowedEvaluation;
+        }
+
+        return matcherGroup(depth).evaluate(labels, depth < minLevel);
+    }
 
-        return matcherGroup.evaluate(node, belowMinLevel);
+    // the user may want the sequence to begin at the start node (default), or the sequence may only apply from the next node on
+    private LabelMatcherGroup matcherGroup(int depth) {
+        return sequenceMatchers.get((beginSequenceAtStart ? depth : depth - 1) % sequenceMatchers.size());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,289 @@
+package apoc.path;
+
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongLongHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.traversal.Evaluation;
+import org.neo4j.internal.helpers.collection.Pair;
+import org.neo4j.internal.kernel.api.CursorFactory;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.internal.kernel.api.TokenSet;
+import org.neo4j.internal.kernel.api.exceptions.LabelNotFoundKernelException;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelectionCursor;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelections;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static apoc.path.PathExplorer.NodeFilter.*;
+
+/**
+ * Breadth first expansion with {@code NODE_GLOBAL} uniqueness, as used by subgraphNodes, subgraphAll and spanningTree.
+ * It visits the nodes in the same order as the traversal framework and applies the same relationship, label, level
+ * and node filters, but reads the graph through kernel cursors and keeps the visited nodes in a compressed bitmap
+ * instead of creating a path for every node it reaches.
+ * Paths are only built for the nodes that are returned, from the relationship each node was first reached by.
+ */
+class NodeGlobalExpander implements PrimitiveIterator.OfLong, AutoCloseable {
+
+    private static final List<Pair<RelationshipType, Direction>> ALL_RELATIONSHIPS = Collections.singletonList(Pair.of(null, Direction.BOTH));
+
+    private final Transaction tx;
+    private final Read read;
+    private final CursorFactory cursors;
+    private final TokenRead tokenRead;
+    private final NodeCursor nodeCursor;
+    private final NodeCursor labelCursor;
+
+    private final RelationshipSequenceExpander expander;
+    private final LabelSequenceEvaluator labelEvaluator;
+    private final long minLevel;
+    private final long maxLevel;
+    private final boolean filterStartNode;
+    private final LongHashSet endNodes;
+    private final LongHashSet terminatorNodes;
+    private final LongHashSet whitelistNodes;
+    private final LongHashSet blacklistNodes;
+
+    private final Roaring64NavigableMap visited = new Roaring64NavigableMap();
+    // node -> relationship it was first reached by, only kept when paths are needed
+    private final LongLongHashMap parents;
+    private final IntObjectHashMap<String> labelNames = new IntObjectHashMap<>();
+
+    private LongArrayList frontier = new LongArrayList();
+    private LongArrayList nextFrontier = new LongArrayList();
+    private int frontierIndex;
+    private int depth;
+    private final LongArrayList ready = new LongArrayList();
+    private int readyIndex;
+
+    NodeGlobalExpander(Transaction tx,
+                       List<Node> startNodes,
+                       RelationshipSequenceExpander expander,
+                       LabelSequenceEvaluator labelEvaluator,
+                       long minLevel,
+                       long maxLevel,
+                       boolean filterStartNode,
+                       EnumMap<PathExplorer.NodeFilter, List<Node>> nodeFilter,
+                       boolean trackPaths) {
+        this.tx = tx;
+        KernelTransaction ktx = ((InternalTransaction) tx).kernelTransaction();
+        this.read = ktx.dataRead();
+        this.cursors = ktx.cursors();
+        this.tokenRead = ktx.tokenRead();
+        this.nodeCursor = cursors.allocateNodeCursor();
+        this.labelCursor = cursors.allocateNodeCursor();
+        this.expander = expander;
+        this.labelEvaluator = labelEvaluator;
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+        this.filterStartNode = filterStartNode;
+        this.endNodes = ids(nodeFilter.get(END_NODES));
+        this.terminatorNodes = ids(nodeFilter.get(TERMINATOR_NODES));
+        this.blacklistNodes = ids(nodeFilter.get(BLACKLIST_NODES));
+        LongHashSet whitelist = ids(nodeFilter.get(WHITELIST_NODES));
+        if (whitelist != null) {
+            // ensure endNodes and terminatorNodes are whitelisted
+            if (endNodes != null) whitelist.addAll(endNodes);
+            if (terminatorNodes != null) whitelist.addAll(terminatorNodes);
+        }
+        this.whitelistNodes = whitelist;
+        this.parents = trackPaths ? new LongLongHashMap() : null;
+
+        for (Node node : startNodes) {
+            long id = node.getId();
+            if (visited.contains(id)) continue;
+            visited.addLong(id);
+            reached(id, 0);
+        }
+        // the start nodes are the first level to expand
+        LongArrayList empty = frontier;
+        frontier = nextFrontier;
+        nextFrontier = empty;
+    }
+
+    private static LongHashSet ids(List<Node> nodes) {
+        if (nodes == null || nodes.isEmpty()) return null;
+        LongHashSet ids = new LongHashSet(nodes.size());
+        for (Node node : nodes) ids.add(node.getId());
+        return ids;
+    }
+
+    Stream<Node> nodes() {
+        Spliterator.OfLong ids = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+        return StreamSupport.longStream(ids, false).mapToObj(tx::getNodeById).onClose(this::close);
+    }
+
+    Stream<Path> paths() {
+        Spliterator.OfLong ids = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+        return StreamSupport.longStream(ids, false).mapToObj(this::path).onClose(this::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (readyIndex == ready.size()) {
+            ready.clear();
+            readyIndex = 0;
+            if (!expandNext()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public long nextLong() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return ready.get(readyIndex++);
+    }
+
+    /**
+     * Expands the next node of the current level, or moves on to the next level
+     * @return false if there is nothing left to expand
+     */
+    private boolean expandNext() {
+        if (frontierIndex == frontier.size()) {
+            if (nextFrontier.isEmpty()) return false;
+            LongArrayList expanded = frontier;
+            frontier = nextFrontier;
+            nextFrontier = expanded;
+            nextFrontier.clear();
+            frontierIndex = 0;
+            depth++;
+        }
+        expand(frontier.get(frontierIndex++));
+        return true;
+    }
+
+    private void expand(long node) {
+        read.singleNode(node, nodeCursor);
+        if (!nodeCursor.next()) return;
+
+        List<Pair<RelationshipType, Direction>> typesAndDirections = expander == null ? ALL_RELATIONSHIPS : expander.relationshipsAt(depth);
+        for (Pair<RelationshipType, Direction> typeAndDirection : typesAndDirections) {
+            int[] types = null;
+            if (typeAndDirection.first() != null) {
+                int type = tokenRead.relationshipType(typeAndDirection.first().name());
+                if (type == TokenRead.NO_TOKEN) continue;
+                types = new int[]{type};
+            }
+            try (RelationshipSelectionCursor rels = relationships(typeAndDirection.other(), types)) {
+                while (rels.next()) {
+                    long other = rels.otherNodeReference();
+                    if (visited.contains(other)) continue;
+                    visited.addLong(other);
+                    if (parents != null) parents.put(other, rels.relationshipReference());
+                    reached(other, depth + 1);
+                }
+            }
+        }
+    }
+
+    private RelationshipSelectionCursor relationships(Direction direction, int[] types) {
+        switch (direction) {
+            case OUTGOING: return RelationshipSelections.outgoingCursor(cursors, nodeCursor, types);
+            case INCOMING: return RelationshipSelections.incomingCursor(cursors, nodeCursor, types);
+            default: return RelationshipSelections.allCursor(cursors, nodeCursor, types);
+        }
+    }
+
+    // evaluates the node like the evaluators of PathExplorer.traverse would, all of them have to include or continue
+    private void reached(long node, int nodeDepth) {
+        boolean includes = true;
+        boolean continues = true;
+        if (labelEvaluator != null) {
+            Evaluation evaluation = labelEvaluator.evaluate(nodeDepth, labels(node));
+            includes = evaluation.includes();
+            continues = evaluation.continues();
+        }
+        if (nodeDepth < minLevel) includes = false;
+        if (maxLevel != -1 && nodeDepth >= maxLevel) {
+            continues = false;
+            if (nodeDepth > maxLevel) includes = false;
+        }
+        boolean unfilteredStart = nodeDepth == 0 && !filterStartNode;
+        if (!unfilteredStart && blacklistNodes != null && blacklistNodes.contains(node)) {
+            includes = false;
+            continues = false;
+        }
+        if (endNodes != null || terminatorNodes != null) {
+            if (unfilteredStart || nodeDepth < (int) minLevel) {
+                includes = false;
+            } else {
+                boolean terminator = terminatorNodes != null && terminatorNodes.contains(node);
+                includes &= terminator || (endNodes != null && endNodes.contains(node));
+                continues &= !terminator;
+            }
+        }
+        if (!unfilteredStart && whitelistNodes != null && !whitelistNodes.contains(node)) {
+            includes = false;
+            continues = false;
+        }
+
+        if (includes) ready.add(node);
+        if (continues) nextFrontier.add(node);
+    }
+
+    private Set<String> labels(long node) {
+        Set<String> names = new HashSet<>();
+        read.singleNode(node, labelCursor);
+        if (!labelCursor.next()) return names;
+        TokenSet labels = labelCursor.labels();
+        for (int i = 0; i < labels.numberOfTokens(); i++) {
+            int label = labels.token(i);
+            String name = labelNames.get(label);
+            if (name == null) {
+                try {
+                    name = tokenRead.nodeLabelName(label);
+                } catch (LabelNotFoundKernelException e) {
+                    throw new IllegalStateException("Label with id " + label + " not found", e);
+                }
+                labelNames.put(label, name);
+            }
+            names.add(name);
+        }
+        return names;
+    }
+
+    private Path path(long node) {
+        List<Relationship> rels = new ArrayList<>();
+        long start = node;
+        while (parents.containsKey(start)) {
+            Relationship rel = tx.getRelationshipById(parents.get(start));
+            rels.add(rel);
+            start = rel.getOtherNodeId(start);
+        }
+        PathImpl.Builder builder = new PathImpl.Builder(tx.getNodeById(start));
+        for (int i = rels.size() - 1; i >= 0; i--) {
+            builder = builder.push(rels.get(i));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void close() {
+        nodeCursor.close();
+        labelCursor.close();
+    }
+}
@@ -1,23 +1,39 @@
 package apoc.path;
 
+import apoc.Pools;
 import apoc.algo.Cover;
 import apoc.result.GraphResult;
 import apoc.result.NodeResult;
 import apoc.result.PathResult;
+import apoc.util.QueueBasedSpliterator;
 import apoc.util.Util;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.traversal.*;
 import org.neo4j.internal.helpers.collection.Iterables;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Description;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.Procedure;
+import org.neo4j.procedure.TerminationGuard;
 
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -27,12 +43,26 @@ import static apoc.path.PathExplorer.NodeFilter.*;
 public class PathExplorer {
 	public static final Uniqueness UNIQUENESS = Uniqueness.RELATIONSHIP_PATH;
 	public static final boolean BFS = true;
+	public static final int DEFAULT_PARALLEL_BATCH_SIZE = 100;
+	private static final int PARALLEL_QUEUE_SIZE = 1000;
+	private static final long[] TOMBSTONE = new long[0];
+	private static final long[] FAILED = new long[0];
+
 	@Context
     public Transaction tx;
 
+	@Context
+	public GraphDatabaseService db;
+
 	@Context
     public Log log;
 
+	@Context
+	public Pools pools;
+
+	@Context
+	public TerminationGuard terminationGuard;
+
 	@Procedure("apoc.path.expand")
 	@Description("apoc.path.expand(startNode <id>|Node|list, 'TYPE|TYPE_OUT>|<TYPE_IN', '+YesLabel|-NoLabel', minLevel, maxLevel ) yield path - expand from start node following the given relationships from min to max-level adhering to the label filters")
 	public Stream<PathResult> explorePath(@Name("start") Object start
@@ -49,7 +79,7 @@ public class PathExplorer {
 	@Description("apoc.path.expandConfig(startNode <id>|Node|list, {minLevel,maxLevel,uniqueness,relationshipFilter,labelFilter,uniqueness:'RELATIONSHIP_PATH',bfs:true, filterStartNode:false, limit:-1, optional:false, endNodes:[], terminatorNodes:[], sequence, beginSequenceAtStart:true}) yield path - " +
 			"expand from start node following the given relationships from min to max-level adhering to the label filters. ")
 	public Stream<PathResult> expandConfig(@Name("start") Object start, @Name("config") Map<String,Object> config) throws Exception {
-		return expandConfigPrivate(start, config).map( PathResult::new );
+		return expandConfigPrivate(start, config, true).map( PathResult::new );
 	}
 
 	@Procedure("apoc.path.subgraphNodes")
@@ -62,7 +92,7 @@ public class PathExplorer {
 			throw new IllegalArgumentException("minLevel can only be 0 or 1 in subgraphNodes()");
 		}
 
-		return expandConfigPrivate(start, configMap).map( path -> path == null ? new NodeResult(null) : new NodeResult(path.endNode()) );
+		return expandNodesPrivate(start, configMap).map( NodeResult::new );
 	}
 
 	@Procedure("apoc.path.subgraphAll")
@@ -76,7 +106,7 @@ public class PathExplorer {
 			throw new IllegalArgumentException("minLevel can only be 0 or 1 in subgraphAll()");
 		}
 
-		List<Node> subgraphNodes = expandConfigPrivate(start, configMap).map( Path::endNode ).collect(Collectors.toList());
+		List<Node> subgraphNodes = expandNodesPrivate(start, configMap).collect(Collectors.toList());
 		List<Relationship> subgraphRels = Cover.coverNodes(subgraphNodes).collect(Collectors.toList());
 
 		return Stream.of(new GraphResult(subgraphNodes, subgraphRels));
@@ -92,7 +122,7 @@ public class PathExplorer {
 			throw new IllegalArgumentException("minLevel can only be 0 or 1 in spanningTree()");
 		}
 
-		return expandConfigPrivate(start, configMap).map( PathResult::new );
+		return expandConfigPrivate(start, configMap, true).map( PathResult::new );
 	}
 
 	private Uniqueness getUniqueness(String uniqueness) {
@@ -132,7 +162,10 @@ public class PathExplorer {
 		throw new Exception("Unsupported data type for start parameter a Node or an Identifier (long) of a Node must be given!");
 	}
 
-	private Stream<Path> expandConfigPrivate(@Name("start") Object start, @Name("config") Map<String,Object> config) throws Exception {
+	/**
+	 * @param pathsReturned false if only the end nodes of the paths are used
+	 */
+	private Stream<Path> expandConfigPrivate(@Name("start") Object start, @Name("config") Map<String,Object> config, boolean pathsReturned) throws Exception {
 		List<Node> nodes = startToNodes(start);
 
 		String uniqueness = (String) config.getOrDefault("uniqueness", UNIQUENESS.name());
@@ -147,6 +180,97 @@ public class PathExplorer {
 		String sequence = (String) config.getOrDefault("sequence", null);
 		boolean beginSequenceAtStart = Util.toBoolean(config.getOrDefault("beginSequenceAtStart", true));
 
+		EnumMap<NodeFilter, List<Node>> nodeFilter = nodeFilter(config);
+
+		int batchSize = Math.max(1, Util.toInteger(config.getOrDefault("batchSize", DEFAULT_PARALLEL_BATCH_SIZE)));
+
+		Stream<Path> results = useNodeGlobalExpander(config, nodes, pathsReturned)
+				? limit(nodeGlobalExpander(nodes, config, nodeFilter, true).paths(), limit)
+				: expandInParallel(config, nodes, pathsReturned)
+				? explorePathParallel(nodes, batchSize, Util.toInteger(config.getOrDefault("concurrency", Runtime.getRuntime().availableProcessors())),
+					relationshipFilter, labelFilter, minLevel, maxLevel, bfs, getUniqueness(uniqueness), filterStartNode, limit, nodeFilter, sequence, beginSequenceAtStart)
+				: explorePathPrivate(nodes, relationshipFilter, labelFilter, minLevel, maxLevel, bfs, getUniqueness(uniqueness), filterStartNode, limit, nodeFilter, sequence, beginSequenceAtStart);
+
+		if (optional) {
+			return optionalStream(results);
+		} else {
+			return results;
+		}
+	}
+
+	/**
+	 * The end nodes of the expansion, without building paths when the expansion doesn't need them
+	 */
+	private Stream<Node> expandNodesPrivate(Object start, Map<String,Object> config) throws Exception {
+		List<Node> nodes = startToNodes(start);
+		if (!useNodeGlobalExpander(config, nodes, false)) {
+			return expandConfigPrivate(start, config, false).map( path -> path == null ? null : path.endNode() );
+		}
+		long limit = Util.toLong(config.getOrDefault("limit", "-1"));
+		boolean optional = Util.toBoolean(config.getOrDefault("optional", false));
+		Stream<Node> results = limit(nodeGlobalExpander(nodes, config, nodeFilter(config), false).nodes(), limit);
+		return optional ? optionalStream(results) : results;
+	}
+
+	// breadth first expansions visiting each node once don't need the traversal framework
+	private boolean useNodeGlobalExpander(Map<String,Object> config, List<Node> nodes, boolean pathsReturned) {
+		return getUniqueness((String) config.getOrDefault("uniqueness", UNIQUENESS.name())) == Uniqueness.NODE_GLOBAL
+				&& Util.toBoolean(config.getOrDefault("bfs", true))
+				&& !expandInParallel(config, nodes, pathsReturned);
+	}
+
+	// the batches run in transactions of their own, which don't see the changes of the caller's transaction
+	private boolean expandInParallel(Map<String,Object> config, List<Node> nodes, boolean pathsReturned) {
+		return Util.toBoolean(config.getOrDefault("parallel", false))
+				&& nodes.size() > Math.max(1, Util.toInteger(config.getOrDefault("batchSize", DEFAULT_PARALLEL_BATCH_SIZE)))
+				&& !hasChanges(tx)
+				&& canExpandInParallel(getUniqueness((String) config.getOrDefault("uniqueness", UNIQUENESS.name())),
+					Util.toLong(config.getOrDefault("minLevel", "-1")), Util.toLong(config.getOrDefault("maxLevel", "-1")),
+					(String) config.getOrDefault("sequence", null), pathsReturned);
+	}
+
+	private static boolean hasChanges(Transaction tx) {
+		KernelTransaction ktx = ((InternalTransaction) tx).kernelTransaction();
+		return ktx instanceof TxStateHolder && ((TxStateHolder) ktx).hasTxStateWithChanges();
+	}
+
+	/**
+	 * Batches of start nodes give the same paths as a single expansion, if the uniqueness is checked per path.
+	 * With the global strategies the batches race for the nodes or relationships, so the path by which they are
+	 * first reached differs from a serial expansion, which reaches them by the shortest one: only the set of end nodes
+	 * is the same, and only without a maximum level or sequence and with a minimum level of at most 1.
+	 * The level and recent strategies can't be shared between batches.
+	 */
+	private static boolean canExpandInParallel(Uniqueness uniqueness, long minLevel, long maxLevel, String sequence, boolean pathsReturned) {
+		switch (uniqueness) {
+			case NODE_PATH:
+			case RELATIONSHIP_PATH:
+			case NONE:
+				return true;
+			case NODE_GLOBAL:
+			case RELATIONSHIP_GLOBAL:
+				return !pathsReturned && maxLevel == -1 && minLevel <= 1 && (sequence == null || sequence.trim().isEmpty());
+			default:
+				return false;
+		}
+	}
+
+	private NodeGlobalExpander nodeGlobalExpander(List<Node> nodes, Map<String,Object> config, EnumMap<NodeFilter, List<Node>> nodeFilter, boolean trackPaths) {
+		String relationshipFilter = (String) config.getOrDefault("relationshipFilter", null);
+		String labelFilter = (String) config.getOrDefault("labelFilter", null);
+		long minLevel = Util.toLong(config.getOrDefault("minLevel", "-1"));
+		long maxLevel = Util.toLong(config.getOrDefault("maxLevel", "-1"));
+		boolean filterStartNode = Util.toBoolean(config.getOrDefault("filterStartNode", false));
+		String sequence = (String) config.getOrDefault("sequence", null);
+		boolean beginSequenceAtStart = Util.toBoolean(config.getOrDefault("beginSequenceAtStart", true));
+
+		return new NodeGlobalExpander(tx, nodes,
+				relationshipExpander(relationshipFilter, sequence, beginSequenceAtStart),
+				labelEvaluator(labelFilter, sequence, filterStartNode, beginSequenceAtStart, minLevel),
+				minLevel, maxLevel, filterStartNode, nodeFilter, trackPaths);
+	}
+
+	private EnumMap<NodeFilter, List<Node>> nodeFilter(Map<String,Object> config) throws Exception {
 		List<Node> endNodes = startToNodes(config.get("endNodes"));
 		List<Node> terminatorNodes = startToNodes(config.get("terminatorNodes"));
 		List<Node> whitelistNodes = startToNodes(config.get("whitelistNodes"));
@@ -168,14 +292,11 @@ public class PathExplorer {
 		if (blacklistNodes != null && !blacklistNodes.isEmpty()) {
 			nodeFilter.put(BLACKLIST_NODES, blacklistNodes);
 		}
+		return nodeFilter;
+	}
 
-		Stream<Path> results = explorePathPrivate(nodes, relationshipFilter, labelFilter, minLevel, maxLevel, bfs, getUniqueness(uniqueness), filterStartNode, limit, nodeFilter, sequence, beginSequenceAtStart);
-
-		if (optional) {
-			return optionalStream(results);
-		} else {
-			return results;
-		}
+	private static <T> Stream<T> limit(Stream<T> stream, long limit) {
+		return limit == -1 ? stream : stream.limit(limit);
 	}
 
 	private Stream<Path> explorePathPrivate(Iterable<Node> startNodes,
@@ -200,18 +321,163 @@ public class PathExplorer {
 		}
 	}
 
+	/**
+	 * Expands batches of start nodes concurrently, each in its own read transaction on threads of its own. The paths
+	 * are passed back as ids through a bounded queue, so the workers wait for the caller when it consumes slower than
+	 * they expand, and are rebuilt in the caller's transaction. With the global uniqueness strategies the batches share
+	 * the visited nodes or relationships, see {@link SharedGlobalUniqueness}.
+	 */
+	private Stream<Path> explorePathParallel(List<Node> startNodes,
+											 int batchSize,
+											 int concurrency,
+											 String pathFilter,
+											 String labelFilter,
+											 long minLevel,
+											 long maxLevel,
+											 boolean bfs,
+											 Uniqueness uniqueness,
+											 boolean filterStartNode,
+											 long limit,
+											 EnumMap<NodeFilter, List<Node>> nodeFilter,
+											 String sequence,
+											 boolean beginSequenceAtStart) {
+		boolean global = uniqueness == Uniqueness.NODE_GLOBAL || uniqueness == Uniqueness.RELATIONSHIP_GLOBAL;
+		long[] startIds = startNodes.stream().mapToLong(Node::getId).toArray();
+		if (global) startIds = Arrays.stream(startIds).distinct().toArray();
+		List<long[]> batches = new ArrayList<>();
+		for (int from = 0; from < startIds.length; from += batchSize) {
+			batches.add(Arrays.copyOfRange(startIds, from, Math.min(startIds.length, from + batchSize)));
+		}
+		UniquenessFactory sharedUniqueness = global ? new SharedGlobalUniqueness(uniqueness == Uniqueness.NODE_GLOBAL, startIds) : uniqueness;
+
+		BlockingQueue<long[]> queue = new ArrayBlockingQueue<>(PARALLEL_QUEUE_SIZE);
+		AtomicBoolean closed = new AtomicBoolean();
+		AtomicReference<RuntimeException> error = new AtomicReference<>();
+		AtomicInteger nextBatch = new AtomicInteger();
+		int workers = Math.max(1, Math.min(concurrency, batches.size()));
+		AtomicInteger running = new AtomicInteger(workers);
+
+		Runnable worker = () -> {
+			try {
+				for (int i = nextBatch.getAndIncrement(); i < batches.size() && error.get() == null; i = nextBatch.getAndIncrement()) {
+					try (Transaction batchTx = db.beginTx()) {
+						List<Node> batchNodes = new ArrayList<>();
+						for (long id : batches.get(i)) batchNodes.add(batchTx.getNodeById(id));
+						Traverser traverser = traverse(batchTx.traversalDescription(), batchNodes, pathFilter, labelFilter, minLevel, maxLevel, sharedUniqueness, bfs, filterStartNode, nodeFilter, sequence, beginSequenceAtStart);
+						for (Path path : traverser) {
+							if (error.get() != null || !offer(queue, toIds(path), closed)) break;
+						}
+						batchTx.commit();
+					}
+					if (closed.get()) break;
+				}
+			} catch (RuntimeException e) {
+				if (error.compareAndSet(null, e)) offer(queue, FAILED, closed);
+			} finally {
+				if (running.decrementAndGet() == 0) offer(queue, TOMBSTONE, closed);
+			}
+		};
+		// the workers block until the caller reads the queue, which it only does after returning, so they can't
+		// run on the default pool where the caller might have to wait for them when it is full
+		ExecutorService executor = pools.newDedicatedExecutorService("expand", workers);
+		for (int i = 0; i < workers; i++) {
+			executor.submit(worker);
+		}
+		executor.shutdown();
+
+		Stream<Path> stream = StreamSupport.stream(new QueueBasedSpliterator<>(queue, TOMBSTONE, terminationGuard, Integer.MAX_VALUE), false)
+				.map(ids -> {
+					if (ids == FAILED) throw error.get();
+					return toPath(ids);
+				})
+				.onClose(() -> closed.set(true));
+		return limit == -1 ? stream : stream.limit(limit);
+	}
+
+	/**
+	 * Global uniqueness shared by the traversals of all batches. Like a single traversal, which visits all start nodes
+	 * before expanding any of them, the start nodes are visited up front, so a start node is never reached again from
+	 * another batch.
+	 */
+	private static class SharedGlobalUniqueness implements UniquenessFactory, UniquenessFilter {
+		private final boolean nodes;
+		private final Set<Long> visited = ConcurrentHashMap.newKeySet();
+
+		SharedGlobalUniqueness(boolean nodes, long[] startIds) {
+			this.nodes = nodes;
+			if (nodes) {
+				for (long id : startIds) visited.add(id);
+			}
+		}
+
+		@Override
+		public UniquenessFilter create(Object optionalParameter) {
+			return this;
+		}
+
+		@Override
+		public boolean eagerStartBranches() {
+			return true;
+		}
+
+		@Override
+		public boolean checkFirst(TraversalBranch branch) {
+			return true;
+		}
+
+		@Override
+		public boolean check(TraversalBranch branch) {
+			return visited.add(nodes ? branch.endNode().getId() : branch.lastRelationship().getId());
+		}
+
+		@Override
+		public boolean checkFull(Path path) {
+			return true;
+		}
+	}
+
+	// waits for room in the queue until the caller closed the stream
+	private static boolean offer(BlockingQueue<long[]> queue, long[] ids, AtomicBoolean closed) {
+		try {
+			while (!closed.get()) {
+				if (queue.offer(ids, 100, TimeUnit.MILLISECONDS)) return true;
+			}
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	// the start node id followed by the relationship ids
+	private static long[] toIds(Path path) {
+		long[] ids = new long[path.length() + 1];
+		ids[0] = path.startNode().getId();
+		int i = 1;
+		for (Relationship rel : path.relationships()) ids[i++] = rel.getId();
+		return ids;
+	}
+
+	private Path toPath(long[] ids) {
+		PathImpl.Builder builder = new PathImpl.Builder(tx.getNodeById(ids[0]));
+		for (int i = 1; i < ids.length; i++) {
+			builder = builder.push(tx.getRelationshipById(ids[i]));
+		}
+		return builder.build();
+	}
+
 	/**
 	 * If the stream is empty, returns a stream of a single null value, otherwise returns the equivalent of the input stream
 	 * @param stream the input stream
 	 * @return a stream of a single null value if the input stream is empty, otherwise returns the equivalent of the input stream
 	 */
-	private Stream<Path> optionalStream(Stream<Path> stream) {
-		Stream<Path> optionalStream;
-		Iterator<Path> itr = stream.iterator();
+	private <T> Stream<T> optionalStream(Stream<T> stream) {
+		Stream<T> optionalStream;
+		Iterator<T> itr = stream.iterator();
 		if (itr.hasNext()) {
 			optionalStream = StreamSupport.stream(Spliterators.spliteratorUnknownSize(itr, 0), false);
 		} else {
-			List<Path> listOfNull = new ArrayList<>();
+			List<T> listOfNull = new ArrayList<>();
 			listOfNull.add(null);
 			optionalStream = listOfNull.stream();
 		}
@@ -225,7 +491,7 @@ public class PathExplorer {
 									 String labelFilter,
 									 long minLevel,
 									 long maxLevel,
-									 Uniqueness uniqueness,
+									 UniquenessFactory uniqueness,
 									 boolean bfs,
 									 boolean filterStartNode,
 									 EnumMap<NodeFilter, List<Node>> nodeFilter,
@@ -236,28 +502,11 @@ public class PathExplorer {
 
 		td = bfs ? td.breadthFirst() : td.depthFirst();
 
-		// if `sequence` is present, it overrides `labelFilter` and `relationshipFilter`
-		if (sequence != null && !sequence.trim().isEmpty())	{
-			String[] sequenceSteps = sequence.split(",");
-			List<String> labelSequenceList = new ArrayList<>();
-			List<String> relSequenceList = new ArrayList<>();
-
-			for (int index = 0; index < sequenceSteps.length; index++) {
-				List<String> seq = (beginSequenceAtStart ? index : index - 1) % 2 == 0 ? labelSequenceList : relSequenceList;
-				seq.add(sequenceSteps[index]);
-			}
-
-			td = td.expand(new RelationshipSequenceExpander(relSequenceList, beginSequenceAtStart));
-			td = td.evaluator(new LabelSequenceEvaluator(labelSequenceList, filterStartNode, beginSequenceAtStart, (int) minLevel));
-		} else {
-			if (pathFilter != null && !pathFilter.trim().isEmpty()) {
-				td = td.expand(new RelationshipSequenceExpander(pathFilter.trim(), beginSequenceAtStart));
-			}
+		RelationshipSequenceExpander expander = relationshipExpander(pathFilter, sequence, beginSequenceAtStart);
+		if (expander != null) td = td.expand(expander);
 
-			if (labelFilter != null && sequence == null && !labelFilter.trim().isEmpty()) {
-				td = td.evaluator(new LabelSequenceEvaluator(labelFilter.trim(), filterStartNode, beginSequenceAtStart, (int) minLevel));
-			}
-		}
+		LabelSequenceEvaluator labelEvaluator = labelEvaluator(labelFilter, sequence, filterStartNode, beginSequenceAtStart, minLevel);
+		if (labelEvaluator != null) td = td.evaluator(labelEvaluator);
 
 		if (minLevel != -1) td = td.evaluator(Evaluators.fromDepth((int) minLevel));
 		if (maxLevel != -1) td = td.evaluator(Evaluators.toDepth((int) maxLevel));
@@ -299,6 +548,38 @@ public class PathExplorer {
 		return td.traverse(startNodes);
 	}
 
+	// if `sequence` is present, it overrides `labelFilter` and `relationshipFilter`
+	static RelationshipSequenceExpander relationshipExpander(String pathFilter, String sequence, boolean beginSequenceAtStart) {
+		if (sequence != null && !sequence.trim().isEmpty()) {
+			return new RelationshipSequenceExpander(sequenceSteps(sequence, beginSequenceAtStart, false), beginSequenceAtStart);
+		}
+		if (pathFilter != null && !pathFilter.trim().isEmpty()) {
+			return new RelationshipSequenceExpander(pathFilter.trim(), beginSequenceAtStart);
+		}
+		return null;
+	}
+
+	static LabelSequenceEvaluator labelEvaluator(String labelFilter, String sequence, boolean filterStartNode, boolean beginSequenceAtStart, long minLevel) {
+		if (sequence != null && !sequence.trim().isEmpty()) {
+			return new LabelSequenceEvaluator(sequenceSteps(sequence, beginSequenceAtStart, true), filterStartNode, beginSequenceAtStart, (int) minLevel);
+		}
+		if (labelFilter != null && sequence == null && !labelFilter.trim().isEmpty()) {
+			return new LabelSequenceEvaluator(labelFilter.trim(), filterStartNode, beginSequenceAtStart, (int) minLevel);
+		}
+		return null;
+	}
+
+	// the sequence alternates label and relationship filters
+	private static List<String> sequenceSteps(String sequence, boolean beginSequenceAtStart, boolean labels) {
+		String[] sequenceSteps = sequence.split(",");
+		List<String> steps = new ArrayList<>();
+		for (int index = 0; index < sequenceSteps.length; index++) {
+			boolean labelStep = (beginSequenceAtStart ? index : index - 1) % 2 == 0;
+			if (labelStep == labels) steps.add(sequenceSteps[index]);
+		}
+		return steps;
+	}
+
 	// keys to node filter map
 	enum NodeFilter {
 		WHITELIST_NODES,
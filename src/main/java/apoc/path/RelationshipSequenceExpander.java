@@ -73,14 +73,7 @@ public class RelationshipSequenceExpander implements PathExpander {
     @Override
     public Iterable<Relationship> expand( Path path, BranchState state ) {
         final Node node = path.endNode();
-        int depth = path.length();
-        List<Pair<RelationshipType, Direction>> stepRels;
-
-        if (depth == 0 && initialRels != null) {
-            stepRels = initialRels;
-        } else {
-            stepRels = relSequences.get((initialRels == null ? depth : depth - 1) % relSequences.size());
-        }
+        List<Pair<RelationshipType, Direction>> stepRels = relationshipsAt(path.length());
 
         return Iterators.asList(
          new NestingIterator<Relationship, Pair<RelationshipType, Direction>>(
@@ -103,6 +96,16 @@ public class RelationshipSequenceExpander implements PathExpander {
         });
     }
 
+    /**
+     * @return the relationship types and directions to expand from the nodes at the given depth
+     */
+    public List<Pair<RelationshipType, Direction>> relationshipsAt(int depth) {
+        if (depth == 0 && initialRels != null) {
+            return initialRels;
+        }
+        return relSequences.get((initialRels == null ? depth : depth - 1) % relSequences.size());
+    }
+
     @Override
     public PathExpander reverse() {
         throw new RuntimeException("Not implemented");
@@ -0,0 +1,99 @@
+package apoc.periodic;
+
+import apoc.util.Util;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch size of {@code apoc.periodic.iterate}. With {@code adaptive:true} the size of the next batch is derived from
+ * the smoothed time per row of the finished batches, so that a batch takes about {@code targetBatchTime} ms,
+ * while failed or retried batches halve it. The size changes at most by a factor of two per batch and stays
+ * within {@code minBatchSize} and {@code maxBatchSize}.
+ */
+class AdaptiveBatchSize {
+
+    static final long DEFAULT_MIN_BATCH_SIZE = 100;
+    static final long DEFAULT_MAX_BATCH_SIZE = 100_000;
+    static final long DEFAULT_TARGET_BATCH_TIME = 1000;
+    private static final double SMOOTHING = 0.3;
+
+    private final boolean adaptive;
+    private final long initial;
+    private final long min;
+    private final long max;
+    private final long targetNanos;
+
+    private volatile long current;
+    private double nanosPerRow = -1;
+
+    // sizes handed out, only touched by the thread taking the batches
+    private long smallest = Long.MAX_VALUE;
+    private long largest;
+    private long last;
+    private long total;
+    private long batches;
+
+    private AdaptiveBatchSize(boolean adaptive, long initial, long min, long max, long targetMillis) {
+        this.adaptive = adaptive;
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.initial = Math.min(this.max, Math.max(this.min, initial));
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, targetMillis));
+        this.current = this.initial;
+    }
+
+    static AdaptiveBatchSize fixed(long batchSize) {
+        return new AdaptiveBatchSize(false, batchSize, batchSize, batchSize, DEFAULT_TARGET_BATCH_TIME);
+    }
+
+    static AdaptiveBatchSize fromConfig(Map<String, Object> config, long batchSize) {
+        if (!Util.toBoolean(config.getOrDefault("adaptive", false))) {
+            return fixed(batchSize);
+        }
+        long min = Util.toLong(config.getOrDefault("minBatchSize", Math.min(DEFAULT_MIN_BATCH_SIZE, batchSize)));
+        long max = Util.toLong(config.getOrDefault("maxBatchSize", Math.max(DEFAULT_MAX_BATCH_SIZE, batchSize)));
+        long target = Util.toLong(config.getOrDefault("targetBatchTime", DEFAULT_TARGET_BATCH_TIME));
+        return new AdaptiveBatchSize(true, batchSize, min, max, target);
+    }
+
+    /**
+     * @return the size of the next batch to take
+     */
+    int next() {
+        long size = current;
+        last = size;
+        smallest = Math.min(smallest, size);
+        largest = Math.max(largest, size);
+        total += size;
+        batches++;
+        return (int) size;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    synchronized void completed(long size, long nanos, boolean failed, long retries) {
+        if (!adaptive) return;
+        if (failed || retries > 0) {
+            current = Math.max(min, current / 2);
+            return;
+        }
+        if (size == 0) return;
+        double rowNanos = (double) nanos / size;
+        nanosPerRow = nanosPerRow < 0 ? rowNanos : SMOOTHING * rowNanos + (1 - SMOOTHING) * nanosPerRow;
+        long wanted = (long) Math.max(1, targetNanos / Math.max(nanosPerRow, 1));
+        wanted = Math.min(current * 2, Math.max(current / 2, wanted));
+        current = Math.min(max, Math.max(min, wanted));
+    }
+
+    Map<String, Object> toMap() {
+        return Util.map("adaptive", adaptive,
+                "initial", initial,
+                "last", batches == 0 ? initial : last,
+                "min", batches == 0 ? initial : smallest,
+                "max", batches == 0 ? initial : largest,
+                "average", batches == 0 ? initial : total / batches);
+    }
+}
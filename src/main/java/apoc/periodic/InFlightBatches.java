@@ -0,0 +1,50 @@
+package apoc.periodic;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded window of batches that have been handed to an executor but are not finished yet.
+ * The producer blocks in {@link #acquire(long, BooleanSupplier)} as long as either the number of batches
+ * or the number of rows they hold is at its limit, workers call {@link #release(long)} when a batch is done.
+ */
+class InFlightBatches {
+
+    private static final long WAIT_MILLIS = 100;
+
+    private final int maxBatches;
+    private final long maxRows;
+    private int batches;
+    private long rows;
+
+    InFlightBatches(int maxBatches, long maxRows) {
+        this.maxBatches = Math.max(1, maxBatches);
+        this.maxRows = Math.max(1, maxRows);
+    }
+
+    /**
+     * Waits until there is room for a batch of the given size. A single batch is always admitted,
+     * even if it is larger than the row limit.
+     *
+     * @param terminated checked while waiting
+     * @return false if {@code terminated} became true before the batch could be admitted
+     */
+    synchronized boolean acquire(long size, BooleanSupplier terminated) throws InterruptedException {
+        while (batches > 0 && (batches >= maxBatches || rows + size > maxRows)) {
+            if (terminated.getAsBoolean()) return false;
+            wait(WAIT_MILLIS);
+        }
+        batches++;
+        rows += size;
+        return true;
+    }
+
+    synchronized void release(long size) {
+        batches--;
+        rows -= size;
+        notifyAll();
+    }
+
+    synchronized int getBatches() {
+        return batches;
+    }
+}
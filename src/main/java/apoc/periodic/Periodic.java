@@ -2,6 +2,8 @@ package apoc.periodic;
 
 import apoc.Pools;
 import apoc.util.Util;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Result;
@@ -45,6 +47,12 @@ public class Periodic {
         return pools.getJobList().entrySet().stream().map( (e) -> e.getKey().update(e.getValue()));
     }
 
+    @Procedure
+    @Description("apoc.periodic.progress() - list the running apoc.periodic.iterate jobs with their throughput, batch counts and batch latencies")
+    public Stream<IterateProgress> progress() {
+        return pools.getIterateJobs().values().stream().map(IterateJob::progress);
+    }
+
     @Procedure(mode = Mode.WRITE)
     @Description("apoc.periodic.commit(statement,params) - runs the given statement in separate transactions until it returns 0")
     public Stream<RundownResult> commit(@Name("statement") String statement, @Name(value = "params", defaultValue = "{}") Map<String,Object> parameters) throws ExecutionException, InterruptedException {
@@ -250,7 +258,7 @@ public class Periodic {
             log.info("starting batched operation using iteration `%s` in separate thread", cypherIterate);
             try (Result result = tx.execute(cypherIterate)) {
                 Stream<BatchAndTotalResult> oneResult =
-                    iterateAndExecuteBatchedInSeparateThread((int) batchSize, false, false,0, result, (tx, params) -> tx.execute(cypherAction, params), 50, -1);
+                    iterateAndExecuteBatchedInSeparateThread(cypherIterate, cypherAction, AdaptiveBatchSize.fixed(batchSize), false, false, RetryPolicy.none(), result, (tx, params) -> tx.execute(cypherAction, params), 50, -1, -1);
                 final Object loopParam = value;
                 allResults = Stream.concat(allResults, oneResult.map(r -> r.inLoop(loopParam)));
             }
@@ -281,7 +289,7 @@ public class Periodic {
      * @param cypherAction
      */
     @Procedure(mode = Mode.WRITE)
-    @Description("apoc.periodic.iterate('statement returning items', 'statement per item', {batchSize:1000,iterateList:true,parallel:false,params:{},concurrency:50,retries:0}) YIELD batches, total - run the second statement for each item returned by the first statement. Returns number of batches and total processed rows")
+    @Description("apoc.periodic.iterate('statement returning items', 'statement per item', {batchSize:1000,iterateList:true,parallel:false,params:{},concurrency:50,retries:0,retryDelay:100,requeue:false,serialFallback:true,maxInFlightRows:-1,adaptive:false}) YIELD batches, total - run the second statement for each item returned by the first statement. Returns number of batches and total processed rows")
     public Stream<BatchAndTotalResult> iterate(
             @Name("cypherIterate") String cypherIterate,
             @Name("cypherAction") String cypherAction,
@@ -294,16 +302,16 @@ public class Periodic {
 
         BatchMode batchMode = BatchMode.fromConfig(config);
 
-        long retries = Util.toLong(config.getOrDefault("retries", 0)); // todo sleep/delay or push to end of batch to try again or immediate ?
         Map<String,Object> params = (Map<String, Object>) config.getOrDefault("params", Collections.emptyMap());
         int failedParams = Util.toInteger(config.getOrDefault("failedParams", -1));
+        long maxInFlightRows = Util.toLong(config.getOrDefault("maxInFlightRows", -1));
         try (Result result = tx.execute(slottedRuntime(cypherIterate),params)) {
             Pair<String,Boolean> prepared = PeriodicUtils.prepareInnerStatement(cypherAction, batchMode, result.columns(), "_batch");
             String innerStatement = prepared.first();
             boolean iterateList = prepared.other();
             log.info("starting batching from `%s` operation using iteration `%s` in separate thread", cypherIterate,cypherAction);
-            return iterateAndExecuteBatchedInSeparateThread((int)batchSize, parallel, iterateList, retries, result,
-                    (tx, p) -> Iterators.count(tx.execute(innerStatement, merge(params, p))), concurrency, failedParams);
+            return iterateAndExecuteBatchedInSeparateThread(cypherIterate, cypherAction, AdaptiveBatchSize.fromConfig(config, batchSize), parallel, iterateList, RetryPolicy.fromConfig(config, parallel), result,
+                    (tx, p) -> Iterators.count(tx.execute(innerStatement, merge(params, p))), concurrency, failedParams, maxInFlightRows);
         }
     }
 
@@ -331,76 +339,236 @@ public class Periodic {
 
         log.info("starting batched operation using iteration `%s` in separate thread", cypherIterate);
         try (Result result = tx.execute(cypherIterate)) {
-            return iterateAndExecuteBatchedInSeparateThread((int)batchSize, false, false, 0, result, (tx, p) -> tx.execute(cypherAction, p), 50, -1);
+            return iterateAndExecuteBatchedInSeparateThread(cypherIterate, cypherAction, AdaptiveBatchSize.fixed(batchSize), false, false, RetryPolicy.none(), result, (tx, p) -> tx.execute(cypherAction, p), 50, -1, -1);
         }
     }
 
-    private Stream<BatchAndTotalResult> iterateAndExecuteBatchedInSeparateThread(int batchsize,
+    private Stream<BatchAndTotalResult> iterateAndExecuteBatchedInSeparateThread(String cypherIterate,
+                                                                                 String cypherAction,
+                                                                                 AdaptiveBatchSize batchSizes,
                                                                                  boolean parallel,
                                                                                  boolean iterateList,
-                                                                                 long retries,
+                                                                                 RetryPolicy retryPolicy,
                                                                                  Iterator<Map<String, Object>> iterator,
                                                                                  BiConsumer<Transaction, Map<String, Object>> consumer,
                                                                                  int concurrency,
-                                                                                 int failedParams) {
+                                                                                 int failedParams,
+                                                                                 long maxInFlightRows) {
 
         ExecutorService pool = parallel ? pools.getDefaultExecutorService() : pools.getSingleExecutorService();
-        List<Future<Long>> futures = new ArrayList<>(concurrency);
-        BatchAndTotalCollector collector = new BatchAndTotalCollector(terminationGuard, failedParams);
-        do {
-            if (Util.transactionIsTerminated(terminationGuard)) break;
-            if (log.isDebugEnabled()) log.debug("execute in batch no %d batch size ", batchsize);
-            List<Map<String,Object>> batch = Util.take(iterator, batchsize);
-            final long currentBatchSize = batch.size();
-            ExecuteBatch executeBatch =
-                    iterateList ?
-                            new ListExecuteBatch(terminationGuard, collector, batch, consumer) :
-                            new OneByOneExecuteBatch(terminationGuard, collector, batch, consumer);
-
-            futures.add(Util.inTxFuture(log,
-                                        pool,
-                                        db,
-                                        executeBatch,
-                                        retries,
-                                        retryCount -> collector.incrementRetried(),
-                                        onComplete -> {
-                                            collector.incrementBatches();
-                                            executeBatch.release();
-                                        }));
-            /*  TODO: not sure if the block below is required
-            if (futures.size() > concurrency) {
-                while (futures.stream().noneMatch(Future::isDone)) { // none done yet, block for a bit
-                    LockSupport.parkNanos(1000);
+        // at most `concurrency` batches (one when not parallel) are submitted but not yet finished, the producer
+        // blocks until one of them completes, so only a bounded number of batches is ever materialized
+        int maxInFlightBatches = parallel ? concurrency : 1;
+        InFlightBatches inFlight = new InFlightBatches(maxInFlightBatches,
+                maxInFlightRows > 0 ? maxInFlightRows : maxInFlightBatches * batchSizes.getMax());
+        BatchAndTotalCollector collector = new BatchAndTotalCollector(terminationGuard, failedParams, batchSizes, inFlight);
+        BatchExecution execution = new BatchExecution(pool, inFlight, collector, retryPolicy, maxInFlightBatches);
+        pools.getIterateJobs().put(collector.getId(), new IterateJob(cypherIterate, cypherAction, collector));
+        try {
+            do {
+                if (Util.transactionIsTerminated(terminationGuard)) break;
+                if (!execution.submitRequeued(false)) break;
+                int batchsize = batchSizes.next();
+                if (log.isDebugEnabled()) log.debug("execute in batch no %d batch size ", batchsize);
+                List<Map<String,Object>> batch = Util.take(iterator, batchsize);
+                final long currentBatchSize = batch.size();
+                if (!acquire(inFlight, currentBatchSize)) break;
+                ExecuteBatch executeBatch =
+                        iterateList ?
+                                new ListExecuteBatch(terminationGuard, collector, batch, consumer) :
+                                new OneByOneExecuteBatch(terminationGuard, collector, batch, consumer);
+                execution.submit(executeBatch);
+                execution.collectDone();
+                collector.incrementCount(currentBatchSize);
+            } while (iterator.hasNext());
+
+            execution.finish();
+        } finally {
+            pools.getIterateJobs().remove(collector.getId());
+        }
+
+        Util.logErrors("Error during iterate.commit:", collector.getBatchErrors(), log);
+        Util.logErrors("Error during iterate.execute:", collector.getOperationErrors(), log);
+        return Stream.of(collector.getResult());
+    }
+
+    private boolean acquire(InFlightBatches inFlight, long size) {
+        try {
+            return inFlight.acquire(size, () -> Util.transactionIsTerminated(terminationGuard));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Runs the batches of one iteration according to its {@link RetryPolicy}. Failed attempts either wait and retry
+     * on the worker, or, for transient errors with {@code requeue:true}, go back to the producer which resubmits
+     * them once their delay has passed. Batches that exhausted their retries on a transient error are run one
+     * at a time on the single thread executor after all other batches are done.
+     */
+    private class BatchExecution {
+        private static final long WAIT_MILLIS = 100;
+
+        private final ExecutorService pool;
+        private final InFlightBatches inFlight;
+        private final BatchAndTotalCollector collector;
+        private final RetryPolicy retryPolicy;
+        private final List<Future<Long>> futures;
+        private final DelayQueue<ExecuteBatch> requeued = new DelayQueue<>();
+        private final Queue<ExecuteBatch> serial = new ConcurrentLinkedQueue<>();
+
+        BatchExecution(ExecutorService pool, InFlightBatches inFlight, BatchAndTotalCollector collector, RetryPolicy retryPolicy, int maxInFlightBatches) {
+            this.pool = pool;
+            this.inFlight = inFlight;
+            this.collector = collector;
+            this.retryPolicy = retryPolicy;
+            this.futures = new ArrayList<>(maxInFlightBatches + 1);
+        }
+
+        /**
+         * Has to be called after the batch was admitted by {@link InFlightBatches#acquire(long, java.util.function.BooleanSupplier)}.
+         */
+        void submit(ExecuteBatch executeBatch) {
+            futures.add(pool.submit(() -> execute(executeBatch)));
+        }
+
+        /**
+         * Resubmits the requeued batches whose delay has passed, with {@code wait} it waits a little for the next one.
+         * @return false if the iteration was terminated or interrupted
+         */
+        boolean submitRequeued(boolean wait) {
+            try {
+                ExecuteBatch executeBatch;
+                while ((executeBatch = wait ? requeued.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS) : requeued.poll()) != null) {
+                    if (!acquire(inFlight, executeBatch.size)) {
+                        requeued.add(executeBatch);
+                        return false;
+                    }
+                    submit(executeBatch);
+                    if (wait) break;
                 }
-                Iterator<Future<Long>> it = futures.iterator();
-                while (it.hasNext()) {
-                    Future<Long> future = it.next();
-                    if (future.isDone()) {
-                        collector.incrementSuccesses(Util.getFuture(future, collector.getBatchErrors(), collector.getFailedBatches(), 0L));
-                        it.remove();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return !Util.transactionIsTerminated(terminationGuard);
+        }
+
+        void collectDone() {
+            collectDoneFutures(futures, collector);
+        }
+
+        void finish() {
+            // a worker requeues its batch before its future completes, so once all futures are done
+            // and the queue is empty there is nothing left to run
+            while (!(futures.stream().allMatch(Future::isDone) && requeued.isEmpty())) {
+                collectDone();
+                if (!submitRequeued(true)) break;
+            }
+            awaitAll();
+            while (!Util.transactionIsTerminated(terminationGuard) && !serial.isEmpty()) {
+                ExecuteBatch executeBatch = serial.poll();
+                log.info("running batch of %d rows serially after %d retries", executeBatch.size, executeBatch.retry);
+                executeBatch.serial = true;
+                if (!acquire(inFlight, executeBatch.size)) {
+                    serial.add(executeBatch);
+                    break;
+                }
+                collector.incrementSerialBatches();
+                futures.add(pools.getSingleExecutorService().submit(() -> execute(executeBatch)));
+            }
+            awaitAll();
+            // batches that were handed back but never ran again
+            int abandoned = requeued.size() + serial.size();
+            collector.getFailedBatches().addAndGet(abandoned);
+            for (int i = 0; i < abandoned; i++) collector.incrementBatches();
+        }
+
+        private void awaitAll() {
+            boolean wasTerminated = Util.transactionIsTerminated(terminationGuard) || Thread.currentThread().isInterrupted();
+            ToLongFunction<Future<Long>> toLongFunction = wasTerminated ?
+                    f -> Util.getFutureOrCancel(f, collector.getBatchErrors(), collector.getFailedBatches(), 0L) :
+                    f -> Util.getFuture(f, collector.getBatchErrors(), collector.getFailedBatches(), 0L);
+            collector.incrementSuccesses(futures.stream().mapToLong(toLongFunction).sum());
+            futures.clear();
+        }
+
+        private Long execute(ExecuteBatch executeBatch) throws Exception {
+            long start = System.nanoTime();
+            while (true) {
+                try (Transaction txInThread = db.beginTx()) {
+                    Long result = executeBatch.apply(txInThread);
+                    txInThread.commit();
+                    completed(executeBatch, start, false);
+                    return result;
+                } catch (Exception e) {
+                    boolean lockConflict = RetryPolicy.isTransient(e);
+                    if (Util.transactionIsTerminated(terminationGuard)) {
+                        completed(executeBatch, start, true);
+                        throw e;
                     }
+                    if (executeBatch.retry < retryPolicy.retries) {
+                        executeBatch.retry++;
+                        collector.incrementRetried();
+                        long delay = retryPolicy.delay(executeBatch.retry);
+                        log.warn("Retrying operation %d of %d", executeBatch.retry, retryPolicy.retries);
+                        if (lockConflict && retryPolicy.requeue && !executeBatch.serial) {
+                            executeBatch.retryAfter(delay);
+                            inFlight.release(executeBatch.size);
+                            requeued.add(executeBatch);
+                            return 0L;
+                        }
+                        try {
+                            Thread.sleep(delay);
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                            completed(executeBatch, start, true);
+                            throw e;
+                        }
+                        continue;
+                    }
+                    if (lockConflict && retryPolicy.serialFallback && !executeBatch.serial) {
+                        inFlight.release(executeBatch.size);
+                        serial.add(executeBatch);
+                        return 0L;
+                    }
+                    completed(executeBatch, start, true);
+                    throw e;
                 }
-            }*/
-            collector.incrementCount(currentBatchSize);
-        } while (iterator.hasNext());
+            }
+        }
 
-        boolean wasTerminated = Util.transactionIsTerminated(terminationGuard);
-        ToLongFunction<Future<Long>> toLongFunction = wasTerminated ?
-                f -> Util.getFutureOrCancel(f, collector.getBatchErrors(), collector.getFailedBatches(), 0L) :
-                f -> Util.getFuture(f, collector.getBatchErrors(), collector.getFailedBatches(), 0L);
-        collector.incrementSuccesses(futures.stream().mapToLong(toLongFunction).sum());
+        private void completed(ExecuteBatch executeBatch, long start, boolean failed) {
+            collector.batchCompleted(executeBatch.size, System.nanoTime() - start, failed, executeBatch.retry);
+            collector.incrementBatches();
+            inFlight.release(executeBatch.size);
+            executeBatch.release();
+        }
+    }
 
-        Util.logErrors("Error during iterate.commit:", collector.getBatchErrors(), log);
-        Util.logErrors("Error during iterate.execute:", collector.getOperationErrors(), log);
-        return Stream.of(collector.getResult());
+    private static void collectDoneFutures(List<Future<Long>> futures, BatchAndTotalCollector collector) {
+        Iterator<Future<Long>> it = futures.iterator();
+        while (it.hasNext()) {
+            Future<Long> future = it.next();
+            if (future.isDone()) {
+                collector.incrementSuccesses(Util.getFuture(future, collector.getBatchErrors(), collector.getFailedBatches(), 0L));
+                it.remove();
+            }
+        }
     }
 
-    private static abstract class ExecuteBatch implements Function<Transaction, Long> {
+    private static abstract class ExecuteBatch implements Function<Transaction, Long>, Delayed {
 
         protected TerminationGuard terminationGuard;
         protected BatchAndTotalCollector collector;
         protected List<Map<String,Object>> batch;
         protected BiConsumer<Transaction, Map<String, Object>> consumer;
+        final long size;
+        // only touched by the worker currently running the batch, handed over via the queues
+        volatile long retry;
+        volatile boolean serial;
+        private volatile long retryAt;
 
         ExecuteBatch(TerminationGuard terminationGuard,
                      BatchAndTotalCollector collector,
@@ -410,6 +578,21 @@ public class Periodic {
             this.collector = collector;
             this.batch = batch;
             this.consumer = consumer;
+            this.size = batch.size();
+        }
+
+        void retryAfter(long millis) {
+            retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(retryAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
         }
 
         public void release() {
@@ -432,7 +615,7 @@ public class Periodic {
         @Override
         public final Long apply(Transaction txInThread) {
             if (Util.transactionIsTerminated(terminationGuard)) return 0L;
-            Map<String, Object> params = Util.map("_count", collector.getCount(), "_batch", batch);
+            Map<String, Object> params = Util.map("_count", collector.getCount(), "_batch", batch, "_retry", retry);
             return executeAndReportErrors(txInThread, consumer, params, batch, batch.size(), null, collector);
         }
     }
@@ -455,7 +638,7 @@ public class Periodic {
                         if (localCount.get() % 1000 == 0 && Util.transactionIsTerminated(terminationGuard)) {
                             return 0;
                         }
-                        Map<String, Object> params = merge(p, Util.map("_count", localCount.get(), "_batch", batch));
+                        Map<String, Object> params = merge(p, Util.map("_count", localCount.get(), "_batch", batch, "_retry", retry));
                         return executeAndReportErrors(txInThread, consumer, params, batch, 1, localCount, collector);
                     }).sum();
         }
@@ -485,20 +668,56 @@ public class Periodic {
         private AtomicLong count = new AtomicLong();
         private AtomicLong failedOps = new AtomicLong();
         private AtomicLong retried = new AtomicLong();
+        private AtomicLong serialBatches = new AtomicLong();
         private Map<String, Long> operationErrors = new ConcurrentHashMap<>();
         private AtomicInteger failedBatches = new AtomicInteger();
         private Map<String, Long> batchErrors = new HashMap<>();
         private Map<String, List<Map<String, Object>>> failedParamsMap = new ConcurrentHashMap<>();
         private final boolean wasTerminated;
+        private final AdaptiveBatchSize batchSizes;
+        private final InFlightBatches inFlight;
+        private final String id = UUID.randomUUID().toString();
+        private final long startMillis = System.currentTimeMillis();
+        private final AtomicLong committedBatches = new AtomicLong();
+        private final AtomicLong abortedBatches = new AtomicLong();
+        private final AtomicLong committedRows = new AtomicLong();
+        private final Histogram latencies = new ConcurrentHistogram(3);
 
         public BatchAndTotalCollector(TerminationGuard terminationGuard, int failedParams) {
+            this(terminationGuard, failedParams, null, null);
+        }
+
+        BatchAndTotalCollector(TerminationGuard terminationGuard, int failedParams, AdaptiveBatchSize batchSizes, InFlightBatches inFlight) {
             this.failedParams = failedParams;
+            this.batchSizes = batchSizes;
+            this.inFlight = inFlight;
             wasTerminated = Util.transactionIsTerminated(terminationGuard);
         }
 
+        public String getId() {
+            return id;
+        }
+
         public BatchAndTotalResult getResult() {
             long timeTaken = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
-            return new BatchAndTotalResult(batches.get(), count.get(), timeTaken, successes, failedOps.get(), failedBatches.get(), retried.get(), operationErrors, batchErrors, wasTerminated, failedParamsMap);
+            Map<String, Object> sizes = batchSizes == null ? Collections.emptyMap() : batchSizes.toMap();
+            return new BatchAndTotalResult(batches.get(), count.get(), timeTaken, successes, failedOps.get(), failedBatches.get(), retried.get(), serialBatches.get(), operationErrors, batchErrors, wasTerminated, failedParamsMap, sizes);
+        }
+
+        /**
+         * Called by the worker for every finished batch, with the time it took including retries and commit.
+         */
+        public void batchCompleted(long size, long nanos, boolean failed, long retries) {
+            latencies.recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos)));
+            if (failed) {
+                abortedBatches.incrementAndGet();
+            } else {
+                committedBatches.incrementAndGet();
+                committedRows.addAndGet(size);
+            }
+            if (batchSizes != null) {
+                batchSizes.completed(size, nanos, failed, retries);
+            }
         }
 
         public long getBatches() {
@@ -553,6 +772,80 @@ public class Periodic {
         public void incrementRetried() {
             retried.incrementAndGet();
         }
+
+        public void incrementSerialBatches() {
+            serialBatches.incrementAndGet();
+        }
+
+        /**
+         * Live view while the iteration is running, latencies in milliseconds.
+         */
+        public IterateProgress progress(String cypherIterate, String cypherAction) {
+            Histogram snapshot = latencies.copy();
+            Map<String, Object> latency = Util.map(
+                    "min", snapshot.getMinValue() / 1000d,
+                    "mean", snapshot.getMean() / 1000d,
+                    "p50", snapshot.getValueAtPercentile(50) / 1000d,
+                    "p90", snapshot.getValueAtPercentile(90) / 1000d,
+                    "p99", snapshot.getValueAtPercentile(99) / 1000d,
+                    "max", snapshot.getMaxValue() / 1000d);
+            return new IterateProgress(id, cypherIterate, cypherAction, System.currentTimeMillis() - startMillis, count.get(),
+                    committedRows.get(), batches.get(), committedBatches.get(), abortedBatches.get(),
+                    inFlight == null ? 0 : inFlight.getBatches(), retried.get(), latency);
+        }
+    }
+
+    /**
+     * A running apoc.periodic.iterate, registered in {@link Pools#getIterateJobs()} for its lifetime.
+     */
+    public static class IterateJob {
+        private final String cypherIterate;
+        private final String cypherAction;
+        private final BatchAndTotalCollector collector;
+
+        IterateJob(String cypherIterate, String cypherAction, BatchAndTotalCollector collector) {
+            this.cypherIterate = cypherIterate;
+            this.cypherAction = cypherAction;
+            this.collector = collector;
+        }
+
+        public IterateProgress progress() {
+            return collector.progress(cypherIterate, cypherAction);
+        }
+    }
+
+    public static class IterateProgress {
+        public final String id;
+        public final String cypherIterate;
+        public final String cypherAction;
+        public final long runningTime;
+        public final long total;
+        public final long committedOperations;
+        public final double rowsPerSecond;
+        public final long batches;
+        public final long committedBatches;
+        public final long failedBatches;
+        public final long inFlightBatches;
+        public final long retries;
+        public final Map<String, Object> batchLatency;
+
+        public IterateProgress(String id, String cypherIterate, String cypherAction, long runningTime, long total,
+                               long committedOperations, long batches, long committedBatches, long failedBatches,
+                               long inFlightBatches, long retries, Map<String, Object> batchLatency) {
+            this.id = id;
+            this.cypherIterate = cypherIterate;
+            this.cypherAction = cypherAction;
+            this.runningTime = runningTime;
+            this.total = total;
+            this.committedOperations = committedOperations;
+            this.rowsPerSecond = runningTime == 0 ? 0 : committedOperations * 1000d / runningTime;
+            this.batches = batches;
+            this.committedBatches = committedBatches;
+            this.failedBatches = failedBatches;
+            this.inFlightBatches = inFlightBatches;
+            this.retries = retries;
+            this.batchLatency = batchLatency;
+        }
     }
 
     public static class BatchAndTotalResult {
@@ -568,10 +861,12 @@ public class Periodic {
         public final Map<String,Object> operations;
         public final boolean wasTerminated;
         public final Map<String, List<Map<String,Object>>> failedParams;
+        public final Map<String,Object> batchSizes;
 
         public BatchAndTotalResult(long batches, long total, long timeTaken, long committedOperations,
-                                   long failedOperations, long failedBatches, long retries,
-                                   Map<String, Long> operationErrors, Map<String, Long> batchErrors, boolean wasTerminated, Map<String, List<Map<String, Object>>> failedParams) {
+                                   long failedOperations, long failedBatches, long retries, long serialBatches,
+                                   Map<String, Long> operationErrors, Map<String, Long> batchErrors, boolean wasTerminated, Map<String, List<Map<String, Object>>> failedParams,
+                                   Map<String, Object> batchSizes) {
             this.batches = batches;
             this.total = total;
             this.timeTaken = timeTaken;
@@ -582,7 +877,8 @@ public class Periodic {
             this.errorMessages = operationErrors;
             this.wasTerminated = wasTerminated;
             this.failedParams = failedParams;
-            this.batch = Util.map("total",batches,"failed",failedBatches,"committed",batches-failedBatches,"errors",batchErrors);
+            this.batchSizes = batchSizes;
+            this.batch = Util.map("total",batches,"failed",failedBatches,"committed",batches-failedBatches,"serial",serialBatches,"errors",batchErrors);
             this.operations = Util.map("total",total,"failed",failedOperations,"committed", committedOperations,"errors",operationErrors);
         }
 
@@ -0,0 +1,81 @@
+package apoc.periodic;
+
+import apoc.util.Util;
+import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.graphdb.TransientFailureException;
+import org.neo4j.kernel.api.exceptions.Status;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How {@code apoc.periodic.iterate} retries failed batches. A batch is retried up to {@code retries} times, waiting
+ * {@code retryDelay} ms doubled per attempt (at most {@code maxRetryDelay} ms) with random jitter, so batches that
+ * collided on the same locks don't collide again right away. Batches failing on a lock conflict or another transient
+ * error can instead be put back at the tail of the work ({@code requeue:true}), and when running in parallel
+ * the ones that still fail after all retries are run once more serially at the end ({@code serialFallback:true}).
+ */
+class RetryPolicy {
+
+    static final long DEFAULT_RETRY_DELAY = 100;
+    static final long DEFAULT_MAX_RETRY_DELAY = 10_000;
+    private static final String TRANSIENT_ERROR = "Neo.TransientError.";
+
+    final long retries;
+    final long retryDelay;
+    final long maxRetryDelay;
+    final boolean requeue;
+    final boolean serialFallback;
+
+    private RetryPolicy(long retries, long retryDelay, long maxRetryDelay, boolean requeue, boolean serialFallback) {
+        this.retries = Math.max(0, retries);
+        this.retryDelay = Math.max(0, retryDelay);
+        this.maxRetryDelay = Math.max(this.retryDelay, maxRetryDelay);
+        this.requeue = requeue;
+        this.serialFallback = serialFallback;
+    }
+
+    static RetryPolicy none() {
+        return new RetryPolicy(0, DEFAULT_RETRY_DELAY, DEFAULT_MAX_RETRY_DELAY, false, false);
+    }
+
+    static RetryPolicy fromConfig(Map<String, Object> config, boolean parallel) {
+        long retries = Util.toLong(config.getOrDefault("retries", 0));
+        long retryDelay = Util.toLong(config.getOrDefault("retryDelay", DEFAULT_RETRY_DELAY));
+        long maxRetryDelay = Util.toLong(config.getOrDefault("maxRetryDelay", Math.max(DEFAULT_MAX_RETRY_DELAY, retryDelay)));
+        boolean requeue = Util.toBoolean(config.getOrDefault("requeue", false));
+        // a serial run only helps when the failures came from concurrent batches
+        boolean serialFallback = parallel && retries > 0 && Util.toBoolean(config.getOrDefault("serialFallback", true));
+        return new RetryPolicy(retries, retryDelay, maxRetryDelay, requeue, serialFallback);
+    }
+
+    /**
+     * @param retry the number of the upcoming retry, starting with 1
+     * @return the time to wait in ms, between half and all of the exponential delay
+     */
+    long delay(long retry) {
+        if (retryDelay == 0) return 0;
+        long delay = retryDelay << Math.min(retry - 1, 30);
+        delay = delay <= 0 ? maxRetryDelay : Math.min(maxRetryDelay, delay);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    /**
+     * @return true for deadlocks, lock timeouts and other errors that may not happen again when the batch is retried
+     */
+    static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof TransientFailureException) return true;
+            if (t instanceof QueryExecutionException) {
+                String code = ((QueryExecutionException) t).getStatusCode();
+                if (code != null && code.startsWith(TRANSIENT_ERROR)) return true;
+            }
+            if (t instanceof Status.HasStatus
+                    && ((Status.HasStatus) t).status().code().classification() == Status.Classification.TransientError) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
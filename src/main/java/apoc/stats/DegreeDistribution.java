@@ -2,16 +2,22 @@ package apoc.stats;
 
 import apoc.Pools;
 import apoc.path.RelationshipTypeAndDirections;
+import apoc.util.Util;
 import apoc.util.kernel.MultiThreadedGlobalGraphOperations;
-import org.HdrHistogram.AtomicHistogram;
+import org.HdrHistogram.Histogram;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.internal.helpers.collection.Pair;
 import org.neo4j.internal.kernel.api.CursorFactory;
 import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.NodeLabelIndexCursor;
 import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.RelationshipGroupCursor;
+import org.neo4j.internal.kernel.api.RelationshipTraversalCursor;
 import org.neo4j.internal.kernel.api.TokenRead;
 import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Name;
@@ -19,8 +25,13 @@ import org.neo4j.procedure.Procedure;
 import org.neo4j.token.api.NamedToken;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 import static org.neo4j.internal.kernel.api.TokenRead.ANY_LABEL;
@@ -33,18 +44,13 @@ import static org.neo4j.internal.kernel.api.TokenRead.ANY_RELATIONSHIP_TYPE;
 public class DegreeDistribution {
 
     private static final int BATCHSIZE = 10_000;
+    private static final int MAX_PENDING_BATCHES = 25;
 
     public static class DegreeStats {
         public final String typeName;
         public final long total;
         private final int type;
         private final Direction direction;
-        private transient AtomicHistogram histogram;
-
-        public void computeDegree(NodeCursor nodeCursor, CursorFactory cursors) {
-            int degree = DegreeUtil.degree(nodeCursor, cursors, type, direction);
-            record(degree);
-        }
 
         public static class Result {
             public String type;
@@ -59,12 +65,16 @@ public class DegreeDistribution {
             this.type = type;
             this.direction = direction;
             this.total = total;
-            this.histogram = new AtomicHistogram(total,3);
         }
-        public void record(long value) {
-            histogram.recordValue(value);
+
+        Histogram newHistogram() {
+            // a histogram needs a range of at least 2, the degrees of a label filtered scan aren't bound by the total
+            Histogram histogram = new Histogram(Math.max(2, total), 3);
+            histogram.setAutoResize(true);
+            return histogram;
         }
-        public Result done() {
+
+        public Result done(Histogram histogram) {
             Result result = new Result();
             result.type = typeName;
             result.direction = direction.name();
@@ -78,12 +88,77 @@ public class DegreeDistribution {
             result.p95 = histogram.getValueAtPercentile(95);
             result.p99 = histogram.getValueAtPercentile(99);
             result.p999 = histogram.getValueAtPercentile(99.9);
-            this.histogram.reset();
-            this.histogram = null;
             return result;
         }
     }
 
+    /**
+     * The histograms of one worker, one per {@link DegreeStats}, so the workers never share a counter.
+     * The degrees of all stats are taken in a single pass over the node, from the counts of its relationship groups
+     * if it is dense and from its relationship chain otherwise.
+     */
+    private static class Recorder {
+        private final List<DegreeStats> stats;
+        private final Histogram[] histograms;
+        private final long[] degrees;
+
+        Recorder(List<DegreeStats> stats) {
+            this.stats = stats;
+            this.histograms = new Histogram[stats.size()];
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = stats.get(i).newHistogram();
+            }
+            this.degrees = new long[stats.size()];
+        }
+
+        void record(NodeCursor node, Read read, CursorFactory cursors) {
+            Arrays.fill(degrees, 0);
+            if (node.isDense()) {
+                try (RelationshipGroupCursor group = cursors.allocateRelationshipGroupCursor()) {
+                    read.relationshipGroups(node.nodeReference(), node.relationshipGroupReference(), group);
+                    while (group.next()) {
+                        count(group.type(), group.outgoingCount(), group.incomingCount(), group.loopCount());
+                    }
+                }
+            } else {
+                try (RelationshipTraversalCursor rel = cursors.allocateRelationshipTraversalCursor()) {
+                    node.allRelationships(rel);
+                    long nodeId = node.nodeReference();
+                    while (rel.next()) {
+                        boolean outgoing = rel.sourceNodeReference() == nodeId;
+                        boolean incoming = rel.targetNodeReference() == nodeId;
+                        if (outgoing && incoming) count(rel.type(), 0, 0, 1);
+                        else if (outgoing) count(rel.type(), 1, 0, 0);
+                        else count(rel.type(), 0, 1, 0);
+                    }
+                }
+            }
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i].recordValue(degrees[i]);
+            }
+        }
+
+        Recorder merge(Recorder other) {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i].add(other.histograms[i]);
+            }
+            return this;
+        }
+
+        // a loop is an outgoing and an incoming relationship of the node, but only counted once for both directions
+        private void count(int type, long outgoing, long incoming, long loops) {
+            for (int i = 0; i < degrees.length; i++) {
+                DegreeStats s = stats.get(i);
+                if (s.type != ANY_RELATIONSHIP_TYPE && s.type != type) continue;
+                switch (s.direction) {
+                    case OUTGOING: degrees[i] += outgoing + loops; break;
+                    case INCOMING: degrees[i] += incoming + loops; break;
+                    default: degrees[i] += outgoing + incoming + loops;
+                }
+            }
+        }
+    }
+
     @Context
     public GraphDatabaseAPI db;
 
@@ -94,13 +169,77 @@ public class DegreeDistribution {
     public Pools pools;
 
     @Procedure
-    public Stream<DegreeStats.Result> degrees(@Name(value = "types", defaultValue = "") String types) {
+    public Stream<DegreeStats.Result> degrees(@Name(value = "types", defaultValue = "") String types,
+                                              @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
         List<DegreeStats> stats = prepareStats(types);
+        String label = config == null ? null : (String) config.get("label");
+
+        // each worker records into its own histograms, they are merged once all nodes are done
+        ExecutorService pool = pools.getDefaultExecutorService();
+        Recorder recorder = label == null
+                ? MultiThreadedGlobalGraphOperations.reduceNodes(db, pool, BATCHSIZE, () -> new Recorder(stats),
+                        (r, ktx, nodeCursor) -> r.record(nodeCursor, ktx.dataRead(), ktx.cursors()), Recorder::merge)
+                : forLabelNodes(label, pool, stats);
+
+        List<DegreeStats.Result> results = new ArrayList<>(stats.size());
+        for (int i = 0; i < stats.size(); i++) {
+            results.add(stats.get(i).done(recorder.histograms[i]));
+        }
+        return results.stream();
+    }
 
-        MultiThreadedGlobalGraphOperations.forAllNodes(db, pools.getDefaultExecutorService(), BATCHSIZE,
-                (ktx,nodeCursor)-> stats.forEach((s) -> s.computeDegree(nodeCursor, ktx.cursors()))
-        );
-        return stats.stream().map(DegreeStats::done);
+    private Recorder forLabelNodes(String label, ExecutorService pool, List<DegreeStats> stats) {
+        Recorder recorder = new Recorder(stats);
+        int labelId = tx.tokenRead().nodeLabel(label);
+        if (labelId == TokenRead.NO_TOKEN) return recorder;
+        List<Future<Recorder>> futures = new ArrayList<>();
+        try (NodeLabelIndexCursor nodes = tx.cursors().allocateNodeLabelIndexCursor()) {
+            tx.dataRead().nodeLabelScan(labelId, nodes);
+            LongArrayList batch = new LongArrayList(BATCHSIZE);
+            boolean hasNext;
+            do {
+                hasNext = nodes.next();
+                if (hasNext) batch.add(nodes.nodeReference());
+                if (batch.size() == BATCHSIZE || (!hasNext && !batch.isEmpty())) {
+                    long[] ids = batch.toArray();
+                    batch.clear();
+                    futures.add(Util.inTxFuture(pool, db, txInThread -> {
+                        KernelTransaction ktx = ((InternalTransaction) txInThread).kernelTransaction();
+                        Read read = ktx.dataRead();
+                        Recorder batchRecorder = new Recorder(stats);
+                        try (NodeCursor node = ktx.cursors().allocateNodeCursor()) {
+                            for (long id : ids) {
+                                read.singleNode(id, node);
+                                if (node.next()) batchRecorder.record(node, read, ktx.cursors());
+                            }
+                        }
+                        return batchRecorder;
+                    }));
+                    if (futures.size() > MAX_PENDING_BATCHES) mergeFinished(futures, recorder, false);
+                }
+            } while (hasNext);
+        }
+        mergeFinished(futures, recorder, true);
+        return recorder;
+    }
+
+    // each batch records into histograms of its own, they are merged as the batches finish, with wait until all did
+    private static void mergeFinished(List<Future<Recorder>> futures, Recorder into, boolean wait) {
+        for (Iterator<Future<Recorder>> it = futures.iterator(); it.hasNext(); ) {
+            Future<Recorder> future = it.next();
+            if (!wait && !future.isDone()) continue;
+            try {
+                into.merge(future.get());
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while computing degrees", e);
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+            }
+            it.remove();
+        }
     }
 
     public List<DegreeStats> prepareStats(String types) {
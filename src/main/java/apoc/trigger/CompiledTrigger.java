@@ -0,0 +1,85 @@
+package apoc.trigger;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A trigger prepared once when the triggers are (re)loaded: its phase, the transaction data parameters its statement
+ * refers to, and the labels, relationship types and property keys of its selector. A commit that doesn't touch
+ * any of the selected labels, types or keys doesn't run the trigger.
+ */
+class CompiledTrigger {
+
+    // $name, $`name`, and the deprecated {name}
+    private static final Pattern PARAMETER = Pattern.compile("\\$\\s*(?:`([^`]+)`|(\\w+))|\\{\\s*(\\w+)\\s*}");
+
+    final String name;
+    final String statement;
+    final Map<String, Object> params;
+    final boolean paused;
+    final String phase;
+    // transaction data parameters used by the statement, null if they can't be told from the statement
+    final Set<String> parameters;
+    final Set<String> labels;
+    final Set<String> relTypes;
+    final Set<String> propertyKeys;
+
+    CompiledTrigger(String name, String statement, Map<String, Object> selector, Map<String, Object> params, boolean paused) {
+        this.name = name;
+        this.statement = statement;
+        this.params = params == null ? Collections.emptyMap() : params;
+        this.paused = paused;
+        this.phase = selector == null ? "before" : String.valueOf(selector.getOrDefault("phase", "before"));
+        this.parameters = parameters(statement);
+        this.labels = names(selector, "labels");
+        this.relTypes = names(selector, "relTypes");
+        this.propertyKeys = names(selector, "propertyKeys");
+    }
+
+    boolean runsIn(String phase) {
+        return !paused && this.phase.equals(phase);
+    }
+
+    boolean isSelective() {
+        return labels != null || relTypes != null || propertyKeys != null;
+    }
+
+    /**
+     * @return true if the trigger has to run for these changes
+     */
+    boolean matches(TriggerParams changes) {
+        return (labels == null || changes.touchesLabels(labels))
+                && (relTypes == null || changes.touchesRelTypes(relTypes))
+                && (propertyKeys == null || changes.touchesPropertyKeys(propertyKeys));
+    }
+
+    boolean uses(String parameter) {
+        return parameters == null || parameters.contains(parameter);
+    }
+
+    static Set<String> parameters(String statement) {
+        if (statement == null) return null;
+        Set<String> names = new HashSet<>();
+        Matcher matcher = PARAMETER.matcher(statement);
+        while (matcher.find()) {
+            names.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2) != null ? matcher.group(2) : matcher.group(3));
+        }
+        return names;
+    }
+
+    private static Set<String> names(Map<String, Object> selector, String key) {
+        Object value = selector == null ? null : selector.get(key);
+        if (value == null) return null;
+        if (value instanceof Collection) {
+            Set<String> names = new HashSet<>();
+            for (Object name : (Collection<?>) value) names.add(String.valueOf(name));
+            return names;
+        }
+        return Collections.singleton(value.toString());
+    }
+}
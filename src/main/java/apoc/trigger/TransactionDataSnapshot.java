@@ -0,0 +1,234 @@
+package apoc.trigger;
+
+import apoc.result.VirtualNode;
+import apoc.result.VirtualRelationship;
+import org.eclipse.collections.api.iterator.LongIterator;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.neo4j.graphdb.Entity;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+import static apoc.util.Util.map;
+
+/**
+ * Changes of one or more committed transactions for the {@code async} trigger phase, kept as ids and values so they
+ * don't hold on to the committed transaction. The entities are looked up again in the transaction running the
+ * triggers, the ones that don't exist anymore by then are left out. Deleted entities are passed on as virtual
+ * entities, with the labels, type and properties that were removed with them.
+ */
+class TransactionDataSnapshot {
+
+    private static class PropertyChange {
+        final long id;
+        final String key;
+        final Object old;
+        final Object value;
+
+        PropertyChange(long id, String key, Object old, Object value) {
+            this.id = id;
+            this.key = key;
+            this.old = old;
+            this.value = value;
+        }
+    }
+
+    private static class DeletedRelationship {
+        final long id;
+        final long start;
+        final long end;
+        final String type;
+
+        DeletedRelationship(Relationship relationship) {
+            this.id = relationship.getId();
+            this.start = relationship.getStartNodeId();
+            this.end = relationship.getEndNodeId();
+            this.type = relationship.getType().name();
+        }
+    }
+
+    private long transactionId;
+    private long commitTime;
+    private int transactions;
+    private final LongArrayList createdNodes = new LongArrayList();
+    private final LongArrayList createdRelationships = new LongArrayList();
+    private final LongArrayList deletedNodes = new LongArrayList();
+    private final List<DeletedRelationship> deletedRelationships = new ArrayList<>();
+    private final Map<String, LongArrayList> assignedLabels = new HashMap<>();
+    private final Map<String, LongArrayList> removedLabels = new HashMap<>();
+    private final List<PropertyChange> assignedNodeProperties = new ArrayList<>();
+    private final List<PropertyChange> removedNodeProperties = new ArrayList<>();
+    private final List<PropertyChange> assignedRelationshipProperties = new ArrayList<>();
+    private final List<PropertyChange> removedRelationshipProperties = new ArrayList<>();
+
+    static TransactionDataSnapshot of(TransactionData txData) {
+        TransactionDataSnapshot snapshot = new TransactionDataSnapshot();
+        snapshot.transactionId = txData.getTransactionId();
+        snapshot.commitTime = txData.getCommitTime();
+        snapshot.transactions = 1;
+        txData.createdNodes().forEach(n -> snapshot.createdNodes.add(n.getId()));
+        txData.createdRelationships().forEach(r -> snapshot.createdRelationships.add(r.getId()));
+        txData.deletedNodes().forEach(n -> snapshot.deletedNodes.add(n.getId()));
+        txData.deletedRelationships().forEach(r -> snapshot.deletedRelationships.add(new DeletedRelationship(r)));
+        addLabels(snapshot.assignedLabels, txData.assignedLabels());
+        addLabels(snapshot.removedLabels, txData.removedLabels());
+        addProperties(snapshot.assignedNodeProperties, txData.assignedNodeProperties(), false);
+        addProperties(snapshot.removedNodeProperties, txData.removedNodeProperties(), true);
+        addProperties(snapshot.assignedRelationshipProperties, txData.assignedRelationshipProperties(), false);
+        addProperties(snapshot.removedRelationshipProperties, txData.removedRelationshipProperties(), true);
+        return snapshot;
+    }
+
+    private static void addLabels(Map<String, LongArrayList> labels, Iterable<LabelEntry> entries) {
+        for (LabelEntry entry : entries) {
+            labels.computeIfAbsent(entry.label().name(), k -> new LongArrayList()).add(entry.node().getId());
+        }
+    }
+
+    private static <T extends Entity> void addProperties(List<PropertyChange> changes, Iterable<PropertyEntry<T>> entries, boolean removed) {
+        for (PropertyEntry<T> entry : entries) {
+            changes.add(new PropertyChange(entry.entity().getId(), entry.key(), entry.previouslyCommittedValue(), removed ? null : entry.value()));
+        }
+    }
+
+    /**
+     * Appends the changes of a later transaction.
+     */
+    void merge(TransactionDataSnapshot other) {
+        transactionId = other.transactionId;
+        commitTime = other.commitTime;
+        transactions += other.transactions;
+        createdNodes.addAll(other.createdNodes);
+        createdRelationships.addAll(other.createdRelationships);
+        deletedNodes.addAll(other.deletedNodes);
+        deletedRelationships.addAll(other.deletedRelationships);
+        other.assignedLabels.forEach((label, ids) -> assignedLabels.computeIfAbsent(label, k -> new LongArrayList()).addAll(ids));
+        other.removedLabels.forEach((label, ids) -> removedLabels.computeIfAbsent(label, k -> new LongArrayList()).addAll(ids));
+        assignedNodeProperties.addAll(other.assignedNodeProperties);
+        removedNodeProperties.addAll(other.removedNodeProperties);
+        assignedRelationshipProperties.addAll(other.assignedRelationshipProperties);
+        removedRelationshipProperties.addAll(other.removedRelationshipProperties);
+    }
+
+    int getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * @return the trigger parameters, in the same shape as the ones of the other phases
+     */
+    Map<String, Object> toParams(Transaction tx) {
+        LongFunction<Node> node = id -> find(() -> tx.getNodeById(id));
+        LongFunction<Relationship> relationship = id -> find(() -> tx.getRelationshipById(id));
+        return map("transactionId", transactionId,
+                "commitTime", commitTime,
+                "transactions", transactions,
+                "createdNodes", entities(createdNodes, node),
+                "createdRelationships", entities(createdRelationships, relationship),
+                "deletedNodes", deletedNodes(),
+                "deletedRelationships", deletedRelationships(node),
+                "removedLabels", labels(removedLabels, node),
+                "removedNodeProperties", properties(removedNodeProperties, node, "node", true),
+                "removedRelationshipProperties", properties(removedRelationshipProperties, relationship, "relationship", true),
+                "assignedLabels", labels(assignedLabels, node),
+                "assignedNodeProperties", properties(assignedNodeProperties, node, "node", false),
+                "assignedRelationshipProperties", properties(assignedRelationshipProperties, relationship, "relationship", false));
+    }
+
+    private List<Node> deletedNodes() {
+        List<Node> result = new ArrayList<>(deletedNodes.size());
+        LongObjectHashMap<VirtualNode> nodes = new LongObjectHashMap<>(deletedNodes.size());
+        LongIterator it = deletedNodes.longIterator();
+        while (it.hasNext()) {
+            VirtualNode deleted = new VirtualNode(it.next());
+            nodes.put(deleted.getId(), deleted);
+            result.add(deleted);
+        }
+        removedLabels.forEach((label, ids) -> {
+            LongIterator labelled = ids.longIterator();
+            while (labelled.hasNext()) {
+                VirtualNode deleted = nodes.get(labelled.next());
+                if (deleted != null) deleted.addLabel(Label.label(label));
+            }
+        });
+        for (PropertyChange change : removedNodeProperties) {
+            VirtualNode deleted = nodes.get(change.id);
+            if (deleted != null) deleted.setProperty(change.key, change.old);
+        }
+        return result;
+    }
+
+    // the start and end nodes are the existing ones, or virtual ones with just their id if they were deleted too
+    private List<Relationship> deletedRelationships(LongFunction<Node> lookup) {
+        Map<Long, Map<String, Object>> properties = new HashMap<>();
+        for (PropertyChange change : removedRelationshipProperties) {
+            properties.computeIfAbsent(change.id, k -> new HashMap<>()).put(change.key, change.old);
+        }
+        List<Relationship> result = new ArrayList<>(deletedRelationships.size());
+        for (DeletedRelationship deleted : deletedRelationships) {
+            result.add(new VirtualRelationship(deleted.id, node(deleted.start, lookup), node(deleted.end, lookup),
+                    RelationshipType.withName(deleted.type), properties.getOrDefault(deleted.id, Collections.emptyMap())));
+        }
+        return result;
+    }
+
+    private static Node node(long id, LongFunction<Node> lookup) {
+        Node node = lookup.apply(id);
+        return node == null ? new VirtualNode(id) : node;
+    }
+
+    private static <T> T find(Supplier<T> lookup) {
+        try {
+            return lookup.get();
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    private static <T> List<T> entities(LongArrayList ids, LongFunction<T> lookup) {
+        List<T> result = new ArrayList<>(ids.size());
+        LongIterator it = ids.longIterator();
+        while (it.hasNext()) {
+            T entity = lookup.apply(it.next());
+            if (entity != null) result.add(entity);
+        }
+        return result;
+    }
+
+    private static Map<String, List<Node>> labels(Map<String, LongArrayList> labels, LongFunction<Node> lookup) {
+        Map<String, List<Node>> result = new HashMap<>();
+        labels.forEach((label, ids) -> {
+            List<Node> nodes = entities(ids, lookup);
+            if (!nodes.isEmpty()) result.put(label, nodes);
+        });
+        return result;
+    }
+
+    private static <T extends Entity> Map<String, List<Map<String, Object>>> properties(List<PropertyChange> changes, LongFunction<T> lookup,
+                                                                                         String entityType, boolean removed) {
+        Map<String, List<Map<String, Object>>> result = new HashMap<>();
+        for (PropertyChange change : changes) {
+            T entity = lookup.apply(change.id);
+            if (entity == null) continue;
+            Map<String, Object> map = map("key", change.key, entityType, entity, "old", change.old);
+            if (!removed) map.put("new", change.value);
+            result.computeIfAbsent(change.key, k -> new ArrayList<>()).add(map);
+        }
+        return result;
+    }
+}
@@ -1,18 +1,16 @@
 package apoc.trigger;
 
 import apoc.ApocConfig;
+import apoc.Pools;
 import apoc.SystemLabels;
 import apoc.SystemPropertyKeys;
 import apoc.util.Util;
 import org.neo4j.dbms.api.DatabaseManagementService;
 import org.neo4j.function.ThrowingFunction;
-import org.neo4j.graphdb.Entity;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
-import org.neo4j.graphdb.event.LabelEntry;
-import org.neo4j.graphdb.event.PropertyEntry;
 import org.neo4j.graphdb.event.TransactionData;
 import org.neo4j.graphdb.event.TransactionEventListener;
 import org.neo4j.internal.helpers.collection.Iterators;
@@ -26,20 +24,28 @@ import org.neo4j.procedure.impl.GlobalProceduresRegistry;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
+import static apoc.ApocConfig.APOC_TRIGGER_ASYNC_BATCH_SIZE;
+import static apoc.ApocConfig.APOC_TRIGGER_ASYNC_FLUSH_INTERVAL;
+import static apoc.ApocConfig.APOC_TRIGGER_ASYNC_QUEUE_SIZE;
 import static apoc.ApocConfig.APOC_TRIGGER_ENABLED;
-import static apoc.util.Util.map;
 
 public class TriggerHandler extends LifecycleAdapter implements TransactionEventListener<Void> {
 
     private final ConcurrentHashMap<String, Map<String,Object>> activeTriggers = new ConcurrentHashMap();
+    // the active triggers prepared for dispatch, replaced whenever they change
+    private volatile List<CompiledTrigger> compiledTriggers = Collections.emptyList();
     private final Log log;
     private final GraphDatabaseService db;
     private final DatabaseManagementService databaseManagementService;
@@ -47,13 +53,30 @@ public class TriggerHandler extends LifecycleAdapter implements TransactionEvent
 
     private final AtomicBoolean registeredWithKernel = new AtomicBoolean(false);
 
+    public static final int DEFAULT_ASYNC_BATCH_SIZE = 100;
+    public static final int DEFAULT_ASYNC_FLUSH_INTERVAL = 100;
+    public static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+    // the async triggers run user statements, so they run on the APOC threads rather than on the ones of the kernel
+    private final Pools pools;
+    // changes of committed transactions waiting for the triggers of the `async` phase
+    private BlockingQueue<TransactionDataSnapshot> asyncQueue;
+    private int asyncBatchSize;
+    private final ReentrantLock asyncLock = new ReentrantLock();
+    private final AtomicBoolean asyncFlushScheduled = new AtomicBoolean(false);
+    private long asyncFlushInterval;
+    // only scheduled while there are triggers in the async phase
+    private ScheduledFuture<?> asyncFlushJob;
+    private volatile boolean stopped;
+
     public static final String NOT_ENABLED_ERROR = "Triggers have not been enabled." +
             " Set 'apoc.trigger.enabled=true' in your apoc.conf file located in the $NEO4J_HOME/conf/ directory.";
     private final ThrowingFunction<Context, Transaction, ProcedureException> transactionComponentFunction;
 
     public TriggerHandler(GraphDatabaseService db, DatabaseManagementService databaseManagementService,
-                          ApocConfig apocConfig, Log log, GlobalProceduresRegistry globalProceduresRegistry) {
+                          ApocConfig apocConfig, Log log, GlobalProceduresRegistry globalProceduresRegistry,
+                          Pools pools) {
         this.db = db;
+        this.pools = pools;
         this.databaseManagementService = databaseManagementService;
         this.apocConfig = apocConfig;
         this.log = log;
@@ -87,8 +110,32 @@ public class TriggerHandler extends LifecycleAdapter implements TransactionEvent
             );
             tx.commit();
         }
+        compiledTriggers = activeTriggers.entrySet().stream()
+                .map(e -> new CompiledTrigger(e.getKey(), (String) e.getValue().get("statement"),
+                        (Map<String, Object>) e.getValue().get("selector"), (Map<String, Object>) e.getValue().get("params"),
+                        (boolean) e.getValue().get("paused")))
+                .collect(Collectors.toList());
 
         reconcileKernelRegistration();
+        reconcileAsyncFlush();
+    }
+
+    /**
+     * Flushes the changes for the async triggers every `apoc.trigger.async.flush_interval` ms while there are any.
+     * The changes still queued are run on stop, and dropped when the last async trigger is removed.
+     */
+    private synchronized void reconcileAsyncFlush() {
+        if (hasTriggers("async") && !stopped) {
+            if (asyncFlushJob == null) {
+                asyncFlushJob = pools.getScheduledExecutorService().scheduleWithFixedDelay(this::flushAsyncQuietly,
+                        asyncFlushInterval, asyncFlushInterval, TimeUnit.MILLISECONDS);
+            }
+        } else if (asyncFlushJob != null) {
+            asyncFlushJob.cancel(false);
+            asyncFlushJob = null;
+            if (stopped) flushAsyncQuietly();
+            else asyncQueue.clear();
+        }
     }
 
     /**
@@ -184,104 +231,117 @@ public class TriggerHandler extends LifecycleAdapter implements TransactionEvent
 
     @Override
     public Void beforeCommit(TransactionData txData, Transaction transaction, GraphDatabaseService databaseService) {
-        executeTriggers(transaction, txData, "before");
+        if (hasTriggers("before")) {
+            executeTriggers(transaction, txData, "before");
+        }
         return null;
     }
 
     @Override
     public void afterCommit(TransactionData txData, Void state, GraphDatabaseService databaseService) {
-        try (Transaction tx = db.beginTx()) {
-            executeTriggers(tx, txData, "after");
-            tx.commit();
+        if (hasTriggers("after")) {
+            try (Transaction tx = db.beginTx()) {
+                executeTriggers(tx, txData, "after");
+                tx.commit();
+            }
+        }
+        // changes made by the async triggers themselves are not fed back to them
+        if (hasTriggers("async") && !asyncLock.isHeldByCurrentThread()) {
+            enqueue(TransactionDataSnapshot.of(txData));
         }
     }
 
     @Override
     public void afterRollback(TransactionData txData, Void state, GraphDatabaseService databaseService) {
+        if (!hasTriggers("rollback")) return;
         try (Transaction tx = db.beginTx()) {
             executeTriggers(tx, txData, "rollback");
             tx.commit();
         }
     }
 
-    static <T extends Entity> Map<String,List<Map<String,Object>>> aggregatePropertyKeys(Iterable<PropertyEntry<T>> entries, boolean nodes, boolean removed) {
-        if (!entries.iterator().hasNext()) return Collections.emptyMap();
-        Map<String,List<Map<String,Object>>> result = new HashMap<>();
-        String entityType = nodes ? "node" : "relationship";
-        for (PropertyEntry<T> entry : entries) {
-            result.compute(entry.key(),
-                    (k, v) -> {
-                        if (v == null) v = new ArrayList<>(100);
-                        Map<String, Object> map = map("key", k, entityType, entry.entity(), "old", entry.previouslyCommittedValue());
-                        if (!removed) map.put("new", entry.value());
-                        v.add(map);
-                        return v;
-                    });
+    private boolean hasTriggers(String phase) {
+        for (CompiledTrigger trigger : compiledTriggers) {
+            if (trigger.runsIn(phase)) return true;
         }
-        return result;
+        return false;
     }
 
-    private Map<String, List<Node>> aggregateLabels(Iterable<LabelEntry> labelEntries) {
-        if (!labelEntries.iterator().hasNext()) return Collections.emptyMap();
-        Map<String,List<Node>> result = new HashMap<>();
-        for (LabelEntry entry : labelEntries) {
-            result.compute(entry.label().name(),
-                    (k, v) -> {
-                        if (v == null) v = new ArrayList<>(100);
-                        v.add(entry.node());
-                        return v;
-                    });
+    private void enqueue(TransactionDataSnapshot changes) {
+        while (!asyncQueue.offer(changes)) {
+            // the background flush can't keep up, the committing thread runs the triggers instead of dropping changes
+            flushAsync();
+        }
+        if (asyncQueue.size() >= asyncBatchSize && asyncFlushScheduled.compareAndSet(false, true)) {
+            pools.getScheduledExecutorService().execute(this::flushAsyncQuietly);
         }
-        return result;
     }
 
-    private Map<String, Object> txDataParams(TransactionData txData, String phase) {
-        return map("transactionId", phase.equals("after") ? txData.getTransactionId() : -1,
-                "commitTime", phase.equals("after") ? txData.getCommitTime() : -1,
-                "createdNodes", txData.createdNodes(),
-                "createdRelationships", txData.createdRelationships(),
-                "deletedNodes", txData.deletedNodes(),
-                "deletedRelationships", txData.deletedRelationships(),
-                "removedLabels", aggregateLabels(txData.removedLabels()),
-                "removedNodeProperties", aggregatePropertyKeys(txData.removedNodeProperties(),true,true),
-                "removedRelationshipProperties", aggregatePropertyKeys(txData.removedRelationshipProperties(),false,true),
-                "assignedLabels", aggregateLabels(txData.assignedLabels()),
-                "assignedNodeProperties",aggregatePropertyKeys(txData.assignedNodeProperties(),true,false),
-                "assignedRelationshipProperties",aggregatePropertyKeys(txData.assignedRelationshipProperties(),false,false));
+    /**
+     * Runs the triggers of the `async` phase once for the changes of up to `apoc.trigger.async.batch_size`
+     * transactions, until the queue is empty.
+     */
+    void flushAsync() {
+        asyncFlushScheduled.set(false);
+        asyncLock.lock();
+        try {
+            List<TransactionDataSnapshot> batch = new ArrayList<>(asyncBatchSize);
+            while (asyncQueue.drainTo(batch, asyncBatchSize) > 0) {
+                TransactionDataSnapshot changes = batch.get(0);
+                for (int i = 1; i < batch.size(); i++) {
+                    changes.merge(batch.get(i));
+                }
+                batch.clear();
+                try (Transaction tx = db.beginTx()) {
+                    executeTriggers(tx, TriggerParams.of(changes.toParams(tx), tx), "async");
+                    tx.commit();
+                } catch (Exception e) {
+                    log.error("Error executing async triggers for " + changes.getTransactions() + " transactions", e);
+                }
+            }
+        } finally {
+            asyncLock.unlock();
+        }
+    }
+
+    private void flushAsyncQuietly() {
+        try {
+            flushAsync();
+        } catch (Exception e) {
+            log.warn("Error executing async triggers", e);
+        }
     }
 
     private void executeTriggers(Transaction tx, TransactionData txData, String phase) {
+        executeTriggers(tx, TriggerParams.of(txData, tx, phase), phase);
+    }
+
+    private void executeTriggers(Transaction tx, TriggerParams changes, String phase) {
         Map<String,String> exceptions = new LinkedHashMap<>();
-        Map<String, Object> params = txDataParams(txData, phase);
-        activeTriggers.forEach((name, data) -> {
-            if (data.get("params") != null) {
-                params.putAll((Map<String, Object>) data.get("params"));
-            }
-            Map<String, Object> selector = (Map<String, Object>) data.get("selector");
-            if ((!(boolean)data.get("paused")) && when(selector, phase)) {
-                try {
-                    params.put("trigger", name);
-                    Result result = tx.execute((String) data.get("statement"), params);
-                    Iterators.count(result);
-//                    result.close();
-                } catch (Exception e) {
-                    log.warn("Error executing trigger " + name + " in phase " + phase, e);
-                    exceptions.put(name, e.getMessage());
-                }
+        for (CompiledTrigger trigger : compiledTriggers) {
+            if (!trigger.runsIn(phase) || (trigger.isSelective() && !trigger.matches(changes))) continue;
+            try {
+                Map<String, Object> params = changes.forTrigger(trigger);
+                params.putAll(trigger.params);
+                params.put("trigger", trigger.name);
+                Result result = tx.execute(trigger.statement, params);
+                Iterators.count(result);
+            } catch (Exception e) {
+                log.warn("Error executing trigger " + trigger.name + " in phase " + phase, e);
+                exceptions.put(trigger.name, e.getMessage());
             }
-        });
+        }
         if (!exceptions.isEmpty()) {
             throw new RuntimeException("Error executing triggers "+exceptions.toString());
         }
     }
 
-    private boolean when(Map<String, Object> selector, String phase) {
-        if (selector == null) return (phase.equals("before"));
-        return selector.getOrDefault("phase", "before").equals(phase);
-    }
-
     @Override
     public void start() throws Exception {
+        asyncBatchSize = Math.max(1, apocConfig.getInt(APOC_TRIGGER_ASYNC_BATCH_SIZE, DEFAULT_ASYNC_BATCH_SIZE));
+        asyncQueue = new ArrayBlockingQueue<>(Math.max(1, apocConfig.getInt(APOC_TRIGGER_ASYNC_QUEUE_SIZE, DEFAULT_ASYNC_QUEUE_SIZE)));
+        asyncFlushInterval = Math.max(1, apocConfig.getInt(APOC_TRIGGER_ASYNC_FLUSH_INTERVAL, DEFAULT_ASYNC_FLUSH_INTERVAL));
+        stopped = false;
         updateCache();
     }
 
@@ -290,6 +350,8 @@ public class TriggerHandler extends LifecycleAdapter implements TransactionEvent
         if(registeredWithKernel.compareAndSet(true, false)) {
             databaseManagementService.unregisterTransactionEventListener(db.databaseName(), this);
         }
+        stopped = true;
+        reconcileAsyncFlush();
     }
 
 }
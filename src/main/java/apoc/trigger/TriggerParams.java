@@ -0,0 +1,260 @@
+package apoc.trigger;
+
+import org.neo4j.graphdb.Entity;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static apoc.util.Util.map;
+
+/**
+ * The trigger parameters of one commit. They are computed on first use and then shared by all triggers of the phase,
+ * so the changes are only aggregated if a trigger statement refers to them. The labels, relationship types and
+ * property keys touched by the commit are collected once for the selectors of the triggers.
+ */
+class TriggerParams {
+
+    static final List<String> NAMES = Arrays.asList("transactionId", "commitTime",
+            "createdNodes", "createdRelationships", "deletedNodes", "deletedRelationships",
+            "removedLabels", "removedNodeProperties", "removedRelationshipProperties",
+            "assignedLabels", "assignedNodeProperties", "assignedRelationshipProperties");
+
+    private final TransactionData txData;
+    private final Transaction tx;
+    private final String phase;
+    private final Map<String, Object> computed;
+
+    private Set<String> touchedLabels;
+    private Set<String> touchedRelTypes;
+    private Set<String> touchedPropertyKeys;
+    // some entity could not be read, so selectors can't rule out the commit
+    private boolean unknownLabels;
+    private boolean unknownRelTypes;
+
+    private TriggerParams(TransactionData txData, Transaction tx, String phase, Map<String, Object> computed) {
+        this.txData = txData;
+        this.tx = tx;
+        this.phase = phase;
+        this.computed = computed;
+    }
+
+    /**
+     * @param tx the transaction the triggers run in, used to read the entities of a committed transaction
+     */
+    static TriggerParams of(TransactionData txData, Transaction tx, String phase) {
+        return new TriggerParams(txData, tx, phase, new HashMap<>());
+    }
+
+    /**
+     * @param params parameters that are already computed, like the ones of the async phase
+     */
+    static TriggerParams of(Map<String, Object> params, Transaction tx) {
+        return new TriggerParams(null, tx, "async", params);
+    }
+
+    Object get(String name) {
+        if (txData == null || computed.containsKey(name)) return computed.get(name);
+        Object value = compute(name);
+        computed.put(name, value);
+        return value;
+    }
+
+    /**
+     * @return a new map with the parameters the trigger's statement refers to
+     */
+    Map<String, Object> forTrigger(CompiledTrigger trigger) {
+        Collection<String> names = txData == null ? computed.keySet() : NAMES;
+        Map<String, Object> params = new HashMap<>();
+        for (String name : names) {
+            if (trigger.uses(name)) params.put(name, get(name));
+        }
+        return params;
+    }
+
+    private Object compute(String name) {
+        boolean committed = phase.equals("after");
+        switch (name) {
+            case "transactionId": return committed ? txData.getTransactionId() : -1;
+            case "commitTime": return committed ? txData.getCommitTime() : -1;
+            case "createdNodes": return txData.createdNodes();
+            case "createdRelationships": return txData.createdRelationships();
+            case "deletedNodes": return txData.deletedNodes();
+            case "deletedRelationships": return txData.deletedRelationships();
+            case "removedLabels": return aggregateLabels(txData.removedLabels());
+            case "removedNodeProperties": return aggregatePropertyKeys(txData.removedNodeProperties(), true, true);
+            case "removedRelationshipProperties": return aggregatePropertyKeys(txData.removedRelationshipProperties(), false, true);
+            case "assignedLabels": return aggregateLabels(txData.assignedLabels());
+            case "assignedNodeProperties": return aggregatePropertyKeys(txData.assignedNodeProperties(), true, false);
+            case "assignedRelationshipProperties": return aggregatePropertyKeys(txData.assignedRelationshipProperties(), false, false);
+            default: return null;
+        }
+    }
+
+    static <T extends Entity> Map<String,List<Map<String,Object>>> aggregatePropertyKeys(Iterable<PropertyEntry<T>> entries, boolean nodes, boolean removed) {
+        if (!entries.iterator().hasNext()) return Collections.emptyMap();
+        Map<String,List<Map<String,Object>>> result = new HashMap<>();
+        String entityType = nodes ? "node" : "relationship";
+        for (PropertyEntry<T> entry : entries) {
+            result.compute(entry.key(),
+                    (k, v) -> {
+                        if (v == null) v = new ArrayList<>(100);
+                        Map<String, Object> map = map("key", k, entityType, entry.entity(), "old", entry.previouslyCommittedValue());
+                        if (!removed) map.put("new", entry.value());
+                        v.add(map);
+                        return v;
+                    });
+        }
+        return result;
+    }
+
+    static Map<String, List<Node>> aggregateLabels(Iterable<LabelEntry> labelEntries) {
+        if (!labelEntries.iterator().hasNext()) return Collections.emptyMap();
+        Map<String,List<Node>> result = new HashMap<>();
+        for (LabelEntry entry : labelEntries) {
+            result.compute(entry.label().name(),
+                    (k, v) -> {
+                        if (v == null) v = new ArrayList<>(100);
+                        v.add(entry.node());
+                        return v;
+                    });
+        }
+        return result;
+    }
+
+    boolean touchesLabels(Set<String> labels) {
+        if (touchedLabels == null) {
+            touchedLabels = new HashSet<>();
+            if (txData != null) {
+                for (LabelEntry entry : txData.assignedLabels()) touchedLabels.add(entry.label().name());
+                for (LabelEntry entry : txData.removedLabels()) touchedLabels.add(entry.label().name());
+                Set<Long> seen = new HashSet<>();
+                for (PropertyEntry<Node> entry : txData.assignedNodeProperties()) addLabels(entry.entity(), seen);
+                for (PropertyEntry<Node> entry : txData.removedNodeProperties()) addLabels(entry.entity(), seen);
+            } else {
+                touchedLabels.addAll(keys("assignedLabels"));
+                touchedLabels.addAll(keys("removedLabels"));
+                Set<Long> seen = new HashSet<>();
+                for (Object entity : propertyEntities("assignedNodeProperties", "node")) addLabels((Node) entity, seen);
+                for (Object entity : propertyEntities("removedNodeProperties", "node")) addLabels((Node) entity, seen);
+            }
+        }
+        return unknownLabels || intersects(touchedLabels, labels);
+    }
+
+    boolean touchesRelTypes(Set<String> relTypes) {
+        if (touchedRelTypes == null) {
+            touchedRelTypes = new HashSet<>();
+            if (txData != null) {
+                txData.createdRelationships().forEach(this::addType);
+                txData.deletedRelationships().forEach(this::addType);
+                for (PropertyEntry<Relationship> entry : txData.assignedRelationshipProperties()) addType(entry.entity());
+                for (PropertyEntry<Relationship> entry : txData.removedRelationshipProperties()) addType(entry.entity());
+            } else {
+                for (Object rel : list("createdRelationships")) addType((Relationship) rel);
+                for (Object rel : list("deletedRelationships")) addType((Relationship) rel);
+                for (Object rel : propertyEntities("assignedRelationshipProperties", "relationship")) addType((Relationship) rel);
+                for (Object rel : propertyEntities("removedRelationshipProperties", "relationship")) addType((Relationship) rel);
+            }
+        }
+        return unknownRelTypes || intersects(touchedRelTypes, relTypes);
+    }
+
+    boolean touchesPropertyKeys(Set<String> propertyKeys) {
+        if (touchedPropertyKeys == null) {
+            touchedPropertyKeys = new HashSet<>();
+            if (txData != null) {
+                txData.assignedNodeProperties().forEach(e -> touchedPropertyKeys.add(e.key()));
+                txData.removedNodeProperties().forEach(e -> touchedPropertyKeys.add(e.key()));
+                txData.assignedRelationshipProperties().forEach(e -> touchedPropertyKeys.add(e.key()));
+                txData.removedRelationshipProperties().forEach(e -> touchedPropertyKeys.add(e.key()));
+            } else {
+                for (String name : Arrays.asList("assignedNodeProperties", "removedNodeProperties",
+                        "assignedRelationshipProperties", "removedRelationshipProperties")) {
+                    touchedPropertyKeys.addAll(keys(name));
+                }
+            }
+        }
+        return intersects(touchedPropertyKeys, propertyKeys);
+    }
+
+    private void addLabels(Node node, Set<Long> seen) {
+        if (!seen.add(node.getId())) return;
+        Node readable = readable(node, id -> tx.getNodeById(id));
+        if (readable == null) return; // deleted, its labels are in removedLabels
+        try {
+            for (Label label : readable.getLabels()) touchedLabels.add(label.name());
+        } catch (RuntimeException e) {
+            unknownLabels = true;
+        }
+    }
+
+    private void addType(Relationship rel) {
+        try {
+            touchedRelTypes.add(rel.getType().name());
+        } catch (RuntimeException e) {
+            Relationship readable = readable(rel, id -> tx.getRelationshipById(id));
+            try {
+                if (readable == null || readable == rel) unknownRelTypes = true;
+                else touchedRelTypes.add(readable.getType().name());
+            } catch (RuntimeException again) {
+                unknownRelTypes = true;
+            }
+        }
+    }
+
+    /**
+     * Entities of a committed transaction can't be read anymore, the ones still existing are read in the trigger transaction.
+     */
+    private <T extends Entity> T readable(T entity, Function<Long, T> lookup) {
+        if (phase.equals("before") || tx == null) return entity;
+        try {
+            return lookup.apply(entity.getId());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Set<String> keys(String name) {
+        Object value = computed.get(name);
+        return value instanceof Map ? ((Map<String, ?>) value).keySet() : Collections.emptySet();
+    }
+
+    private Collection<?> list(String name) {
+        Object value = computed.get(name);
+        return value instanceof Collection ? (Collection<?>) value : Collections.emptyList();
+    }
+
+    private List<Object> propertyEntities(String name, String entityType) {
+        Object value = computed.get(name);
+        if (!(value instanceof Map)) return Collections.emptyList();
+        List<Object> entities = new ArrayList<>();
+        for (Object entries : ((Map<String, ?>) value).values()) {
+            for (Map<String, Object> entry : (List<Map<String, Object>>) entries) {
+                entities.add(entry.get(entityType));
+            }
+        }
+        return entities;
+    }
+
+    private static boolean intersects(Set<String> touched, Set<String> selected) {
+        for (String name : selected) {
+            if (touched.contains(name)) return true;
+        }
+        return false;
+    }
+}
@@ -220,6 +220,10 @@ public class Util {
         }
     }
 
+    public static <T> T retryInTx(GraphDatabaseService db, Function<Transaction, T> function, long maxRetries) {
+        return retryInTx(null, db, function, 0, maxRetries, retry -> {});
+    }
+
     public static <T> Future<T> inTxFuture(Log log,
                                            ExecutorService pool,
                                            GraphDatabaseService db,
@@ -16,15 +16,23 @@ import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
 import java.util.function.Supplier;
 
 public class MultiThreadedGlobalGraphOperations {
 
     public enum GlobalOperationsTypes { NODES, RELATIONSHIPS }
 
+    private static final int WORKERS = Runtime.getRuntime().availableProcessors();
+
     public static BatchJobResult forAllNodes(GraphDatabaseAPI db, ExecutorService executorService, int batchSize, BiConsumer<KernelTransaction, NodeCursor> consumer) {
         return forAll(db, executorService, batchSize, GlobalOperationsTypes.NODES, consumer);
     }
@@ -33,25 +41,117 @@ public class MultiThreadedGlobalGraphOperations {
         return forAll(db, executorService, batchSize, GlobalOperationsTypes.RELATIONSHIPS, consumer);
     }
 
-    private static BatchJobResult forAll(GraphDatabaseAPI db, ExecutorService executorService, int batchSize, GlobalOperationsTypes type, BiConsumer consumer) {
+    /**
+     * Folds the accumulator over all nodes, each worker into its own state created by the supplier, and merges the
+     * states of the workers once they are done. The first exception of the accumulator stops the scan and is
+     * rethrown, as a state that misses entities would be a wrong result.
+     */
+    public static <S> S reduceNodes(GraphDatabaseAPI db, ExecutorService executorService, int batchSize,
+                                    Supplier<S> state, Accumulator<S, NodeCursor> accumulator, BinaryOperator<S> merge) {
+        return reduce(db, executorService, batchSize, GlobalOperationsTypes.NODES, state, accumulator, merge, new BatchJobResult(), true);
+    }
+
+    public static <S> S reduceRelationships(GraphDatabaseAPI db, ExecutorService executorService, int batchSize,
+                                            Supplier<S> state, Accumulator<S, RelationshipScanCursor> accumulator, BinaryOperator<S> merge) {
+        return reduce(db, executorService, batchSize, GlobalOperationsTypes.RELATIONSHIPS, state, accumulator, merge, new BatchJobResult(), true);
+    }
+
+    @FunctionalInterface
+    public interface Accumulator<S, C> {
+        void accept(S state, KernelTransaction ktx, C cursor);
+    }
+
+    private static <C> BatchJobResult forAll(GraphDatabaseAPI db, ExecutorService executorService, int batchSize, GlobalOperationsTypes type, BiConsumer<KernelTransaction, C> consumer) {
+        BatchJobResult result = new BatchJobResult();
+        reduce(db, executorService, batchSize, type, () -> null, (Accumulator<Object, C>) (state, ktx, cursor) -> consumer.accept(ktx, cursor), (a, b) -> null, result, false);
+        return result;
+    }
+
+    private static <S, C> S reduce(GraphDatabaseAPI db, ExecutorService executorService, int batchSize, GlobalOperationsTypes type,
+                                   Supplier<S> state, Accumulator<S, C> accumulator, BinaryOperator<S> merge, BatchJobResult result,
+                                   boolean failFast) {
         try {
             DependencyResolver dependencyResolver = db.getDependencyResolver();
             long maxId = getHighestIdInUseForStore(dependencyResolver, type);
 
-            List<BatchJob> taskList = new ArrayList<>();
-            BatchJobResult result = new BatchJobResult();
+            // one long running job per core, each claiming the ranges of ids it scans from the shared ranges
+            IdRanges ranges = new IdRanges(maxId, batchSize, WORKERS);
+            List<BatchJob<S, C>> taskList = new ArrayList<>(WORKERS);
+            for (int i = 0; i < WORKERS; i++) {
+                taskList.add(new BatchJob<>(type, ranges, db, state.get(), accumulator, result, failFast));
+            }
 
             result.startStopWatch();
-            for (long batchStart = 0; batchStart < maxId; batchStart += batchSize) {
-                taskList.add(new BatchJob(type, batchStart, batchSize, db, consumer, result));
+            List<Future<S>> futures = executorService.invokeAll(taskList);
+            S merged = null;
+            for (int i = 0; i < futures.size(); i++) {
+                S partial = futures.get(i).get();
+                merged = i == 0 ? partial : merge.apply(merged, partial);
             }
-            executorService.invokeAll(taskList);
             result.stopStopWatch();
-            result.setBatches(taskList.size());
-            return result;
+            result.setBatches(ranges.claimed());
+            return merged;
 
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * The ids left to scan, handed out in ranges. A worker grows its range while the ids it finds are sparse, so
+     * ranges emptied by deletes are skipped through quickly, and falls back to the batch size on dense ids. Near the
+     * end the ranges shrink, so the last ones of the workers finish together instead of one of them straggling.
+     */
+    static class IdRanges {
+        // the factor the range of a worker may grow to over the batch size
+        private static final int MAX_GROWTH = 64;
+
+        private final long maxId;
+        private final int batchSize;
+        private final int workers;
+        private final AtomicLong next = new AtomicLong();
+        private final AtomicInteger claimed = new AtomicInteger();
+
+        IdRanges(long maxId, int batchSize, int workers) {
+            this.maxId = maxId;
+            this.batchSize = batchSize;
+            this.workers = workers;
+        }
+
+        /**
+         * @param size the size the worker would like its next range to have
+         * @param range the start and end of the claimed range
+         * @return false if all ids are claimed
+         */
+        boolean claim(long size, long[] range) {
+            while (true) {
+                long start = next.get();
+                if (start >= maxId) return false;
+                long end = Math.min(maxId, start + Math.max(1, Math.min(size, (maxId - start) / workers)));
+                if (next.compareAndSet(start, end)) {
+                    claimed.incrementAndGet();
+                    range[0] = start;
+                    range[1] = end;
+                    return true;
+                }
+            }
+        }
+
+        // the size of the next range, for a range of the given size that had found entities
+        long nextSize(long size, long found) {
+            if (found * 2 < size) return Math.min(size * 2, (long) batchSize * MAX_GROWTH);
+            return batchSize;
+        }
+
+        // no further ranges are handed out, the workers finish the ones they have claimed
+        void stop() {
+            next.set(maxId);
+        }
+
+        int claimed() {
+            return claimed.get();
         }
     }
 
@@ -124,25 +224,29 @@ public class MultiThreadedGlobalGraphOperations {
         }
     }
 
-    private static class BatchJob implements Callable<Void> {
+    private static class BatchJob<S, C> implements Callable<S> {
         private final GlobalOperationsTypes type;
-        private final long batchStart;
-        private final int batchSize;
+        private final IdRanges ranges;
         private final GraphDatabaseAPI db;
-        private final BiConsumer consumer;
+        private final S state;
+        private final Accumulator<S, C> accumulator;
         private final BatchJobResult result;
+        private final boolean failFast;
+        private long succeeded, missing, failures;
 
-        public BatchJob(GlobalOperationsTypes type, long batchStart, int batchSize, GraphDatabaseAPI db, BiConsumer consumer, BatchJobResult result) {
+        public BatchJob(GlobalOperationsTypes type, IdRanges ranges, GraphDatabaseAPI db, S state, Accumulator<S, C> accumulator,
+                        BatchJobResult result, boolean failFast) {
             this.type = type;
-            this.batchStart = batchStart;
-            this.batchSize = batchSize;
+            this.ranges = ranges;
             this.db = db;
-            this.consumer = consumer;
+            this.state = state;
+            this.accumulator = accumulator;
             this.result = result;
+            this.failFast = failFast;
         }
 
         @Override
-        public Void call() {
+        public S call() {
             try (Transaction tx = db.beginTx()) {
                 KernelTransaction ktx = ((InternalTransaction)tx).kernelTransaction();
                 CursorFactory cursors = ktx.cursors();
@@ -150,48 +254,64 @@ public class MultiThreadedGlobalGraphOperations {
 
                 switch (type) {
                     case NODES:
-                        iterateForNodes(ktx, read, cursors, result);
+                        iterateForNodes(ktx, read, cursors);
                         break;
                     case RELATIONSHIPS:
-                        iterateForRelationships(ktx, read, cursors, result);
+                        iterateForRelationships(ktx, read, cursors);
                         break;
                     default:
                         throw new IllegalArgumentException("dunno how to deal with type " + type);
 
                 }
                 tx.commit();
-                return null;
+                return state;
+            } finally {
+                // counted per job, so the workers don't contend on the shared counters for every entity
+                result.succeeded.addAndGet(succeeded);
+                result.missing.addAndGet(missing);
+                result.failures.addAndGet(failures);
             }
         }
 
-        private void iterateForNodes(KernelTransaction ktx, Read read, CursorFactory cursors, BatchJobResult result) {
+        private void iterateForNodes(KernelTransaction ktx, Read read, CursorFactory cursors) {
             try (NodeCursor cursor = cursors.allocateNodeCursor()) {
-                for (long id = batchStart; id < batchStart + batchSize; id++) {
-                    read.singleNode(id, cursor);
-                    processAndReport(ktx, cursor::next, consumer, cursor, result);
-                }
+                iterate(ktx, id -> read.singleNode(id, cursor), cursor::next, (C) cursor);
             }
         }
 
-        private void iterateForRelationships(KernelTransaction ktx, Read read, CursorFactory cursors, BatchJobResult result) {
+        private void iterateForRelationships(KernelTransaction ktx, Read read, CursorFactory cursors) {
             try (RelationshipScanCursor cursor = cursors.allocateRelationshipScanCursor()) {
-                for (long id = batchStart; id < batchStart + batchSize; id++) {
-                    read.singleRelationship(id, cursor);
-                    processAndReport(ktx, cursor::next, consumer, cursor, result);
+                iterate(ktx, id -> read.singleRelationship(id, cursor), cursor::next, (C) cursor);
+            }
+        }
+
+        private void iterate(KernelTransaction ktx, LongConsumer position, BooleanSupplier nextMethod, C cursor) {
+            long size = ranges.batchSize;
+            long[] range = new long[2];
+            while (ranges.claim(size, range)) {
+                long found = succeeded + failures;
+                for (long id = range[0]; id < range[1]; id++) {
+                    position.accept(id);
+                    processAndReport(ktx, nextMethod, cursor);
                 }
+                size = ranges.nextSize(range[1] - range[0], succeeded + failures - found);
             }
         }
 
-        private void processAndReport(KernelTransaction ktx, Supplier<Boolean> nextMethod, BiConsumer consumer, Object parameter, BatchJobResult result) {
-            if (nextMethod.get()) {
+        private void processAndReport(KernelTransaction ktx, BooleanSupplier nextMethod, C parameter) {
+            if (nextMethod.getAsBoolean()) {
                 try {
-                    consumer.accept(ktx, parameter);
-                    result.incrementSuceeded();
+                    accumulator.accept(state, ktx, parameter);
+                    succeeded++;
                 } catch (Exception e) {
-                    result.incrementFailures();
+                    failures++;
+                    if (failFast) {
+                        ranges.stop();
+                        throw e;
+                    }
                 }
             } else {
-                result.incrementMissing();
+                missing++;
             }
         }
 
@@ -7,6 +7,7 @@ import org.junit.Test;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.internal.helpers.collection.Iterables;
 import org.neo4j.internal.helpers.collection.Iterators;
 import org.neo4j.test.rule.DbmsRule;
@@ -159,6 +160,77 @@ public class PathFindingTest {
         );
     }
 
+    @Test
+    public void testDijkstraOnGridMatchesMultiplePathSearch() {
+        db.executeTransactionally("UNWIND range(0, 399) AS id CREATE (:Cell {id:id})");
+        db.executeTransactionally("MATCH (a:Cell), (b:Cell) " +
+                "WHERE (b.id = a.id + 1 AND b.id % 20 <> 0) OR b.id = a.id + 20 " +
+                "CREATE (a)-[:NEXT {d: (a.id * 7 + b.id * 13) % 17 + 1}]->(b)");
+        String query = "MATCH (from:Cell{id:0}), (to:Cell{id:399}) " +
+                "CALL apoc.algo.dijkstra(from, to, 'NEXT>', 'd', 1, $paths) yield path, weight " +
+                "RETURN path, weight LIMIT 1";
+        Map<String, Object> single = db.executeTransactionally(query, map("paths", 1), Iterators::single);
+        Map<String, Object> multiple = db.executeTransactionally(query, map("paths", 2), Iterators::single);
+        assertEquals(multiple.get("weight"), single.get("weight"));
+        assertEquals(38, ((Path) single.get("path")).length());
+    }
+
+    @Test
+    public void testDijkstraWithoutPath() {
+        db.executeTransactionally(SETUP_SIMPLE);
+        testResult(db,
+                "MATCH (from:Loc{name:'A'}), (to:Loc{name:'D'}) " +
+                        "CALL apoc.algo.dijkstra(from, to, '<ROAD', 'd') yield path, weight " +
+                        "RETURN path, weight",
+                result -> assertEquals(false, result.hasNext())
+        );
+    }
+
+    @Test
+    public void testDijkstraMany() {
+        db.executeTransactionally(SETUP_SIMPLE);
+        testResult(db,
+                "MATCH (from:Loc) WHERE from.name IN ['A', 'B'] WITH collect(from) AS sources " +
+                        "MATCH (to:Loc) WHERE to.name IN ['C', 'D'] WITH sources, collect(to) AS targets " +
+                        "CALL apoc.algo.dijkstraMany(sources, targets, 'ROAD>', 'd', {concurrency:2}) yield path, weight " +
+                        "RETURN startNode(path).name + endNode(path).name AS pair, weight ORDER BY pair",
+                result -> {
+                    List<Map<String, Object>> records = Iterators.asList(result);
+                    assertThat(map(records, row -> row.get("pair")), contains("AC", "AD", "BC", "BD"));
+                    assertThat(map(records, row -> row.get("weight")), contains(20.0, 50.0, 20.0, 50.0));
+                }
+        );
+    }
+
+    @Test
+    public void testDijkstraManySeesUncommittedChanges() {
+        try (Transaction tx = db.beginTx()) {
+            tx.execute(SETUP_SIMPLE).close();
+            List<Map<String, Object>> records = Iterators.asList(tx.execute(
+                    "MATCH (from:Loc) WHERE from.name IN ['A', 'B'] WITH collect(from) AS sources " +
+                            "MATCH (to:Loc) WHERE to.name IN ['C', 'D'] WITH sources, collect(to) AS targets " +
+                            "CALL apoc.algo.dijkstraMany(sources, targets, 'ROAD>', 'd', {concurrency:2}) yield path, weight " +
+                            "RETURN startNode(path).name + endNode(path).name AS pair, weight ORDER BY pair"));
+            assertThat(map(records, row -> row.get("pair")), contains("AC", "AD", "BC", "BD"));
+            assertThat(map(records, row -> row.get("weight")), contains(20.0, 50.0, 20.0, 50.0));
+        }
+    }
+
+    @Test
+    public void testDijkstraManyWithVisitBudget() {
+        db.executeTransactionally(SETUP_SIMPLE);
+        testResult(db,
+                "MATCH (from:Loc{name:'A'}), (to:Loc) WHERE to.name IN ['B', 'D'] WITH from, collect(to) AS targets " +
+                        "CALL apoc.algo.dijkstraMany([from], targets, 'ROAD>', 'd', {maxVisits:2}) yield path, weight " +
+                        "RETURN endNode(path).name AS name, weight",
+                result -> {
+                    // A and B are expanded, D is only reached after C
+                    List<Map<String, Object>> records = Iterators.asList(result);
+                    assertThat(map(records, row -> row.get("name")), contains("B"));
+                }
+        );
+    }
+
     @Test
     public void testAllSimplePaths() {
         db.executeTransactionally(SETUP_MISSING_PROPERTY);
@@ -0,0 +1,152 @@
+package apoc.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        BoundedCache cache = new BoundedCache(100, 0);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, i, -1);
+            assertEquals(0, cache.get("key0"));
+        }
+        assertTrue(cache.size() <= 100);
+        assertEquals(999, cache.get("key999"));
+        assertNull(cache.get("key500"));
+        assertEquals(1000L - cache.size(), cache.stats().get("evictions"));
+    }
+
+    @Test
+    public void expiresEntries() throws Exception {
+        BoundedCache cache = new BoundedCache(0, 50);
+        cache.put("default", 1, -1);
+        cache.put("never", 2, 0);
+        Thread.sleep(100);
+        assertNull(cache.get("default"));
+        assertEquals(2, cache.get("never"));
+        assertEquals(1L, cache.stats().get("expirations"));
+    }
+
+    @Test
+    public void computesOnceUnderContention() throws Exception {
+        BoundedCache cache = new BoundedCache(10, 0);
+        AtomicInteger computed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cache.getOrCompute("key", () -> {
+                        computed.incrementAndGet();
+                        try {
+                            Thread.sleep(100);
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        return 42;
+                    }, -1, () -> {});
+                }));
+            }
+            start.countDown();
+            for (Future<Object> future : futures) {
+                assertEquals(42, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, computed.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsOnRecursiveComputation() {
+        BoundedCache cache = new BoundedCache(10, 0);
+        cache.getOrCompute("key", () -> cache.getOrCompute("key", () -> 42, -1, () -> {}), -1, () -> {});
+    }
+
+    @Test
+    public void waitersGetTheErrorOfTheComputation() throws Exception {
+        BoundedCache cache = new BoundedCache(10, 0);
+        CountDownLatch computing = new CountDownLatch(1);
+        CountDownLatch waiting = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Object> owner = executor.submit(() -> cache.getOrCompute("key", () -> {
+                computing.countDown();
+                try {
+                    waiting.await();
+                    // give the waiter time to start waiting for the future
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                throw new StackOverflowError("computation");
+            }, -1, () -> {}));
+            computing.await();
+            waiting.countDown();
+            try {
+                cache.getOrCompute("key", () -> 0, -1, () -> {});
+                fail("the waiter should have got the error of the computation");
+            } catch (StackOverflowError e) {
+                assertEquals("computation", e.getMessage());
+            }
+            try {
+                owner.get();
+                fail("the owner should have failed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof StackOverflowError);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void stopsWaitingWhenTerminated() throws Exception {
+        BoundedCache cache = new BoundedCache(10, 0);
+        CountDownLatch computing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Object> owner = executor.submit(() -> cache.getOrCompute("key", () -> {
+                computing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return 42;
+            }, -1, () -> {}));
+            computing.await();
+            AtomicInteger checks = new AtomicInteger();
+            try {
+                cache.getOrCompute("key", () -> 0, -1, () -> {
+                    if (checks.incrementAndGet() > 2) throw new IllegalStateException("terminated");
+                });
+                fail("waiting should have been terminated");
+            } catch (IllegalStateException e) {
+                assertEquals("terminated", e.getMessage());
+            }
+            release.countDown();
+            assertEquals(42, owner.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -10,6 +10,7 @@ import org.neo4j.test.rule.DbmsRule;
 import org.neo4j.test.rule.ImpermanentDbmsRule;
 
 import java.util.Collections;
+import java.util.Map;
 
 import static apoc.util.MapUtil.map;
 import static org.junit.Assert.assertEquals;
@@ -80,4 +81,28 @@ public class StaticTest {
         TestUtil.testCall(db, "call apoc.static.set('test2',null)", r -> assertEquals(42L,r.get("value")));
         TestUtil.testCall(db, "call apoc.static.get('test2')", r -> assertEquals(null,r.get("value")));
     }
+
+    @Test
+    public void testGetOrCompute() throws Exception {
+        TestUtil.testCall(db, "return apoc.static.getOrCompute('computed', 'RETURN $a + 1 AS value', {a: 41}) as value", r -> assertEquals(42L,r.get("value")));
+        // served from memory, the statement is not run again
+        TestUtil.testCall(db, "return apoc.static.getOrCompute('computed', 'RETURN 0 AS value') as value", r -> assertEquals(42L,r.get("value")));
+        TestUtil.testCall(db, "return apoc.static.get('computed') as value", r -> assertEquals(42L,r.get("value")));
+        TestUtil.testCall(db, "call apoc.static.stats()", r -> {
+            Map<String, Object> stats = (Map<String, Object>) r.get("value");
+            assertEquals(1L, stats.get("size"));
+            assertEquals(2L, stats.get("hits"));
+            assertEquals(1L, stats.get("misses"));
+        });
+    }
+
+    @Test
+    public void testTtl() throws Exception {
+        TestUtil.testCall(db, "call apoc.static.set('expiring',42,100)", r -> assertEquals(null,r.get("value")));
+        TestUtil.testCall(db, "return apoc.static.get('expiring') as value", r -> assertEquals(42L,r.get("value")));
+        Thread.sleep(200);
+        TestUtil.testCall(db, "return apoc.static.get('expiring') as value", r -> assertEquals(null,r.get("value")));
+        TestUtil.testCall(db, "return apoc.static.getOrCompute('expiring', 'RETURN 43', {}, 0) as value", r -> assertEquals(43L,r.get("value")));
+        TestUtil.testCall(db, "call apoc.static.stats()", r -> assertEquals(1L, ((Map<String, Object>) r.get("value")).get("expirations")));
+    }
 }
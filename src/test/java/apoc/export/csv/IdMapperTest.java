@@ -0,0 +1,77 @@
+package apoc.export.csv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IdMapperTest {
+
+    private static final int IDS = 100_000;
+
+    @Test
+    public void testNumericIdsOnHeap() {
+        assertMapping(CsvLoaderConfig.builder().stringIds(false).build(), false);
+    }
+
+    @Test
+    public void testNumericIdsOnDisk() {
+        assertMapping(CsvLoaderConfig.builder().stringIds(false).spillIdMapping(true).build(), false);
+    }
+
+    @Test
+    public void testStringIdsOffHeap() {
+        assertMapping(CsvLoaderConfig.builder().stringIds(true).build(), true);
+    }
+
+    @Test
+    public void testStringIdsOnDisk() {
+        assertMapping(CsvLoaderConfig.builder().stringIds(true).spillIdMapping(true).build(), true);
+    }
+
+    @Test
+    public void testSelection() {
+        try (IdMapper numeric = IdMapper.create(CsvLoaderConfig.builder().stringIds(false).build());
+             IdMapper strings = IdMapper.create(CsvLoaderConfig.builder().stringIds(true).build())) {
+            assertTrue(numeric instanceof LongIdMapper);
+            assertTrue(strings instanceof OffHeapIdMapper.StringKeys);
+        }
+    }
+
+    @Test
+    public void testPagesAreMappedBeyondTheDirectLimit() {
+        try (ByteBufferPages pages = new ByteBufferPages(12, 2 * 4096)) {
+            pages.ensure(2 * 4096);
+            assertFalse(pages.isMapped());
+            pages.ensure(8 * 4096);
+            assertTrue(pages.isMapped());
+            for (long address = 0; address < pages.allocated(); address += 8) {
+                pages.putLong(address, address * 3);
+            }
+            for (long address = 0; address < pages.allocated(); address += 8) {
+                assertEquals(address * 3, pages.getLong(address));
+            }
+        }
+    }
+
+    private void assertMapping(CsvLoaderConfig config, boolean stringIds) {
+        try (IdMapper mapper = IdMapper.create(config)) {
+            for (int i = 0; i < IDS; i++) {
+                mapper.put(id(i, stringIds), i * 7L);
+            }
+            // the first mapping wins
+            mapper.put(id(42, stringIds), 1L);
+
+            assertEquals(IDS, mapper.size());
+            for (int i = 0; i < IDS; i++) {
+                assertEquals(i * 7L, mapper.get(id(i, stringIds)));
+            }
+            assertEquals(IdMapper.NOT_FOUND, mapper.get(id(IDS, stringIds)));
+        }
+    }
+
+    private static String id(int i, boolean stringIds) {
+        return stringIds ? "person-" + i + "-ä" : String.valueOf(i);
+    }
+}
@@ -8,7 +8,11 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.neo4j.configuration.GraphDatabaseSettings;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListenerAdapter;
+import org.neo4j.internal.helpers.collection.Iterables;
 import org.neo4j.test.rule.DbmsRule;
 import org.neo4j.test.rule.ImpermanentDbmsRule;
 
@@ -18,6 +22,7 @@ import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -432,4 +437,111 @@ public class ImportCsvTest {
         Assert.assertEquals(1L, id);
     }
 
+    @Test
+    public void testRelationshipWithIdSpacesAndSpilledIdMapping() {
+        TestUtil.testCall(
+                db,
+                "CALL apoc.import.csv([{fileName: $file, labels: ['Person']}], [{fileName: $relFile, type: 'KNOWS'}], $config)",
+                map(
+                        "file", "file:/id-idspaces.csv",
+                        "relFile", "file:/rel-on-ids-idspaces.csv",
+                        "config", map("delimiter", '|', "stringIds", false, "spillIdMapping", true)
+                ),
+                (r) -> {
+                    assertEquals(2L, r.get("nodes"));
+                    assertEquals(1L, r.get("relationships"));
+                }
+        );
+
+        List<String> pairs = TestUtil.firstColumn(db, "MATCH (p1:Person)-[:KNOWS]->(p2:Person) RETURN p1.name + ' ' + p2.name AS pair ORDER BY pair");
+        assertThat(pairs, Matchers.contains("John Jane"));
+    }
+
+    @Test
+    public void testLargeFilesAreCommittedInBatches() throws IOException {
+        final int nodeCount = 10_000;
+        final StringBuilder persons = new StringBuilder(":ID|name:STRING\n");
+        final StringBuilder knows = new StringBuilder(":START_ID|:END_ID|since:INT\n");
+        for (int i = 0; i < nodeCount; i++) {
+            persons.append(i).append("|name").append(i).append('\n');
+            knows.append(i).append('|').append((i + 1) % nodeCount).append('|').append(2000 + i % 20).append('\n');
+            knows.append(i).append('|').append((i + 2) % nodeCount).append('|').append(2000 + i % 20).append('\n');
+        }
+        CsvTestUtil.saveCsvFile("large-persons", persons.toString());
+        CsvTestUtil.saveCsvFile("large-knows", knows.toString());
+
+        // the number of nodes and relationships each committed transaction created
+        final List<Long> createdNodes = new CopyOnWriteArrayList<>();
+        final List<Long> createdRelationships = new CopyOnWriteArrayList<>();
+        final TransactionEventListenerAdapter<Object> listener = new TransactionEventListenerAdapter<Object>() {
+            @Override
+            public void afterCommit(TransactionData data, Object state, GraphDatabaseService databaseService) {
+                long nodes = Iterables.count(data.createdNodes());
+                long relationships = Iterables.count(data.createdRelationships());
+                if (nodes > 0) createdNodes.add(nodes);
+                if (relationships > 0) createdRelationships.add(relationships);
+            }
+        };
+        db.getManagementService().registerTransactionEventListener(db.databaseName(), listener);
+
+        try {
+            TestUtil.testCall(
+                    db,
+                    "CALL apoc.import.csv([{fileName: $nodeFile, labels: ['Person']}], [{fileName: $relFile, type: 'KNOWS'}], $config)",
+                    map(
+                            "nodeFile", "file:/large-persons.csv",
+                            "relFile", "file:/large-knows.csv",
+                            "config", map("delimiter", '|', "stringIds", false, "batchSize", 100)
+                    ),
+                    (r) -> {
+                        assertEquals((long) nodeCount, r.get("nodes"));
+                        assertEquals(2L * nodeCount, r.get("relationships"));
+                    }
+            );
+        } finally {
+            db.getManagementService().unregisterTransactionEventListener(db.databaseName(), listener);
+        }
+
+        // every batch of 100 rows was committed on its own, instead of the whole file in one transaction
+        assertEquals(Collections.nCopies(nodeCount / 100, 100L), createdNodes);
+        assertEquals(Collections.nCopies(2 * nodeCount / 100, 100L), createdRelationships);
+
+        assertEquals((long) nodeCount, TestUtil.<Long>singleResultFirstColumn(db, "MATCH (n:Person) RETURN count(n)"));
+        assertEquals(2L * nodeCount, TestUtil.<Long>singleResultFirstColumn(db, "MATCH (:Person)-[r:KNOWS]->(:Person) RETURN count(r)"));
+        assertEquals("name1", TestUtil.singleResultFirstColumn(db, "MATCH (:Person {id: 0})-[:KNOWS]->(p:Person) RETURN p.name ORDER BY p.name LIMIT 1"));
+    }
+
+    @Test
+    public void testLargeFilesWithParallelRelationships() throws IOException {
+        final int nodeCount = 10_000;
+        final StringBuilder persons = new StringBuilder(":ID|name:STRING\n");
+        final StringBuilder knows = new StringBuilder(":START_ID|:END_ID|since:INT\n");
+        for (int i = 0; i < nodeCount; i++) {
+            persons.append(i).append("|name").append(i).append('\n');
+            knows.append(i).append('|').append((i + 1) % nodeCount).append('|').append(2000 + i % 20).append('\n');
+            knows.append(i).append('|').append((i * 7919) % nodeCount).append('|').append(2000 + i % 20).append('\n');
+        }
+        CsvTestUtil.saveCsvFile("large-persons-parallel", persons.toString());
+        CsvTestUtil.saveCsvFile("large-knows-parallel", knows.toString());
+
+        TestUtil.testCall(
+                db,
+                "CALL apoc.import.csv([{fileName: $nodeFile, labels: ['Person']}], [{fileName: $relFile, type: 'KNOWS'}], $config)",
+                map(
+                        "nodeFile", "file:/large-persons-parallel.csv",
+                        "relFile", "file:/large-knows-parallel.csv",
+                        "config", map("delimiter", '|', "stringIds", false, "batchSize", 100, "parallel", true, "concurrency", 4, "retries", 2)
+                ),
+                (r) -> {
+                    assertEquals((long) nodeCount, r.get("nodes"));
+                    assertEquals(2L * nodeCount, r.get("relationships"));
+                }
+        );
+
+        assertEquals((long) nodeCount, TestUtil.<Long>singleResultFirstColumn(db, "MATCH (n:Person) RETURN count(n)"));
+        assertEquals(2L * nodeCount, TestUtil.<Long>singleResultFirstColumn(db, "MATCH (:Person)-[r:KNOWS]->(:Person) RETURN count(r)"));
+        assertEquals((long) nodeCount, TestUtil.<Long>singleResultFirstColumn(db, "MATCH (a:Person)-[r:KNOWS]->(b:Person) WHERE b.id = (a.id + 1) % $n RETURN count(r)", map("n", nodeCount)));
+        assertEquals(2010L, TestUtil.<Long>singleResultFirstColumn(db, "MATCH (:Person {id: 10})-[r:KNOWS]->(:Person {id: 11}) RETURN r.since"));
+    }
+
 }
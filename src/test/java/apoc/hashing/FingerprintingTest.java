@@ -4,9 +4,11 @@ import apoc.coll.Coll;
 import apoc.graph.Graphs;
 import apoc.util.TestUtil;
 import apoc.util.Util;
+import org.apache.commons.lang.exception.ExceptionUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.neo4j.graphdb.QueryExecutionException;
 import org.neo4j.test.rule.DbmsRule;
 import org.neo4j.test.rule.ImpermanentDbmsRule;
 
@@ -22,6 +24,8 @@ import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.neo4j.internal.helpers.collection.MapUtil.map;
 
 public class FingerprintingTest  {
@@ -83,6 +87,35 @@ public class FingerprintingTest  {
         compareGraph("CREATE (:Person{name:'ABC'})-[:KNOWS{since:12345}]->(:Person{name:'DEF'})", EMPTY_LIST, true);
     }
 
+    @Test
+    public void fingerprintGraphShouldNotDependOnCreationOrder() {
+        db.executeTransactionally("CREATE (a:Person{name:'ABC'}), (b:Person{name:'DEF'}), (c:Town{name:'GHI'}), " +
+                "(a)-[:KNOWS{since:12345}]->(b), (a)-[:LIVES_IN]->(c), (b)-[:LIVES_IN]->(c)");
+        String value = TestUtil.singleResultFirstColumn(db, "return apoc.hashing.fingerprintGraph() as hash");
+
+        db.executeTransactionally("match (n) detach delete n");
+        db.executeTransactionally("CREATE (c:Town{name:'GHI'}), (b:Person{name:'DEF'}), (a:Person{name:'ABC'}), " +
+                "(b)-[:LIVES_IN]->(c), (a)-[:LIVES_IN]->(c), (a)-[:KNOWS{since:12345}]->(b)");
+        assertEquals(value, TestUtil.singleResultFirstColumn(db, "return apoc.hashing.fingerprintGraph() as hash"));
+
+        db.executeTransactionally("match (:Person{name:'ABC'})-[r:KNOWS]->() delete r");
+        db.executeTransactionally("match (a:Person{name:'ABC'}), (b:Person{name:'DEF'}) CREATE (b)-[:KNOWS{since:12345}]->(a)");
+        assertNotEquals(value, TestUtil.singleResultFirstColumn(db, "return apoc.hashing.fingerprintGraph() as hash"));
+    }
+
+    @Test
+    public void fingerprintGraphShouldFailIfAnEntityFailsToHash() {
+        db.executeTransactionally("CREATE (:Person{name:'ABC'})-[:KNOWS]->(:Person{name:'DEF', flags:[true, false]})");
+        try {
+            TestUtil.singleResultFirstColumn(db, "return apoc.hashing.fingerprintGraph() as hash");
+            fail("the node with a boolean array should have failed the fingerprint");
+        } catch (QueryExecutionException e) {
+            Throwable except = ExceptionUtils.getRootCause(e);
+            assertTrue(except instanceof UnsupportedOperationException);
+            assertEquals("cannot yet deal with [Z", except.getMessage());
+        }
+    }
+
     @Test
     public void fingerprintGraphShouldFailUponDifferentProperties() {
         compareGraph("CREATE (:Person{name:'ABC', created:timestamp()})", EMPTY_LIST, false);
@@ -1,5 +1,8 @@
 package apoc.load;
 
+import apoc.load.util.JdbcPools;
+import apoc.load.util.JdbcUtil;
+import apoc.load.util.LoadJdbcConfig;
 import apoc.periodic.Periodic;
 import apoc.util.TestUtil;
 import apoc.util.Util;
@@ -58,6 +61,7 @@ public class JdbcTest extends AbstractJdbcTest {
 
     @After
     public void tearDown() throws SQLException {
+        JdbcPools.closeAll();
         conn.close();
         try {
             if (testName.getMethodName().endsWith(TEST_WITH_AUTHENTICATION)) {
@@ -188,6 +192,56 @@ public class JdbcTest extends AbstractJdbcTest {
                 (row) -> assertEquals(Util.map("count", 1 ), row.get("row")));
     }
 
+    @Test
+    public void testLoadJdbcUpdateBatch() throws Exception {
+        testCall(db, "CALL apoc.load.jdbcUpdate('derby','INSERT INTO PERSON (NAME, SURNAME) VALUES (?, ?)', [['Jane','Doe'],['Jim','Doe'],['Joe','Doe']], {batch:true, batchSize:2})",
+                (row) -> assertEquals(Util.map("count", 3L, "batches", 2), row.get("row")));
+        testCall(db, "CALL apoc.load.jdbc('derby','SELECT COUNT(*) AS C FROM PERSON WHERE SURNAME = ?', ['Doe'])",
+                (row) -> assertEquals(3, ((Map) row.get("row")).get("C")));
+    }
+
+    @Test
+    public void testLoadJdbcKeyReusesPooledConnections() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            testCall(db, "CALL apoc.load.jdbc('derby','PERSON')",
+                    (row) -> assertResult(row));
+            testCall(db, "CALL apoc.load.jdbcUpdate('derby','UPDATE PERSON SET SURNAME = ? WHERE NAME = ?', [null, 'John'])",
+                    (row) -> assertEquals(Util.map("count", 1 ), row.get("row")));
+        }
+        // the calls run one after the other, so they all share the first connection
+        assertEquals(1, JdbcPools.connectionsCreated("derby"));
+    }
+
+    @Test
+    public void testPartitionConcurrencyDefaultsToPoolSize() {
+        apocConfig().setProperty("apoc.jdbc.derby.pool.size", "2");
+        try {
+            long processors = Runtime.getRuntime().availableProcessors();
+            assertEquals(Math.min(processors, 2), JdbcUtil.getConcurrency("derby", new LoadJdbcConfig(map())));
+            assertEquals(processors, JdbcUtil.getConcurrency("jdbc:derby:derbyDB", new LoadJdbcConfig(map())));
+            assertEquals(8, JdbcUtil.getConcurrency("derby", new LoadJdbcConfig(map("concurrency", 8))));
+        } finally {
+            apocConfig().getConfig().clearProperty("apoc.jdbc.derby.pool.size");
+        }
+    }
+
+    @Test
+    public void testLoadJdbcPartitioned() throws Exception {
+        try (Statement stmt = conn.createStatement()) {
+            try { stmt.execute("DROP TABLE NUMBERS"); } catch (SQLException se) {/*ignore*/}
+            stmt.execute("CREATE TABLE NUMBERS (ID INT)");
+            for (int i = -10; i < 110; i++) stmt.execute("INSERT INTO NUMBERS VALUES (" + i + ")");
+            stmt.execute("INSERT INTO NUMBERS VALUES (NULL)");
+        }
+        testCall(db, "CALL apoc.load.jdbc('derby','SELECT ID FROM NUMBERS WHERE ID <> ? OR ID IS NULL', [50], {partitionColumn:'ID', lowerBound:0, upperBound:100, partitions:4}) YIELD row " +
+                        "RETURN count(*) AS count, count(DISTINCT row.ID) AS ids, sum(row.ID) AS sum",
+                (row) -> {
+                    assertEquals(120L, row.get("count"));
+                    assertEquals(119L, row.get("ids"));
+                    assertEquals(5940L - 50L, row.get("sum"));
+                });
+    }
+
     @Test
     public void testLoadJdbcWithSpecialCharWithAuthentication() {
         db.executeTransactionally("CALL apoc.load.jdbc($url, 'PERSON',[],{credentials:{user:'apoc',password:'Ap0c!#Db'}})", Util.map("url","jdbc:derby:derbyDB"));
@@ -199,6 +253,16 @@ public class JdbcTest extends AbstractJdbcTest {
                 (row) -> assertEquals(Util.map("count", 1 ), row.get("row")));
     }
 
+    @Test
+    public void testLoadJdbcKeyWithWrongPasswordAfterRightOneWithAuthentication() throws Exception {
+        testCall(db, "CALL apoc.load.jdbc('derby','PERSON',[],{credentials:{user:'apoc',password:'Ap0c!#Db'}})",
+                (row) -> assertResult(row));
+        // the connection pooled for the right password must not be handed out for another one
+        thrown.expect(QueryExecutionException.class);
+        testCall(db, "CALL apoc.load.jdbc('derby','PERSON',[],{credentials:{user:'apoc',password:'wrong'}})",
+                (row) -> assertResult(row));
+    }
+
     @Test
     public void testLoadJdbcUrlWithSpecialCharWithEmptyUserWithAuthentication() throws Exception {
         thrown.expect(QueryExecutionException.class);
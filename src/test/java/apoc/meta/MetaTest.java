@@ -9,6 +9,7 @@ import org.junit.Test;
 import org.neo4j.configuration.GraphDatabaseSettings;
 import org.neo4j.graphdb.*;
 import org.neo4j.internal.helpers.collection.Iterables;
+import org.neo4j.internal.helpers.collection.Iterators;
 import org.neo4j.test.rule.DbmsRule;
 import org.neo4j.test.rule.ImpermanentDbmsRule;
 import org.neo4j.values.storable.*;
@@ -17,6 +18,7 @@ import java.time.Clock;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
@@ -29,7 +31,9 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.neo4j.driver.Values.isoDuration;
 import static org.neo4j.graphdb.traversal.Evaluators.toDepth;
 
@@ -146,6 +150,21 @@ public class MetaTest {
         });
     }
 
+    @Test
+    public void testMetaGraphChecksExistenceByCountsOrSample() throws Exception {
+        db.executeTransactionally("CREATE (:A)-[:T]->(:B), (:A)-[:T]->(:B), (:C)-[:T]->(:D)");
+
+        testCall(db, "call apoc.meta.graph()",(row) -> {
+            Map<String, String> checks = new HashMap<>();
+            for (Relationship rel : (List<Relationship>) row.get("relationships")) {
+                String pattern = rel.getStartNode().getProperty("name") + "->" + rel.getEndNode().getProperty("name");
+                checks.put(pattern, (String) rel.getProperty("existenceCheck"));
+            }
+            // two of the three relationships go from :A to :B, so both counts overlap
+            assertEquals(map("A->B", "counts", "C->D", "sample"), checks);
+        });
+    }
+
     @Test
     public void testMetaType() throws Exception {
         try (Transaction tx = db.beginTx()) {
@@ -306,6 +325,17 @@ public class MetaTest {
                 });
     }
 
+    @Test
+    public void testMetaDataSeesUncommittedChanges() {
+        db.executeTransactionally("CREATE (:Actor {name:'Tom Hanks'})");
+        try (Transaction tx = db.beginTx()) {
+            tx.execute("CREATE (:Director {name:'Robert Zemeckis'})").close();
+            List<String> labels = Iterators.asList(tx.execute("CALL apoc.meta.data() YIELD label, property WHERE property = 'name' RETURN label ORDER BY label")
+                    .<String>columnAs("label"));
+            assertEquals(asList("Actor", "Director"), labels);
+        }
+    }
+
     @Test
     public void testMetaSchema() {
         db.executeTransactionally("create index on :Movie(title)");
@@ -651,6 +681,46 @@ public class MetaTest {
                 });
     }
 
+    @Test
+    public void testMetaDataWithSeedSamplesTheSameNodes() throws Exception {
+        db.executeTransactionally("UNWIND range(1, 1000) AS id CREATE (p:Person) SET p['p' + id] = id");
+        db.executeTransactionally("UNWIND range(1, 500) AS id CREATE (c:City) SET c['c' + id] = id");
+        String query = "CALL apoc.meta.data({sample:10, seed:7}) YIELD label, property RETURN label + '.' + property AS key ORDER BY key";
+        List<Object> sampled = TestUtil.firstColumn(db, query);
+        assertTrue(sampled.size() < 1500);
+        assertEquals(sampled, TestUtil.firstColumn(db, query));
+    }
+
+    @Test
+    public void testSchemaCached() {
+        db.executeTransactionally("CREATE (:Person {name:'Tom'})-[:KNOWS]->(:Person {name:'John'})");
+        String query = "CALL apoc.meta.schema({cached:true}) YIELD value RETURN value";
+        Map<String, Object> schema = TestUtil.singleResultFirstColumn(db, query);
+        assertEquals(2L, ((Map<String, Object>) schema.get("Person")).get("count"));
+
+        // nodes of known shapes keep the snapshot, the counts are refreshed
+        db.executeTransactionally("CREATE (:Person {name:'Jane'})");
+        schema = TestUtil.singleResultFirstColumn(db, query);
+        assertEquals(3L, ((Map<String, Object>) schema.get("Person")).get("count"));
+
+        // a label it doesn't know drops the snapshot
+        db.executeTransactionally("CREATE (:City {name:'Milano'})");
+        schema = TestUtil.singleResultFirstColumn(db, query);
+        assertTrue(schema.containsKey("City"));
+
+        // so does a property it doesn't know
+        db.executeTransactionally("MATCH (p:Person {name:'Tom'}) SET p.age = 42");
+        schema = TestUtil.singleResultFirstColumn(db, query);
+        Map<String, Object> person = (Map<String, Object>) schema.get("Person");
+        assertTrue(((Map<String, Object>) person.get("properties")).containsKey("age"));
+
+        // removals keep the snapshot, the labels without nodes left are omitted
+        db.executeTransactionally("MATCH (c:City) DELETE c");
+        schema = TestUtil.singleResultFirstColumn(db, query);
+        assertFalse(schema.containsKey("City"));
+        assertTrue(schema.containsKey("Person"));
+    }
+
     @Test
     public void testSchemaWithSample() {
         db.executeTransactionally("create constraint on (p:Person) assert p.name is unique");
@@ -9,6 +9,7 @@ import org.neo4j.test.rule.DbmsRule;
 import org.neo4j.test.rule.ImpermanentDbmsRule;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -167,4 +168,30 @@ public class NeighborsTest {
                         "RETURN number",
                 (row) -> assertEquals(1L, row.get("number")));
     }
+
+    @Test
+    public void getNeighborsOfLargeFrontierInParallel() {
+        // the second hop expands more nodes than the parallel threshold, the hub is a dense node
+        db.executeTransactionally("MATCH (d:Neighbor {name:'d'}) " +
+                "CREATE (z:Last) " +
+                "WITH d, z UNWIND range(1, $count) AS i " +
+                "CREATE (d)-[:KNOWS]->(leaf:Leaf {i:i})-[:KNOWS]->(z)", Collections.singletonMap("count", HopExpander.PARALLEL_THRESHOLD + 100));
+        long leaves = HopExpander.PARALLEL_THRESHOLD + 100;
+        TestUtil.testCall(db, "MATCH (n:First) CALL apoc.neighbors.byhop.count(n, 'KNOWS>', 5) YIELD value RETURN value",
+                (row) -> assertEquals(Arrays.asList(1L, 1L, 1L, leaves, 1L), row.get("value")));
+        TestUtil.testCall(db, "MATCH (n:First) CALL apoc.neighbors.tohop.count(n, 'KNOWS', 5) YIELD value RETURN value",
+                (row) -> assertEquals(leaves + 4, row.get("value")));
+    }
+
+    @Test
+    public void getNeighborsOfLargeFrontierCreatedInSameTransaction() {
+        // the leaves aren't committed yet, so the hops have to be expanded in the calling transaction
+        long leaves = HopExpander.PARALLEL_THRESHOLD + 100;
+        TestUtil.testCall(db, "CREATE (hub:Hub), (z:Last) " +
+                        "WITH hub, z UNWIND range(1, $count) AS i " +
+                        "CREATE (hub)-[:KNOWS]->(leaf:Leaf {i:i})-[:KNOWS]->(z) " +
+                        "WITH DISTINCT hub CALL apoc.neighbors.byhop.count(hub, 'KNOWS>', 2) YIELD value RETURN value",
+                Collections.singletonMap("count", leaves),
+                (row) -> assertEquals(Arrays.asList(leaves, 1L), row.get("value")));
+    }
 }
@@ -214,4 +214,26 @@ public class GroupingTest {
                 });
 
     }
+
+    @Test
+    public void testGroupAcrossBatches() throws Exception {
+        db.executeTransactionally("UNWIND range(0, 11999) AS i " +
+                "CREATE (:User {group:i % 3, score:1})-[:LINKS {weight:2}]->(:User {group:(i + 1) % 3, score:1})");
+        TestUtil.testResult(db, "CALL apoc.nodes.group(['User'],['group'],[{`*`:'count', score:'sum'},{`*`:'count', weight:'sum'}])",
+                result -> {
+                    int rows = 0;
+                    while (result.hasNext()) {
+                        Map<String, Object> row = result.next();
+                        Node node = (Node) row.get("node");
+                        assertEquals(8000L, node.getProperty("count_*"));
+                        assertEquals(8000D, node.getProperty("sum_score"));
+                        Relationship rel = (Relationship) row.get("relationship");
+                        assertEquals(4000L, rel.getProperty("count_*"));
+                        assertEquals(8000D, rel.getProperty("sum_weight"));
+                        assertEquals(((long) node.getProperty("group") + 1) % 3, rel.getEndNode().getProperty("group"));
+                        rows++;
+                    }
+                    assertEquals(3, rows);
+                });
+    }
 }
@@ -212,6 +212,22 @@ public class NodesTest {
         // todo inverse e,s then also incoming
     }
 
+    @Test
+    public void testConnectedWithin() {
+        db.executeTransactionally("CREATE (a:Start)-[:KNOWS]->(b)-[:KNOWS]->(c)<-[:KNOWS]-(d)-[:WORKS_WITH]->(e:End) " +
+                "CREATE (hub:Hub) WITH hub, b UNWIND range(1, 100) AS i CREATE (hub)-[:KNOWS]->(:Leaf)-[:KNOWS]->(b)");
+
+        TestUtil.testCall(db, "MATCH (s:Start),(e:End) RETURN apoc.nodes.connectedWithin(s, e, '', 4) as value", (r) -> assertEquals(true, r.get("value")));
+        TestUtil.testCall(db, "MATCH (s:Start),(e:End) RETURN apoc.nodes.connectedWithin(s, e, '', 3) as value", (r) -> assertEquals(false, r.get("value")));
+        TestUtil.testCall(db, "MATCH (s:Start),(e:End) RETURN apoc.nodes.connectedWithin(s, e, 'KNOWS', 10) as value", (r) -> assertEquals(false, r.get("value")));
+        TestUtil.testCall(db, "MATCH (s:Start),(e:End) RETURN apoc.nodes.connectedWithin(s, e, 'KNOWS|WORKS_WITH>', 4) as value", (r) -> assertEquals(true, r.get("value")));
+        TestUtil.testCall(db, "MATCH (s:Start),(e:End) RETURN apoc.nodes.connectedWithin(s, e, 'KNOWS>|WORKS_WITH>', 4) as value", (r) -> assertEquals(false, r.get("value")));
+        TestUtil.testCall(db, "MATCH (s:Start),(e:End) RETURN apoc.nodes.connectedWithin(e, s, 'KNOWS|<WORKS_WITH', 4) as value", (r) -> assertEquals(true, r.get("value")));
+        TestUtil.testCall(db, "MATCH (s:Start),(h:Hub) RETURN apoc.nodes.connectedWithin(s, h, 'KNOWS', 3) as value", (r) -> assertEquals(true, r.get("value")));
+        TestUtil.testCall(db, "MATCH (s:Start),(h:Hub) RETURN apoc.nodes.connectedWithin(s, h, 'KNOWS', 2) as value", (r) -> assertEquals(false, r.get("value")));
+        TestUtil.testCall(db, "MATCH (s:Start) RETURN apoc.nodes.connectedWithin(s, s, '', 0) as value", (r) -> assertEquals(true, r.get("value")));
+    }
+
     @Test
     public void testDegreeTypeAndDirection() {
         db.executeTransactionally("CREATE (f:Foo) CREATE (b:Bar) CREATE (f)-[:Y]->(b) CREATE (f)-[:Y]->(b) CREATE (f)-[:X]->(b) CREATE (f)<-[:X]-(b)");
@@ -13,10 +13,12 @@ import org.junit.rules.ExpectedException;
 import org.neo4j.graphdb.QueryExecutionException;
 import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.helpers.collection.Iterators;
 import org.neo4j.test.mockito.matcher.RootCauseMatcher;
 import org.neo4j.test.rule.DbmsRule;
 import org.neo4j.test.rule.ImpermanentDbmsRule;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -297,4 +299,82 @@ public class SubgraphTest {
 		TestUtil.singleResultFirstColumn(db, "MATCH (m:Movie {title: 'The Matrix'}) CALL apoc.path.spanningTree(m,{minLevel:2}) yield path return count(distinct path) as cnt");
 	}
 
+	@Test
+	public void testParallelSubgraphNodesReturnsSameNodes() throws Throwable {
+		assertParallelSubgraphNodes(Util.map("labelFilter", "+Person|Movie", "relationshipFilter", "ACTED_IN|DIRECTED"));
+	}
+
+	@Test
+	public void testParallelSubgraphNodesWithMinLevelReturnsSameNodes() throws Throwable {
+		// movies are reached from the movies of other batches, they must not be returned as they are start nodes
+		assertParallelSubgraphNodes(Util.map("minLevel", 1, "labelFilter", "+Person|Movie", "relationshipFilter", "ACTED_IN|DIRECTED"));
+	}
+
+	@Test
+	public void testParallelSubgraphNodesWithMaxLevelReturnsSameNodes() throws Throwable {
+		// runs serially, the batches would reach nodes at other depths than a single expansion
+		assertParallelSubgraphNodes(Util.map("maxLevel", 2, "labelFilter", "+Person|Movie", "relationshipFilter", "ACTED_IN|DIRECTED"));
+	}
+
+	private void assertParallelSubgraphNodes(Map<String, Object> config) {
+		String query = "MATCH (m:Movie) WITH collect(m) as movies CALL apoc.path.subgraphNodes(movies, $config) yield node return id(node) as id order by id";
+		List<Object> expected = TestUtil.firstColumn(db, query, Util.map("config", config));
+		Map<String, Object> parallel = new HashMap<>(config);
+		parallel.put("parallel", true);
+		parallel.put("batchSize", 5);
+		List<Object> actual = TestUtil.firstColumn(db, query, Util.map("config", parallel));
+		assertTrue(expected.size() > 38);
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testParallelExpandConfigReturnsSamePaths() throws Throwable {
+		String query = "MATCH (p:Person) WITH collect(p) as people CALL apoc.path.expandConfig(people, $config) yield path return count(*) as cnt";
+		Map<String, Object> config = Util.map("sequence", "Person, ACTED_IN>, Movie, <DIRECTED", "maxLevel", 2);
+		long expected = TestUtil.singleResultFirstColumn(db, query, Util.map("config", config));
+		config.put("parallel", true);
+		config.put("batchSize", 10);
+		long actual = TestUtil.singleResultFirstColumn(db, query, Util.map("config", config));
+		assertTrue(expected > 0);
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testParallelExpandConfigSeesUncommittedChanges() throws Throwable {
+		// runs serially, the batches wouldn't see the nodes and relationships created in the same transaction
+		try (Transaction tx = db.beginTx()) {
+			long count = Iterators.single(tx.execute("UNWIND range(1, 20) AS i CREATE (p:Fresh {i: i})-[:KNOWS]->(:Fresh) " +
+					"WITH collect(p) AS starts CALL apoc.path.expandConfig(starts, {parallel: true, batchSize: 5, relationshipFilter: 'KNOWS>', minLevel: 1}) yield path " +
+					"RETURN count(path) AS cnt").columnAs("cnt"));
+			assertEquals(20L, count);
+			// rolled back, the other tests count the whole graph
+		}
+	}
+
+	@Test
+	public void testParallelSpanningTreeReturnsShortestPaths() throws Throwable {
+		// runs serially, the batches racing for the nodes wouldn't reach them by the shortest paths
+		String query = "MATCH (m:Movie) WITH collect(m) as movies CALL apoc.path.spanningTree(movies, $config) yield path " +
+				"RETURN last(nodes(path)) as end, length(path) as length ORDER BY id(end)";
+		Map<String, Object> config = Util.map("labelFilter", "+Person|Movie", "relationshipFilter", "ACTED_IN|DIRECTED");
+		List<Map<String, Object>> expected = db.executeTransactionally(query, Util.map("config", config), result -> Iterators.asList(result));
+		config.put("parallel", true);
+		config.put("batchSize", 5);
+		List<Map<String, Object>> actual = db.executeTransactionally(query, Util.map("config", config), result -> Iterators.asList(result));
+		assertTrue(expected.size() > 38);
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testSpanningTreeReachesEachNodeOnceAlongShortestPaths() throws Throwable {
+		String query = "MATCH (m:Movie {title: 'The Matrix'}) CALL apoc.path.spanningTree(m, {labelFilter:'>Person', maxLevel:3}) yield path " +
+				"WITH m, path, last(nodes(path)) as end " +
+				"MATCH p = shortestPath((m)-[*..3]-(end)) " +
+				"RETURN count(distinct end) as ends, count(*) as paths, sum(CASE WHEN length(path) = length(p) THEN 1 ELSE 0 END) as shortest";
+		TestUtil.testCall(db, query, (row) -> {
+			assertTrue((long) row.get("paths") > 0);
+			assertEquals(row.get("paths"), row.get("ends"));
+			assertEquals(row.get("paths"), row.get("shortest"));
+		});
+	}
 }
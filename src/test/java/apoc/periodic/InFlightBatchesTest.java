@@ -0,0 +1,64 @@
+package apoc.periodic;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InFlightBatchesTest {
+
+    @Test
+    public void blocksUntilABatchIsReleased() throws Exception {
+        InFlightBatches inFlight = new InFlightBatches(2, 100);
+        assertTrue(inFlight.acquire(10, () -> false));
+        assertTrue(inFlight.acquire(10, () -> false));
+
+        CompletableFuture<Boolean> third = CompletableFuture.supplyAsync(() -> acquire(inFlight, 10));
+        try {
+            third.get(300, TimeUnit.MILLISECONDS);
+            fail("third batch should wait for a free slot");
+        } catch (TimeoutException expected) {
+        }
+
+        inFlight.release(10);
+        assertTrue(third.get(5, TimeUnit.SECONDS));
+        assertEquals(2, inFlight.getBatches());
+    }
+
+    @Test
+    public void limitsRowsButAlwaysAdmitsOneBatch() throws Exception {
+        InFlightBatches inFlight = new InFlightBatches(10, 15);
+        assertTrue(inFlight.acquire(50, () -> false));
+
+        CompletableFuture<Boolean> second = CompletableFuture.supplyAsync(() -> acquire(inFlight, 10));
+        try {
+            second.get(300, TimeUnit.MILLISECONDS);
+            fail("second batch should wait until the rows are released");
+        } catch (TimeoutException expected) {
+        }
+
+        inFlight.release(50);
+        assertTrue(second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void stopsWaitingWhenTerminated() throws Exception {
+        InFlightBatches inFlight = new InFlightBatches(1, 100);
+        assertTrue(inFlight.acquire(10, () -> false));
+        assertFalse(inFlight.acquire(10, () -> true));
+    }
+
+    private static boolean acquire(InFlightBatches inFlight, long size) {
+        try {
+            return inFlight.acquire(size, () -> false);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package apoc.periodic;
 import apoc.load.Jdbc;
 import apoc.util.MapUtil;
 import apoc.util.TestUtil;
+import apoc.util.Utils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -15,6 +16,8 @@ import org.neo4j.kernel.api.KernelTransactionHandle;
 import org.neo4j.kernel.api.exceptions.Status;
 import org.neo4j.kernel.impl.api.KernelTransactions;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.UserFunction;
 import org.neo4j.test.rule.DbmsRule;
 import org.neo4j.test.rule.ImpermanentDbmsRule;
 
@@ -23,6 +26,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
@@ -43,12 +48,24 @@ public class PeriodicTest {
     public static final long RUNDOWN_COUNT = 1000;
     public static final int BATCH_SIZE = 399;
 
+    public static class TransientFailures {
+        static final Map<Long, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+        @UserFunction("apoc.test.failTransiently")
+        public boolean failTransiently(@Name("key") long key, @Name("times") long times) {
+            if (attempts.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet() <= times) {
+                throw new TransientTransactionFailureException(Status.Transaction.DeadlockDetected, "simulated deadlock of " + key);
+            }
+            return true;
+        }
+    }
+
     @Rule
     public DbmsRule db = new ImpermanentDbmsRule();
 
     @Before
     public void initDb() throws Exception {
-        TestUtil.registerProcedure(db, Periodic.class, Jdbc.class);
+        TestUtil.registerProcedure(db, Periodic.class, Jdbc.class, Utils.class, TransientFailures.class);
         db.executeTransactionally("call apoc.periodic.list() yield name call apoc.periodic.cancel(name) yield name as name2 return count(*)");
     }
 
@@ -307,6 +324,96 @@ public class PeriodicTest {
         );
     }
 
+    @Test
+    public void testIterateWithBoundedInFlightBatches() throws Exception {
+        db.executeTransactionally("UNWIND range(1,1000) AS x CREATE (:Person{name:'Person_'+x})");
+
+        testResult(db, "CALL apoc.periodic.iterate('match (p:Person) return p', 'SET p.lastname =p.name REMOVE p.name', {batchSize:10, parallel:true, concurrency:2, maxInFlightRows:15})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(100L, row.get("batches"));
+            assertEquals(1000L, row.get("total"));
+            assertEquals(1000L, row.get("committedOperations"));
+        });
+
+        testCall(db,
+                "MATCH (p:Person) where p.lastname is not null return count(p) as count",
+                row -> assertEquals(1000L, row.get("count"))
+        );
+    }
+
+    @Test
+    public void testIterateRequeuesAndRunsFailingBatchesSerially() throws Exception {
+        db.executeTransactionally("UNWIND range(1,100) AS x CREATE (:Person{name:'Person_'+x})");
+        TransientFailures.attempts.clear();
+
+        // every parallel attempt of a batch fails, the first try and both retries, so only the serial run commits it
+        testResult(db, "CALL apoc.periodic.iterate('match (p:Person) return p', " +
+                "'WITH apoc.test.failTransiently(id($_batch[0].p), 3) AS ok UNWIND $_batch AS row WITH row.p AS p SET p.lastname = p.name', " +
+                "{batchSize:10, batchMode:'BATCH_SINGLE', parallel:true, retries:2, retryDelay:10, requeue:true})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(10L, row.get("batches"));
+            assertEquals(100L, row.get("total"));
+            assertEquals(0L, row.get("failedBatches"));
+            assertEquals(20L, row.get("retries"));
+            assertEquals(100L, row.get("committedOperations"));
+            assertEquals(10L, ((Map) row.get("batch")).get("serial"));
+        });
+
+        assertEquals(10, TransientFailures.attempts.size());
+        TransientFailures.attempts.values().forEach(attempts -> assertEquals(4, attempts.get()));
+        testCall(db,
+                "MATCH (p:Person) where p.lastname is not null return count(p) as count",
+                row -> assertEquals(100L, row.get("count"))
+        );
+    }
+
+    @Test
+    public void testIterateWithAdaptiveBatchSize() throws Exception {
+        db.executeTransactionally("UNWIND range(1,1000) AS x CREATE (:Person{name:'Person_'+x})");
+
+        testResult(db, "CALL apoc.periodic.iterate('match (p:Person) return p', 'SET p.lastname =p.name REMOVE p.name', {batchSize:10, adaptive:true, minBatchSize:5, maxBatchSize:500, targetBatchTime:1000})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(1000L, row.get("total"));
+            assertEquals(1000L, row.get("committedOperations"));
+            Map<String, Object> batchSizes = (Map<String, Object>) row.get("batchSizes");
+            assertEquals(true, batchSizes.get("adaptive"));
+            assertEquals(10L, batchSizes.get("initial"));
+            assertTrue((long) batchSizes.get("max") > 10L);
+            assertTrue((long) batchSizes.get("max") <= 500L);
+            assertTrue((long) row.get("batches") < 100L);
+        });
+
+        testCall(db,
+                "MATCH (p:Person) where p.lastname is not null return count(p) as count",
+                row -> assertEquals(1000L, row.get("count"))
+        );
+    }
+
+    @Test
+    public void testIterateProgress() throws Exception {
+        Thread iterate = new Thread(() -> db.executeTransactionally(
+                "CALL apoc.periodic.iterate('UNWIND range(1,40) AS x RETURN x', 'CALL apoc.util.sleep(50)', {batchSize:2, parallel:true, concurrency:2})"));
+        iterate.start();
+
+        Map<String, Object> progress = null;
+        for (int i = 0; i < 100 && progress == null; i++) {
+            progress = db.executeTransactionally("CALL apoc.periodic.progress() YIELD id, cypherIterate, committedBatches, failedBatches, inFlightBatches, batchLatency " +
+                            "WHERE committedBatches > 0 RETURN *", Collections.emptyMap(),
+                    result -> result.hasNext() ? result.next() : null);
+            Thread.sleep(20);
+        }
+        iterate.join();
+
+        assertTrue(progress != null);
+        assertTrue(((String) progress.get("cypherIterate")).contains("range(1,40)"));
+        assertEquals(0L, progress.get("failedBatches"));
+        assertTrue((long) progress.get("inFlightBatches") <= 2L);
+        Map<String, Object> latency = (Map<String, Object>) progress.get("batchLatency");
+        assertTrue((double) latency.get("p50") >= 50d);
+
+        testResult(db, "CALL apoc.periodic.progress()", result -> assertFalse(result.hasNext()));
+    }
+
     @Test
     public void testIteratePrefix() throws Exception {
         db.executeTransactionally("UNWIND range(1,100) AS x CREATE (:Person{name:'Person_'+x})");
@@ -0,0 +1,45 @@
+package apoc.periodic;
+
+import apoc.util.Util;
+import org.junit.Test;
+import org.neo4j.graphdb.QueryExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void delayGrowsExponentiallyWithJitterUpToTheMaximum() {
+        RetryPolicy policy = RetryPolicy.fromConfig(Util.map("retries", 10, "retryDelay", 100, "maxRetryDelay", 1000), false);
+        for (int i = 0; i < 100; i++) {
+            assertBetween(50, 100, policy.delay(1));
+            assertBetween(100, 200, policy.delay(2));
+            assertBetween(200, 400, policy.delay(3));
+            assertBetween(500, 1000, policy.delay(5));
+            assertBetween(500, 1000, policy.delay(64));
+        }
+    }
+
+    @Test
+    public void serialFallbackOnlyForParallelRetries() {
+        assertTrue(RetryPolicy.fromConfig(Util.map("retries", 2), true).serialFallback);
+        assertFalse(RetryPolicy.fromConfig(Util.map("retries", 2), false).serialFallback);
+        assertFalse(RetryPolicy.fromConfig(Util.map("retries", 0), true).serialFallback);
+        assertFalse(RetryPolicy.fromConfig(Util.map("retries", 2, "serialFallback", false), true).serialFallback);
+        assertEquals(0, RetryPolicy.none().retries);
+    }
+
+    @Test
+    public void detectsTransientErrors() {
+        assertTrue(RetryPolicy.isTransient(new RuntimeException(
+                new QueryExecutionException("deadlock", null, "Neo.TransientError.Transaction.DeadlockDetected"))));
+        assertFalse(RetryPolicy.isTransient(new QueryExecutionException("/ by zero", null, "Neo.ClientError.Statement.ArithmeticError")));
+        assertFalse(RetryPolicy.isTransient(new RuntimeException("boom")));
+    }
+
+    private static void assertBetween(long min, long max, long value) {
+        assertTrue(value + " not in [" + min + "," + max + "]", value >= min && value <= max);
+    }
+}
@@ -76,4 +76,24 @@ public class DegreeDistributionTest {
         });
     }
 
+    @Test
+    public void degreesOfLabel() throws Exception {
+        db.executeTransactionally("CREATE (:Baz)-[:BAR]->(:Baz)");
+        try {
+            TestUtil.testCall(db, "CALL apoc.stats.degrees('BAR>', {label:'Foo'})", row -> {
+                assertEquals("BAR",row.get("type"));
+                assertEquals("OUTGOING",row.get("direction"));
+                assertEquals(10L,row.get("max"));
+                assertEquals(1L,row.get("min"));
+                assertEquals(5.5d,row.get("mean"));
+                assertEquals(5L,row.get("p50"));
+            });
+            TestUtil.testCall(db, "CALL apoc.stats.degrees('BAR', {label:'Baz'})", row -> {
+                assertEquals(1L,row.get("max"));
+                assertEquals(1L,row.get("min"));
+            });
+        } finally {
+            db.executeTransactionally("MATCH (n:Baz) DETACH DELETE n");
+        }
+    }
 }
@@ -9,9 +9,11 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.test.rule.DbmsRule;
 import org.neo4j.test.rule.ImpermanentDbmsRule;
 
+import java.util.HashSet;
 import java.util.Map;
 
 import static apoc.ApocSettings.apoc_trigger_enabled;
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.neo4j.internal.helpers.collection.MapUtil.map;
@@ -162,6 +164,71 @@ public class TriggerTest {
         });
     }
     
+    @Test
+    public void testSelectorFilters() throws Exception {
+        db.executeTransactionally("CREATE (:Counter {persons:0, knows:0, names:0})");
+        db.executeTransactionally("CALL apoc.trigger.add('persons','MATCH (c:Counter) SET c.persons = c.persons + 1',{labels:['Person']})");
+        db.executeTransactionally("CALL apoc.trigger.add('knows','MATCH (c:Counter) SET c.knows = c.knows + 1',{relTypes:'KNOWS'})");
+        db.executeTransactionally("CALL apoc.trigger.add('names','MATCH (c:Counter) SET c.names = c.names + size(keys($assignedNodeProperties))',{propertyKeys:['name'], labels:['Person']})");
+        db.executeTransactionally("CREATE (:Movie {title:'Matrix'})");
+        db.executeTransactionally("CREATE (:Person {name:'Keanu'})");
+        db.executeTransactionally("MATCH (p:Person) SET p.age = 55");
+        db.executeTransactionally("MATCH (p:Person), (m:Movie) CREATE (p)-[:ACTED_IN]->(m)");
+        db.executeTransactionally("MATCH (p:Person) CREATE (p)-[:KNOWS]->(:Actor)");
+        TestUtil.testCall(db, "MATCH (c:Counter) RETURN c.persons AS persons, c.knows AS knows, c.names AS names", (row) -> {
+            // the Person creation and the age update
+            assertEquals(2L, row.get("persons"));
+            assertEquals(1L, row.get("knows"));
+            assertEquals(1L, row.get("names"));
+        });
+    }
+
+    @Test
+    public void testStatementParameters() {
+        assertEquals(new HashSet<>(asList("createdNodes", "transactionId", "deletedNodes", "trigger")),
+                CompiledTrigger.parameters("UNWIND $createdNodes AS n SET n.txId = $ transactionId, n.deleted = size({deletedNodes}), n.trigger = $`trigger`"));
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        db.executeTransactionally("CREATE (:Counter {count:0, transactions:0})");
+        db.executeTransactionally("CALL apoc.trigger.add('async','MATCH (c:Counter) SET c.count = c.count + size($createdNodes), c.transactions = c.transactions + $transactions, c.txId = $transactionId',{phase:'async'})");
+        for (int i = 0; i < 10; i++) {
+            db.executeTransactionally("CREATE (:Foo), (:Foo)");
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        long count = 0;
+        while (count < 20 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            count = TestUtil.singleResultFirstColumn(db, "MATCH (c:Counter) RETURN c.count");
+        }
+        TestUtil.testCall(db, "MATCH (c:Counter) RETURN c", (row) -> {
+            Node counter = (Node) row.get("c");
+            assertEquals(20L, counter.getProperty("count"));
+            assertEquals(10L, counter.getProperty("transactions"));
+            assertEquals(true, (Long) counter.getProperty("txId") > -1L);
+        });
+    }
+
+    @Test
+    public void testAsyncDeleted() throws Exception {
+        db.executeTransactionally("CREATE (:Counter {nodes:0, relationships:0})");
+        db.executeTransactionally("UNWIND range(1,5) AS i CREATE (:Foo {i:i})-[:X {i:i}]->(:Bar)");
+        db.executeTransactionally("CALL apoc.trigger.add('async-deleted','MATCH (c:Counter) SET c.nodes = c.nodes + size($deletedNodes), c.relationships = c.relationships + size($deletedRelationships)',{phase:'async'})");
+        db.executeTransactionally("MATCH (n:Foo) DETACH DELETE n");
+        long deadline = System.currentTimeMillis() + 10_000;
+        long count = 0;
+        while (count < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            count = TestUtil.singleResultFirstColumn(db, "MATCH (c:Counter) RETURN c.nodes");
+        }
+        TestUtil.testCall(db, "MATCH (c:Counter) RETURN c", (row) -> {
+            Node counter = (Node) row.get("c");
+            assertEquals(5L, counter.getProperty("nodes"));
+            assertEquals(5L, counter.getProperty("relationships"));
+        });
+    }
+
     @Test
     public void testPauseResult() throws Exception {
         db.executeTransactionally("CALL apoc.trigger.add('pausedTest', 'UNWIND $createdNodes AS n SET n.txId = $transactionId, n.txTime = $commitTime', {phase: 'after'})");
@@ -14,6 +14,10 @@ import static apoc.util.kernel.MultiThreadedGlobalGraphOperations.*;
 import static apoc.util.kernel.MultiThreadedGlobalGraphOperations.GlobalOperationsTypes.NODES;
 import static apoc.util.kernel.MultiThreadedGlobalGraphOperations.GlobalOperationsTypes.RELATIONSHIPS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class MultiThreadedGlobalGraphOperationsTest {
 
@@ -36,7 +40,7 @@ public class MultiThreadedGlobalGraphOperationsTest {
                 (ktx,nodeCursor) -> counter.incrementAndGet());
         assertEquals(1001, counter.get());
         final long highestIdInUse = getHighestIdInUseForStore(db.getDependencyResolver(), NODES);
-        assertEquals(Double.valueOf(Math.ceil(highestIdInUse / 10.0)).longValue() , result.getBatches());
+        assertEquals(denseBatches(highestIdInUse, 10), result.getBatches());
         assertEquals( 1001, result.getSucceeded());
 
         long countOfNodes = TestUtil.singleResultFirstColumn(db, "match (n) return count(n) as count");
@@ -52,9 +56,100 @@ public class MultiThreadedGlobalGraphOperationsTest {
                 (ktx, relationshipScanCursor) -> counter.incrementAndGet());
         assertEquals(1000, counter.get());
         final long highestIdInUse = getHighestIdInUseForStore(db.getDependencyResolver(), RELATIONSHIPS);
-        assertEquals(Double.valueOf(Math.ceil(highestIdInUse / 10.0)).longValue(), result.getBatches());
+        assertEquals(denseBatches(highestIdInUse, 10), result.getBatches());
         assertEquals( 1000, result.getSucceeded());
         assertEquals( 0, result.getMissing());
         assertEquals( 0, result.getFailures());
     }
+
+    @Test
+    public void shouldReduceNodes() {
+        long[] sum = reduceNodes(db, Executors.newFixedThreadPool(4), 10,
+                () -> new long[2],
+                (state, ktx, nodeCursor) -> {
+                    state[0]++;
+                    state[1] += nodeCursor.nodeReference();
+                },
+                (a, b) -> new long[]{a[0] + b[0], a[1] + b[1]});
+        assertEquals(1001, sum[0]);
+        long sumOfIds = TestUtil.singleResultFirstColumn(db, "match (n) return sum(id(n)) as sum");
+        assertEquals(sumOfIds, sum[1]);
+    }
+
+    @Test
+    public void shouldRethrowFailureOfReducer() {
+        RuntimeException failure = new RuntimeException("failed to reduce");
+        try {
+            reduceNodes(db, Executors.newFixedThreadPool(4), 10,
+                    () -> new long[1],
+                    (state, ktx, nodeCursor) -> {
+                        if (nodeCursor.nodeReference() == 500) throw failure;
+                        state[0]++;
+                    },
+                    (a, b) -> new long[]{a[0] + b[0]});
+            fail("the failure of the reducer should have been rethrown");
+        } catch (RuntimeException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void shouldGrowRangesOverSparseIdsAndShrinkThemAtTheEnd() {
+        IdRanges ranges = new IdRanges(100_000, 10, 2);
+        long[] range = new long[2];
+
+        assertTrue(ranges.claim(10, range));
+        assertRange(0, 10, range);
+
+        // doubles while less than half of the ids are in use, up to 64 batches
+        long size = 10;
+        for (long expected : new long[]{20, 40, 80, 160, 320, 640, 640}) {
+            size = ranges.nextSize(size, 4);
+            assertEquals(expected, size);
+        }
+        assertTrue(ranges.claim(size, range));
+        assertRange(10, 650, range);
+
+        // back to the batch size on dense ids
+        size = ranges.nextSize(size, 320);
+        assertEquals(10, size);
+        assertTrue(ranges.claim(size, range));
+        assertRange(650, 660, range);
+
+        // near the end a worker only gets its share of what is left
+        ranges = new IdRanges(100, 10, 2);
+        assertTrue(ranges.claim(640, range));
+        assertRange(0, 50, range);
+        assertTrue(ranges.claim(640, range));
+        assertRange(50, 75, range);
+        assertTrue(ranges.claim(10, range));
+        assertRange(75, 85, range);
+        assertTrue(ranges.claim(10, range));
+        assertRange(85, 92, range);
+        assertTrue(ranges.claim(10, range));
+        assertRange(92, 96, range);
+        assertTrue(ranges.claim(10, range));
+        assertRange(96, 98, range);
+        assertTrue(ranges.claim(10, range));
+        assertRange(98, 99, range);
+        assertTrue(ranges.claim(10, range));
+        assertRange(99, 100, range);
+        assertFalse(ranges.claim(10, range));
+        assertEquals(8, ranges.claimed());
+    }
+
+    private static void assertRange(long start, long end, long[] range) {
+        assertEquals(start, range[0]);
+        assertEquals(end, range[1]);
+    }
+
+    // on dense ids every range has the batch size, until the share of each worker of what is left gets smaller
+    private static int denseBatches(long highestIdInUse, int batchSize) {
+        int workers = Runtime.getRuntime().availableProcessors();
+        int batches = 0;
+        for (long start = 0; start < highestIdInUse; batches++) {
+            start += Math.max(1, Math.min(batchSize, (highestIdInUse - start) / workers));
+        }
+        return batches;
+    }
 }